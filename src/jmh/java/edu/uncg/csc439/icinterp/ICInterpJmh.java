@@ -0,0 +1,118 @@
+package edu.uncg.csc439.icinterp;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the intermediate code interpreter, on the programs in
+ * the icbench test resources: a loop, recursion (fib and deep), array
+ * indexing and string printing. One operation is a run of gf_main in a new
+ * interpreter, whose memory is forked from the loaded program.
+ *
+ * Besides the time per run, the "instructions" counter reports the time
+ * per executed IC instruction, and the GC profiler (which main adds, or
+ * -prof gc on the JMH command line) reports the bytes allocated per run as
+ * gc.alloc.rate.norm.
+ *
+ * These live apart from the unit tests, in the jmh source set. JMH needs
+ * jmh-core and jmh-generator-annprocess 1.37 to compile the benchmarks (the
+ * annotation processor writes the generated benchmark classes next to this
+ * one), and jmh-core, jopt-simple 5.0.4 and commons-math3 3.6.1 to run
+ * them, with the test resources on the classpath. With the compiler's
+ * classes in build/classes and the jars in lib, from the project directory:
+ * <pre>
+ *     javac -d build/jmh -cp build/classes:lib/jmh-core-1.37.jar:lib/jmh-generator-annprocess-1.37.jar \
+ *             src/jmh/java/edu/uncg/csc439/icinterp/ICInterpJmh.java
+ *     java -cp build/jmh:build/classes:src/test/resources:lib/jmh-core-1.37.jar:lib/jopt-simple-5.0.4.jar:lib/commons-math3-3.6.1.jar \
+ *             edu.uncg.csc439.icinterp.ICInterpJmh [JMH options]
+ * </pre>
+ * For example, "-p program=fib -p tier=TIERED" runs a single benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ICInterpJmh {
+    @Param({ "loop", "fib", "deep", "arrays", "strings" })
+    public String program;
+
+    @Param({ "INTERP", "TIERED" })
+    public ICInterp.Tier tier;
+
+    @Param({ "SEGMENTED", "LINEAR" })
+    public ICMemory.Model memModel;
+
+    private ICProgram loaded;
+    private final PrintStream nullOut = new PrintStream(OutputStream.nullOutputStream());
+    private final byte[] noInput = new byte[0];
+
+    /**
+     * Counts the IC instructions executed, which JMH treats as operations,
+     * so that it reports the average time of each one.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long instructions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            instructions = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        try (InputStream in = ICInterpJmh.class.getResourceAsStream("/icbench/" + program + ".ic")) {
+            if (in == null) throw new IOException("No benchmark program named " + program);
+            loaded = ICProgram.load(new String(in.readAllBytes(), StandardCharsets.US_ASCII), memModel);
+        }
+    }
+
+    @Benchmark
+    public int run(Counters counters) {
+        ICInterp context = new ICInterp(loaded, new ByteArrayInputStream(noInput), nullOut, System.err);
+        context.setTier(tier);
+        int result = context.executeFunction("gf_main", new LinkedList<>()).getAsI();
+        counters.instructions += context.getInstructionCount();
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(ICInterpJmh.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
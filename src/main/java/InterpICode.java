@@ -1,7 +1,12 @@
+import edu.uncg.csc439.icinterp.ICExecutionException;
 import edu.uncg.csc439.icinterp.ICInterp;
+import edu.uncg.csc439.icinterp.ICInterpOptions;
+import edu.uncg.csc439.icode.ICBinary;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
@@ -10,7 +15,8 @@ import java.util.LinkedList;
 /**
  * Program to interpret intermediate code. This is normally done as part of
  * the RunCode program, but is provided separately so that users can test
- * hand-generated (or modified) intermediate code.
+ * hand-generated (or modified) intermediate code. A file holding intermediate
+ * code in the binary form (see ICBinary) is also accepted.
  *
  * @author Steve Tate (srtate@uncg.edu)
  */
@@ -56,26 +62,66 @@ public class InterpICode {
         return null;
     }
 
+    /**
+     * Public static method to read intermediate code in the binary form from
+     * a file
+     *
+     * @param fileName the name of the file to use for input
+     * @return the code, or null if it could not be read
+     */
+    public static ICBinary readBinary(String fileName) {
+        try (InputStream in = new FileInputStream(fileName)) {
+            return ICBinary.read(in);
+        } catch (IOException e) {
+            System.err.println("Could not read " + fileName + ": " + e.getMessage());
+        }
+        return null;
+    }
+
     /**
      * Command line interface -- one argument is filename, and if omitted then
-     * input is taken from standard input.
+     * input is taken from standard input. Interpreter options (see
+     * ICInterpOptions) may come before the filename.
      *
      * @param argv command line arguments
      */
     public static void main(String[] argv) {
-        String iCode;
+        ICInterpOptions options = new ICInterpOptions();
+        argv = options.parse(argv);
+        if (argv == null) return;
+
+        String iCode = null;
+        ICBinary binary = null;
         if (argv.length > 1) {
             System.err.println("Can provide at most one command line argument (an input filename)");
             return;
+        } else if ((argv.length == 1) && ICBinary.isBinaryFile(argv[0])) {
+            binary = readBinary(argv[0]);
         } else if (argv.length == 1) {
             iCode = readFromFile(argv[0]);
         } else {
             iCode = readFromStdin();
         }
 
-        if (iCode != null) {
-            ICInterp context = new ICInterp(iCode);
-            context.executeFunction("gf_main", new LinkedList<>());
+        if ((iCode != null) || (binary != null)) {
+            ICInterp context = null;
+            boolean ok = true;
+            try {
+                if (binary != null) {
+                    context = options.createInterp(options.loadProgram(binary));
+                } else {
+                    context = options.createInterp(iCode);
+                }
+                context.executeFunction("gf_main", new LinkedList<>());
+            } catch (ICExecutionException e) {
+                System.err.println(e.getMessage());
+                ok = false;
+            }
+            if (context != null) options.writeProfile(context, System.err);
+            if (!ok) System.exit(1);
+        } else {
+            // The code could not be read, and the reason was already reported
+            System.exit(1);
         }
     }
 }
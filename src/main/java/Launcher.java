@@ -1,3 +1,6 @@
+import edu.uncg.csc439.icinterp.ICInterpOptions;
+import edu.uncg.csc439.icode.ICOptimizationOptions;
+
 /**
  * Launcher for different functionality of the csc439 compiler.
  *
@@ -7,15 +10,20 @@
 public class Launcher {
     public static void usage() {
         System.out.print("Run as follows (input is from stdin unless a filename is given):\n\n");
-        System.out.print("   littlec mode [optinfile]\n\n");
+        System.out.print("   littlec mode [options] [optinfile]\n\n");
         System.out.print("where \"mode\" is one of the following:\n");
         System.out.print("   -lt runs LexerTest\n");
         System.out.print("   -pt runs ParserTest\n");
         System.out.print("   -st outputs the syntax tree (like pt without symbol tables)\n");
         System.out.print("   -pi produces intermediate code output\n");
+        System.out.print("   -pb produces binary intermediate code output, which -rc and -pa accept as input\n");
         System.out.print("   -rc runs code (from interpreting intermediate code)\n");
         System.out.print("   -pa produces assembly language output\n");
         System.out.print("   -pe produces an executable\n");
+        System.out.print("\nwith any mode that generates intermediate code, these options may come before the filename:\n");
+        System.out.print(ICOptimizationOptions.usage());
+        System.out.print("\nwith -rc, these interpreter options may come before the filename:\n");
+        System.out.print(ICInterpOptions.usage());
     }
     /**
      * Use the first command line argument to select the class that will be
@@ -24,7 +32,7 @@ public class Launcher {
      * @param argv command line arguments
      */
     public static void main(String[] argv) {
-        if ((argv.length < 1) || (argv.length > 2)) {
+        if (argv.length < 1) {
             usage();
             return;
         }
@@ -39,6 +47,8 @@ public class Launcher {
             ParserTest.main(argsTail);
         else if (argv[0].equals("-pi"))
             OutputICode.main(argsTail);
+        else if (argv[0].equals("-pb"))
+            OutputBinICode.main(argsTail);
         else if (argv[0].equals("-st"))
             OutputSTree.main(argsTail);
         else if (argv[0].equals("-rc"))
@@ -2,6 +2,8 @@ import edu.uncg.csc439.LCErrorListener;
 import edu.uncg.csc439.LCListener;
 import edu.uncg.csc439.antlr4.LittleCLexer;
 import edu.uncg.csc439.antlr4.LittleCParser;
+import edu.uncg.csc439.icode.ICBinary;
+import edu.uncg.csc439.icode.ICOptimizationOptions;
 import edu.uncg.csc439.icode.ICode;
 import edu.uncg.csc439.mipsgen.MIPSGen;
 import edu.uncg.csc439.syntaxtree.LCSyntaxTree;
@@ -11,7 +13,9 @@ import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.NoSuchFileException;
 
 /**
@@ -92,15 +96,26 @@ public class OutputAsm {
 
     /**
      * Command line interface -- one argument is filename, and if omitted then
-     * input is taken from standard input.
+     * input is taken from standard input. The file may hold intermediate code
+     * in the binary form (see ICBinary) instead of a LittleC program.
      *
      * @param argv command line arguments
      */
     public static void main(String[] argv) {
+        ICOptimizationOptions optimization = new ICOptimizationOptions();
+        argv = optimization.parse(argv);
         LCListener parser;
         if (argv.length > 1) {
             System.err.println("Can provide at most one command line argument (an input filename)");
             return;
+        } else if ((argv.length == 1) && ICBinary.isBinaryFile(argv[0])) {
+            try (InputStream in = new FileInputStream(argv[0])) {
+                System.out.println(new MIPSGen(ICode.readBinary(in)));
+            } catch (IOException e) {
+                System.err.println("Could not read " + argv[0] + ": " + e.getMessage());
+                System.exit(1);
+            }
+            return;
         } else if (argv.length == 1) {
             parser = parseFromFile(argv[0]);
         } else {
@@ -112,7 +127,7 @@ public class OutputAsm {
             result = parser.getSyntaxTree();
 
         if (result != null) {
-            ICode iCode = new ICode(result);
+            ICode iCode = optimization.genICode(result, System.err);
             MIPSGen asmOut = new MIPSGen(iCode);
             System.out.println(asmOut);
         }
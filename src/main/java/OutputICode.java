@@ -2,6 +2,7 @@ import edu.uncg.csc439.LCErrorListener;
 import edu.uncg.csc439.LCListener;
 import edu.uncg.csc439.antlr4.LittleCLexer;
 import edu.uncg.csc439.antlr4.LittleCParser;
+import edu.uncg.csc439.icode.ICOptimizationOptions;
 import edu.uncg.csc439.icode.ICode;
 import edu.uncg.csc439.mipsgen.FlowGraph.BasicBlock;
 import edu.uncg.csc439.mipsgen.FlowGraph.FCGraph;
@@ -100,6 +101,8 @@ public class OutputICode {
      * @param argv command line arguments
      */
     public static void main(String[] argv) {
+        ICOptimizationOptions optimization = new ICOptimizationOptions();
+        argv = optimization.parse(argv);
         LCListener parser;
         ICode iCode = null;
         if (argv.length > 1) {
@@ -116,7 +119,7 @@ public class OutputICode {
             result = parser.getSyntaxTree();
 
         if (result != null) {
-            iCode = new ICode(result);
+            iCode = optimization.genICode(result, System.err);
             String codeAsStr = iCode.toString();
             System.out.println(codeAsStr);
         }
@@ -2,7 +2,11 @@ import edu.uncg.csc439.LCErrorListener;
 import edu.uncg.csc439.LCListener;
 import edu.uncg.csc439.antlr4.LittleCLexer;
 import edu.uncg.csc439.antlr4.LittleCParser;
+import edu.uncg.csc439.icinterp.ICExecutionException;
 import edu.uncg.csc439.icinterp.ICInterp;
+import edu.uncg.csc439.icinterp.ICInterpOptions;
+import edu.uncg.csc439.icinterp.ICProgram;
+import edu.uncg.csc439.icode.ICBinary;
 import edu.uncg.csc439.icode.ICode;
 import edu.uncg.csc439.syntaxtree.LCSyntaxTree;
 import org.antlr.v4.runtime.CharStream;
@@ -11,17 +15,23 @@ import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.nio.file.NoSuchFileException;
 import java.util.LinkedList;
 
 /**
  * This program runs the input LittleC program through the provided lexical
  * analyzer and parser, producing a syntax tree, which is then send to ICode
- * to generate intermediate code. Finally, a text representation of this code
- * is generated by ICode.toString(), and this is sent to the intermediate
- * code interpreter to run. The end effect is that the LittleC program is
- * run....
+ * to generate intermediate code. Finally, this code is handed to the
+ * intermediate code interpreter in its binary form (see ICBinary), so that
+ * it doesn't have to be turned into text and parsed again, and run. The end
+ * effect is that the LittleC program is run....
+ *
+ * The input may also be intermediate code in the binary form (as written by
+ * "littlec -pb"), which is run without going through the front end.
  *
  * @author Steve Tate (srtate@uncg.edu)
  */
@@ -39,9 +49,23 @@ public class RunCode {
      */
 
     private static LCListener parseStream(CharStream input) {
+        return parseStream(input, null);
+    }
+
+    /**
+     * Runs the parser, reporting syntax errors to the given stream instead
+     * of System.err.
+     *
+     * @param input an initialized CharStream
+     * @param err where to report syntax errors, or null for System.err
+     * @return the edu.uncg.csc439.LCListener object that processed the parsed
+     *         input or null if an error was encountered
+     */
+    private static LCListener parseStream(CharStream input, PrintStream err) {
         // "input" is the character-by-character input - connect to lexer
         LittleCLexer lexer = new LittleCLexer(input);
-        LCErrorListener catchErrs = new LCErrorListener();
+        LCErrorListener catchErrs = new LCErrorListener(err);
+        if (err != null) lexer.removeErrorListeners();
         lexer.addErrorListener(catchErrs);
 
         // Connect token stream to lexer
@@ -49,6 +73,7 @@ public class RunCode {
 
         // Connect parser to token stream
         LittleCParser parser = new LittleCParser(tokens);
+        if (err != null) parser.removeErrorListeners();
         parser.addErrorListener(catchErrs);
         ParseTree tree = parser.program();
         if (catchErrs.sawError())
@@ -95,17 +120,60 @@ public class RunCode {
         return null;
     }
 
+    /**
+     * Compiles a LittleC program to intermediate code and runs it, with the
+     * given input and output. Nothing here uses the global standard streams,
+     * so several programs can be run at once on different threads.
+     *
+     * @param input the LittleC program
+     * @param options interpreter options, including the optimization level
+     * @param in the program's standard input
+     * @param out the program's standard output
+     * @param err where compile and run-time errors are reported
+     * @return true if the program compiled and ran without an error
+     */
+    public static boolean run(CharStream input, ICInterpOptions options, InputStream in,
+                              PrintStream out, PrintStream err) {
+        LCListener parser = parseStream(input, err);
+        LCSyntaxTree result = null;
+        if (parser != null)
+            result = parser.getSyntaxTree();
+        if (result == null)
+            return false;
+
+        ICode iCode = options.getOptimization().genICode(result, err);
+        ICInterp context = null;
+        try {
+            context = options.createInterp(options.loadProgram(ICBinary.from(iCode.getIcLines())), in, out, err);
+            context.executeFunction("gf_main", new LinkedList<>());
+            return true;
+        } catch (ICExecutionException e) {
+            err.println(e.getMessage());
+            return false;
+        } finally {
+            if (context != null) options.writeProfile(context, err);
+        }
+    }
+
     /**
      * Command line interface -- one argument is filename, and if omitted then
-     * input is taken from standard input.
+     * input is taken from standard input. Interpreter options (see
+     * ICInterpOptions) may come before the filename.
      *
      * @param argv command line arguments
      */
     public static void main(String[] argv) {
+        ICInterpOptions options = new ICInterpOptions();
+        argv = options.parse(argv);
+        if (argv == null) return;
+
         LCListener parser;
         if (argv.length > 1) {
             System.err.println("Can provide at most one command line argument (an input filename)");
             return;
+        } else if ((argv.length == 1) && ICBinary.isBinaryFile(argv[0])) {
+            runBinary(argv[0], options);
+            return;
         } else if (argv.length == 1) {
             parser = parseFromFile(argv[0]);
         } else {
@@ -117,10 +185,48 @@ public class RunCode {
             result = parser.getSyntaxTree();
 
         if (result != null) {
-            ICode iCode = new ICode(result);
-            String codeAsStr = iCode.toString();
-            ICInterp context = new ICInterp(codeAsStr);
+            ICode iCode = options.getOptimization().genICode(result, System.err);
+            runMain(ICBinary.from(iCode.getIcLines()), options);
+        }
+    }
+
+    /**
+     * Runs intermediate code from a file in the binary form.
+     *
+     * @param fileName the name of the file
+     * @param options interpreter options
+     */
+    private static void runBinary(String fileName, ICInterpOptions options) {
+        ICBinary code;
+        try (InputStream in = new FileInputStream(fileName)) {
+            code = ICBinary.read(in);
+        } catch (IOException e) {
+            System.err.println("Could not read " + fileName + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        runMain(code, options);
+    }
+
+    /**
+     * Runs gf_main of a program on the standard streams, exiting with an
+     * error status if it fails.
+     *
+     * @param code the intermediate code
+     * @param options interpreter options
+     */
+    private static void runMain(ICBinary code, ICInterpOptions options) {
+        ICInterp context = null;
+        boolean ok = true;
+        try {
+            ICProgram program = options.loadProgram(code);
+            context = options.createInterp(program);
             context.executeFunction("gf_main", new LinkedList<>());
+        } catch (ICExecutionException e) {
+            System.err.println(e.getMessage());
+            ok = false;
         }
+        if (context != null) options.writeProfile(context, System.err);
+        if (!ok) System.exit(1);
     }
 }
@@ -4,26 +4,40 @@ import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
 
+import java.io.PrintStream;
+
 /**
  * This class can be added to either the lexer or the parser error reporting
  * chains (or both). All it does is keep track of whether an error was
  * detected, so after parsing you can call sawError() to see if there was a
- * problem.
+ * problem. It can also report the errors, in the same form as ANTLR's
+ * console listener, to a given stream instead of System.err.
  *
  * @author Steve Tate
  */
 public class LCErrorListener extends BaseErrorListener {
     private boolean gotError;
+    private final PrintStream report;
 
     public LCErrorListener() {
+        this(null);
+    }
+
+    /**
+     * @param report where to report errors, or null to only record them
+     */
+    public LCErrorListener(PrintStream report) {
         super();
         gotError = false;
+        this.report = report;
     }
 
     @Override
     public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
                             int line, int charPositionInLine, String msg, RecognitionException e) {
         gotError = true;
+        if (report != null)
+            report.println("line " + line + ":" + charPositionInLine + " " + msg);
     }
 
     /**
@@ -0,0 +1,682 @@
+package edu.uncg.csc439.icinterp;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import edu.uncg.csc439.icinterp.ICClassWriter.Label;
+import edu.uncg.csc439.icinterp.ICClassWriter.Method;
+
+import static edu.uncg.csc439.icinterp.ICClassWriter.*;
+
+/**
+ * Translates one decoded IC function (the lines from its .fnStart to its
+ * .fnEnd) into a JVM class extending ICCompiledFunction, so that the JVM's
+ * JIT compiler can optimize it like any other Java code. The generated code
+ * does exactly what the interpreter does for each line, including counting
+ * instructions, except that values are kept in JVM locals where possible:
+ * <ul>
+ *     <li>temporaries always</li>
+ *     <li>locals whose address is never taken, and that are only ever used
+ *         with one width (so they aren't arrays)</li>
+ *     <li>parameters, under the same conditions, as long as that holds for
+ *         all the parameters of the function</li>
+ * </ul>
+ * Everything else (arrays, globals, and variables whose address is taken)
+ * stays in the interpreter's memory, since IC code reaches it through
+ * pointers. When no local needs memory, no local frame is allocated at all.
+ *
+ * A tail call of the function itself (see ICProgram) gives up the frames
+ * and jumps back to the start of the function, so tail recursion runs as a
+ * loop; other calls are made through the interpreter.
+ *
+ * Functions with jumps out of the function are not compiled, and are left
+ * to the interpreter.
+ */
+final class ICBytecodeCompiler {
+    private static final String SUPER = "edu/uncg/csc439/icinterp/ICCompiledFunction";
+    private static final String INTERP = "edu/uncg/csc439/icinterp/ICInterp";
+    private static final String MEMORY = "edu/uncg/csc439/icinterp/ICMemory";
+
+    // Fixed JVM locals of the invoke method; temporaries and variables held
+    // in JVM locals come after these
+    private static final int THIS = 0;
+    private static final int NARGS = 1;
+    private static final int MEM = 2;
+    private static final int LFRAME = 3;
+    private static final int PFRAME = 4;
+    private static final int ARG_BASE = 5;
+    private static final int COUNT = 6;
+    private static final int SCRATCH = 7;
+    private static final int FIRST_VAR = 8;
+
+    private static final int MAX_STACK = 8;
+
+    // Width recorded for a slot that has to stay in memory
+    private static final int IN_MEMORY = -1;
+
+    private final ICInstr[] code;
+    private final int start;
+    private final int end;
+
+    // Slot -> width for every local and parameter used, then slot -> JVM
+    // local for the ones that are kept in JVM locals
+    private final Map<Integer,Integer> localWidths = new TreeMap<>();
+    private final Map<Integer,Integer> arraySizes = new TreeMap<>();
+    private final Map<Integer,Integer> paramWidths = new TreeMap<>();
+    private final Map<Integer,Integer> localVars = new TreeMap<>();
+    private final Map<Integer,Integer> paramVars = new TreeMap<>();
+    private boolean needLocalFrame;
+    private boolean paramsInMemory;
+    private boolean[] isTarget;
+
+    private Method m;
+    private Label[] lineLabels;
+    private Label restart;
+    private int pending;
+
+    /**
+     * @param code the decoded program
+     * @param fn the function to compile
+     */
+    ICBytecodeCompiler(ICInstr[] code, ICFunction fn) {
+        this.code = code;
+        this.start = fn.entry;
+        this.end = fn.end;
+    }
+
+    /**
+     * @param className internal name for the generated class
+     * @return the class file, or null if the function can't be compiled
+     */
+    byte[] compile(String className) {
+        if (!analyze()) return null;
+        ICClassWriter cw = new ICClassWriter(className, SUPER);
+
+        Method init = cw.method(ACC_PUBLIC, "<init>", "(L" + INTERP + ";)V");
+        init.var(ALOAD, 0);
+        init.var(ALOAD, 1);
+        init.invoke(INVOKESPECIAL, SUPER, "<init>", "(L" + INTERP + ";)V");
+        init.op(RETURN);
+        init.setMaxs(2, 2);
+
+        m = cw.method(ACC_PUBLIC, "invoke", "(I)I");
+        lineLabels = new Label[end+1];
+        for (int i=start; i<=end; i++) {
+            if (isTarget[i]) lineLabels[i] = m.newLabel();
+        }
+        int nVars = prologue();
+        for (int i=start+1; i<=end; i++) {
+            if (isTarget[i]) {
+                flushPending();
+                m.place(lineLabels[i]);
+            }
+            pending++;
+            line(i, code[i]);
+        }
+        m.setMaxs(MAX_STACK, nVars);
+        try {
+            return cw.toBytes();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Find the end of the function, check that it can be compiled, and
+     * decide which variables live in JVM locals.
+     */
+    private boolean analyze() {
+        if ((start < 0) || (end < 0)) return false;
+
+        isTarget = new boolean[end+1];
+        for (int i=start+1; i<=end; i++) {
+            ICInstr instr = code[i];
+            switch (instr.op) {
+                case GOTO:
+                case IF:
+                case IF_EXPR:
+                case IF_FALSE:
+                    if ((instr.target <= start) || (instr.target > end)) return false;
+                    isTarget[instr.target] = true;
+                    break;
+                default:
+                    break;
+            }
+            useVariable(instr.dst, false);
+            useVariable(instr.src1, instr.op == ICOpcode.ADDR);
+            useVariable(instr.src2, false);
+            if ((instr.op == ICOpcode.SETSIZE) && (instr.dst.kind == ICOperand.Kind.LOCAL)
+                    && (instr.src1.kind == ICOperand.Kind.CONST)) {
+                arraySizes.put(instr.dst.slot, 4 + 4*Math.max(instr.src1.value, 0));
+            }
+        }
+
+        separateOverlaps();
+        int nextVar = FIRST_VAR + code[start].regs;
+        for (Map.Entry<Integer,Integer> e : localWidths.entrySet()) {
+            if (e.getValue() == IN_MEMORY) needLocalFrame = true;
+            else localVars.put(e.getKey(), nextVar++);
+        }
+        paramsInMemory = paramWidths.containsValue(IN_MEMORY);
+        if (!paramsInMemory) {
+            for (int slot : paramWidths.keySet()) paramVars.put(slot, nextVar++);
+        }
+        return true;
+    }
+
+    private void useVariable(ICOperand opnd, boolean addressTaken) {
+        Map<Integer,Integer> widths;
+        if (opnd.kind == ICOperand.Kind.LOCAL) widths = localWidths;
+        else if (opnd.kind == ICOperand.Kind.PARAM) widths = paramWidths;
+        else return;
+
+        int width = opnd.width;
+        if (addressTaken || ((width != 1) && (width != 4))) width = IN_MEMORY;
+        // Parameters are passed as ints, so only whole ints (or their low
+        // byte) can be taken from the operand stack
+        if ((opnd.kind == ICOperand.Kind.PARAM) && ((opnd.slot % 4) != 0)) width = IN_MEMORY;
+        Integer prev = widths.get(opnd.slot);
+        if ((prev != null) && (prev != width)) width = IN_MEMORY;
+        widths.put(opnd.slot, width);
+    }
+
+    /**
+     * Locals whose bytes overlap other locals have to stay in memory. An
+     * array covers its header and (taking the elements to be ints) the
+     * elements given to its setsize, or everything after it when its size
+     * isn't a constant.
+     */
+    private void separateOverlaps() {
+        Map<Integer,Long> ends = new TreeMap<>();
+        for (Map.Entry<Integer,Integer> e : localWidths.entrySet()) {
+            int slot = e.getKey();
+            long size = (e.getValue() == 1) ? 1 : 4;
+            if (e.getValue() == IN_MEMORY)
+                size = arraySizes.containsKey(slot) ? Math.max(4, arraySizes.get(slot)) : Integer.MAX_VALUE;
+            ends.put(slot, slot + size);
+        }
+        for (Map.Entry<Integer,Long> a : ends.entrySet()) {
+            for (Map.Entry<Integer,Long> b : ends.entrySet()) {
+                if ((a.getKey() < b.getKey()) && (b.getKey() < a.getValue())) {
+                    localWidths.put(a.getKey(), IN_MEMORY);
+                    localWidths.put(b.getKey(), IN_MEMORY);
+                }
+            }
+        }
+    }
+
+    /**
+     * Set up the frame for a call: the same as starting a call and running
+     * the .fnStart line in the interpreter.
+     * @return the number of JVM locals used
+     */
+    private int prologue() {
+        m.var(ALOAD, THIS);
+        m.getField(SUPER, "mem", "L" + MEMORY + ";");
+        m.var(ASTORE, MEM);
+
+        // Tail calls of this function start again from here
+        restart = m.newLabel();
+        m.place(restart);
+        if (paramsInMemory) {
+            m.var(ALOAD, THIS);
+            m.var(ILOAD, NARGS);
+            m.invoke(INVOKEVIRTUAL, SUPER, "pushParams", "(I)I");
+        } else {
+            for (Map.Entry<Integer,Integer> e : paramVars.entrySet()) {
+                m.var(ALOAD, THIS);
+                m.pushInt(e.getKey() / 4);
+                m.var(ILOAD, NARGS);
+                m.invoke(INVOKEVIRTUAL, SUPER, "arg", "(II)I");
+                if (paramWidths.get(e.getKey()) == 1) m.op(I2B);
+                m.var(ISTORE, e.getValue());
+            }
+            m.var(ALOAD, THIS);
+            m.var(ILOAD, NARGS);
+            m.invoke(INVOKEVIRTUAL, SUPER, "dropArgs", "(I)V");
+            m.op(ICONST_0);
+        }
+        m.var(ISTORE, PFRAME);
+
+        m.var(ALOAD, THIS);
+        m.invoke(INVOKEVIRTUAL, SUPER, "argTop", "()I");
+        m.var(ISTORE, ARG_BASE);
+        m.op(ICONST_0);
+        m.var(ISTORE, COUNT);
+
+        // Temporaries start as ERR_VAL, as in the interpreter, and locals
+        // as 0, as in a new frame
+        int firstLocal = FIRST_VAR + code[start].regs;
+        int nVars = firstLocal + localVars.size() + paramVars.size();
+        for (int v=FIRST_VAR; v<nVars; v++) {
+            if (v < firstLocal) {
+                m.pushInt(ICInterp.ERR_VAL);
+                m.var(ISTORE, v);
+            } else if (!paramVars.containsValue(v)) {
+                m.op(ICONST_0);
+                m.var(ISTORE, v);
+            }
+        }
+
+        if (needLocalFrame) {
+            m.var(ALOAD, MEM);
+            m.pushInt(code[start].size);
+            m.invokeInterface(MEMORY, "pushFrame", "(I)I", 1);
+        } else {
+            m.op(ICONST_0);
+        }
+        m.var(ISTORE, LFRAME);
+        pending = 1;
+        return nVars;
+    }
+
+    /**
+     * Add the instructions counted so far to the count in the JVM local.
+     */
+    private void flushPending() {
+        if (pending > 0) m.iinc(COUNT, pending);
+        pending = 0;
+    }
+
+    /**
+     * Pass the count in the JVM local on to the interpreter.
+     */
+    private void flushCount() {
+        flushPending();
+        m.var(ALOAD, THIS);
+        m.var(ILOAD, COUNT);
+        m.invoke(INVOKEVIRTUAL, SUPER, "count", "(I)V");
+        m.op(ICONST_0);
+        m.var(ISTORE, COUNT);
+    }
+
+    private void line(int i, ICInstr instr) {
+        switch (instr.op) {
+            case FN_END:
+            case RETURN:
+                m.pushInt(ICInterp.ERR_VAL);
+                epilogue();
+                break;
+            case RETURN_VAL:
+                load(instr.width, instr.src1);
+                epilogue();
+                break;
+            case SETSIZE:
+                load(4, instr.src1);
+                store(instr.dst);
+                break;
+            case PARAM:
+                m.var(ALOAD, THIS);
+                load(instr.width, instr.src1);
+                m.invoke(INVOKEVIRTUAL, SUPER, "pushArg", "(I)V");
+                break;
+            case CALL:
+            case BUILTIN:
+                call(instr);
+                break;
+            case TAIL_CALL:
+                if (instr.target == start) selfTailCall(instr);
+                else call(instr);
+                break;
+            case GOTO:
+                jump(i, instr, GOTO);
+                break;
+            case IF:
+                jumpPrologue(i, instr);
+                load(0, instr.src1);
+                m.jump(IFNE, lineLabels[instr.target]);
+                break;
+            case IF_FALSE:
+                jumpPrologue(i, instr);
+                load(0, instr.src1);
+                m.jump(IFEQ, lineLabels[instr.target]);
+                break;
+            case IF_EXPR: {
+                int cmp = compareOpcode(instr.cond);
+                jumpPrologue(i, instr);
+                if (cmp < 0) {
+                    value(instr.cond, instr);
+                    m.jump(IFNE, lineLabels[instr.target]);
+                } else {
+                    loadOperands(instr);
+                    m.jump(cmp, lineLabels[instr.target]);
+                }
+                break;
+            }
+            case STIDX:
+                m.var(ALOAD, MEM);
+                load(4, instr.dst);
+                load(4, instr.src1);
+                if (instr.width == 1) {
+                    m.op(ICONST_0 + 4);
+                    m.op(IADD);
+                    load(instr.width, instr.src2);
+                    m.op(I2B);
+                    m.invokeInterface(MEMORY, "setByte", "(IIB)V", 3);
+                } else {
+                    elementOffset();
+                    load(instr.width, instr.src2);
+                    m.invokeInterface(MEMORY, "setInt", "(III)V", 3);
+                }
+                break;
+            case NOP:
+            case FN_START:
+                break;
+            default:
+                value(instr.op, instr);
+                store(instr.dst);
+                break;
+        }
+    }
+
+    private void jumpPrologue(int i, ICInstr instr) {
+        flushPending();
+        if (instr.target <= i) flushCount();
+    }
+
+    private void jump(int i, ICInstr instr, int opcode) {
+        jumpPrologue(i, instr);
+        m.jump(opcode, lineLabels[instr.target]);
+    }
+
+    /**
+     * Leave the function, returning the value on the stack.
+     */
+    private void epilogue() {
+        flushPending();
+        m.var(ISTORE, SCRATCH);
+        popFrames();
+        m.var(ALOAD, THIS);
+        m.var(ILOAD, ARG_BASE);
+        m.var(ILOAD, COUNT);
+        m.invoke(INVOKEVIRTUAL, SUPER, "leave", "(II)V");
+        m.var(ILOAD, SCRATCH);
+        m.op(IRETURN);
+    }
+
+    private void popFrames() {
+        if (needLocalFrame) {
+            m.var(ALOAD, MEM);
+            m.var(ILOAD, LFRAME);
+            m.invokeInterface(MEMORY, "popFrame", "(I)V", 1);
+        }
+        if (paramsInMemory) {
+            m.var(ALOAD, MEM);
+            m.var(ILOAD, PFRAME);
+            m.invokeInterface(MEMORY, "popFrame", "(I)V", 1);
+        }
+    }
+
+    /**
+     * Call this function again in place of the current call: give up the
+     * frames and run the prologue again with the call's arguments.
+     */
+    private void selfTailCall(ICInstr instr) {
+        flushCount();
+        m.var(ALOAD, THIS);
+        m.pushInt(instr.numArgs);
+        m.var(ILOAD, ARG_BASE);
+        m.invoke(INVOKEVIRTUAL, SUPER, "tailArgs", "(II)V");
+        popFrames();
+        m.pushInt(instr.numArgs);
+        m.var(ISTORE, NARGS);
+        m.jump(GOTO, restart);
+    }
+
+    private void call(ICInstr instr) {
+        flushCount();
+        m.var(ALOAD, THIS);
+        m.pushInt(instr.target);
+        m.pushInt(instr.numArgs);
+        m.var(ILOAD, ARG_BASE);
+        m.invoke(INVOKEVIRTUAL, SUPER, (instr.op == ICOpcode.BUILTIN) ? "callBuiltin" : "call", "(III)I");
+        store(instr.dst);
+    }
+
+    // Turn an index on the stack into the offset of an int array element
+    private void elementOffset() {
+        m.op(ICONST_0 + 2);
+        m.op(ISHL);
+        m.op(ICONST_0 + 4);
+        m.op(IADD);
+    }
+
+    private static int compareOpcode(ICOpcode op) {
+        switch (op) {
+            case LT: return IF_ICMPLT;
+            case LE: return IF_ICMPLE;
+            case GT: return IF_ICMPGT;
+            case GE: return IF_ICMPGE;
+            case EQ: return IF_ICMPEQ;
+            case NE: return IF_ICMPNE;
+            default: return -1;
+        }
+    }
+
+    private void loadOperands(ICInstr instr) {
+        load(instr.width, instr.src1);
+        if (instr.byteOp) m.op(I2B);
+        load(instr.width, instr.src2);
+        if (instr.byteOp) m.op(I2B);
+    }
+
+    /**
+     * Push the value of an operation, as calculated by the interpreter's
+     * calcVal.
+     */
+    private void value(ICOpcode op, ICInstr instr) {
+        int tWidth = instr.width;
+        switch (op) {
+            case NARROW:
+                load(tWidth, instr.src1);
+                m.op(I2B);
+                break;
+            case WIDEN:
+            case COPY:
+            case POS:
+                load(tWidth, instr.src1);
+                break;
+            case ADD: case SUB: case MUL: case DIV: case MOD:
+                loadOperands(instr);
+                m.op(arithOpcode(op));
+                if (instr.byteOp) m.op(I2B);
+                break;
+            case LT: case LE: case GT: case GE: case EQ: case NE: {
+                loadOperands(instr);
+                Label isTrue = m.newLabel();
+                Label done = m.newLabel();
+                m.jump(compareOpcode(op), isTrue);
+                m.op(ICONST_0);
+                m.jump(GOTO, done);
+                m.place(isTrue);
+                m.op(ICONST_0 + 1);
+                m.place(done);
+                break;
+            }
+            case LDIDX1:
+                m.var(ALOAD, MEM);
+                load(tWidth, instr.src1);
+                load(tWidth, instr.src2);
+                m.op(ICONST_0 + 4);
+                m.op(IADD);
+                m.invokeInterface(MEMORY, "getByte", "(II)B", 2);
+                break;
+            case LDIDX4:
+                if (instr.byteOp) {
+                    m.pushInt(ICInterp.ERR_VAL);
+                } else {
+                    m.var(ALOAD, MEM);
+                    load(tWidth, instr.src1);
+                    load(tWidth, instr.src2);
+                    elementOffset();
+                    m.invokeInterface(MEMORY, "getInt", "(II)I", 2);
+                }
+                break;
+            case NEG:
+                load(tWidth, instr.src1);
+                if (instr.byteOp) m.op(I2B);
+                m.op(INEG);
+                if (instr.byteOp) m.op(I2B);
+                break;
+            case NOT: {
+                load(tWidth, instr.src1);
+                Label isZero = m.newLabel();
+                Label done = m.newLabel();
+                m.jump(IFEQ, isZero);
+                m.op(ICONST_0 + 1);
+                m.jump(GOTO, done);
+                m.place(isZero);
+                m.op(ICONST_0);
+                m.place(done);
+                break;
+            }
+            case ADDR:
+                address(instr.src1);
+                break;
+            case LEN:
+                m.var(ALOAD, MEM);
+                load(tWidth, instr.src1);
+                m.op(ICONST_0);
+                m.invokeInterface(MEMORY, "getInt", "(II)I", 2);
+                break;
+            default:
+                m.pushInt(ICInterp.ERR_VAL);
+                break;
+        }
+    }
+
+    private static int arithOpcode(ICOpcode op) {
+        switch (op) {
+            case ADD: return IADD;
+            case SUB: return ISUB;
+            case MUL: return IMUL;
+            case DIV: return IDIV;
+            default: return IREM;
+        }
+    }
+
+    private void address(ICOperand opnd) {
+        switch (opnd.kind) {
+            case LOCAL:
+                m.var(ILOAD, LFRAME);
+                m.pushInt(opnd.slot);
+                m.op(IADD);
+                break;
+            case PARAM:
+                m.var(ILOAD, PFRAME);
+                m.pushInt(opnd.slot);
+                m.op(IADD);
+                break;
+            case GLOBAL:
+            case STRLIT:
+                m.pushInt(opnd.slot);
+                break;
+            default:
+                m.op(ICONST_0);
+                break;
+        }
+    }
+
+    /**
+     * Push the value of an operand, as read by the interpreter's getVal.
+     */
+    private void load(int tWidth, ICOperand opnd) {
+        switch (opnd.kind) {
+            case CONST:
+                m.pushInt((tWidth == 1) ? (byte) opnd.value : opnd.value);
+                break;
+            case TEMP:
+                m.var(ILOAD, FIRST_VAR + opnd.slot);
+                break;
+            case LOCAL:
+                loadVariable(opnd, localVars, LFRAME);
+                break;
+            case PARAM:
+                loadVariable(opnd, paramVars, PFRAME);
+                break;
+            case GLOBAL:
+                m.var(ALOAD, MEM);
+                m.pushInt(opnd.slot);
+                m.op(ICONST_0);
+                loadFromMemory(opnd.width);
+                break;
+            case STRLIT:
+                m.pushInt(opnd.slot);
+                break;
+            default:
+                m.pushInt(ICInterp.ERR_VAL);
+                break;
+        }
+    }
+
+    private void loadVariable(ICOperand opnd, Map<Integer,Integer> vars, int frame) {
+        Integer var = vars.get(opnd.slot);
+        if (var != null) {
+            m.var(ILOAD, var);
+        } else {
+            m.var(ALOAD, MEM);
+            m.var(ILOAD, frame);
+            m.pushInt(opnd.slot);
+            loadFromMemory(opnd.width);
+        }
+    }
+
+    private void loadFromMemory(int width) {
+        if (width == 1) m.invokeInterface(MEMORY, "getByte", "(II)B", 2);
+        else m.invokeInterface(MEMORY, "getInt", "(II)I", 2);
+    }
+
+    /**
+     * Store the value on the stack into an operand, as the interpreter's
+     * setVal does.
+     */
+    private void store(ICOperand opnd) {
+        switch (opnd.kind) {
+            case TEMP:
+                if (opnd.width == 1) m.op(I2B);
+                m.var(ISTORE, FIRST_VAR + opnd.slot);
+                break;
+            case LOCAL:
+                storeVariable(opnd, localVars, LFRAME);
+                break;
+            case PARAM:
+                storeVariable(opnd, paramVars, PFRAME);
+                break;
+            case GLOBAL:
+                m.var(ISTORE, SCRATCH);
+                m.var(ALOAD, MEM);
+                m.pushInt(opnd.slot);
+                m.op(ICONST_0);
+                storeToMemory(opnd.width);
+                break;
+            default:
+                m.op(POP);
+                break;
+        }
+    }
+
+    private void storeVariable(ICOperand opnd, Map<Integer,Integer> vars, int frame) {
+        Integer var = vars.get(opnd.slot);
+        if (var != null) {
+            if (opnd.width == 1) m.op(I2B);
+            m.var(ISTORE, var);
+        } else {
+            m.var(ISTORE, SCRATCH);
+            m.var(ALOAD, MEM);
+            m.var(ILOAD, frame);
+            m.pushInt(opnd.slot);
+            storeToMemory(opnd.width);
+        }
+    }
+
+    // Store the value in SCRATCH, with the pointer and offset on the stack
+    private void storeToMemory(int width) {
+        m.var(ILOAD, SCRATCH);
+        if (width == 1) {
+            m.op(I2B);
+            m.invokeInterface(MEMORY, "setByte", "(IIB)V", 3);
+        } else {
+            m.invokeInterface(MEMORY, "setInt", "(III)V", 3);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package edu.uncg.csc439.icinterp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small assembler for JVM class files, with just what ICBytecodeCompiler
+ * needs: a constant pool, methods with a Code attribute, and forward and
+ * backward branches to labels.
+ *
+ * Classes are written with class file version 49, which predates the
+ * StackMapTable attribute, so the JVM checks them with the type-inferring
+ * verifier and no stack map frames have to be computed here. Branch offsets
+ * are 16 bits, so a method is limited to 32K bytes of code; longer methods
+ * throw IllegalStateException from toBytes.
+ */
+final class ICClassWriter {
+    private static final int VERSION = 49;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    // Opcodes used by the compiler
+    static final int ICONST_M1 = 0x02;
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int ISTORE = 0x36;
+    static final int ASTORE = 0x3a;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IDIV = 0x6c;
+    static final int IREM = 0x70;
+    static final int INEG = 0x74;
+    static final int ISHL = 0x78;
+    static final int IINC = 0x84;
+    static final int I2B = 0x91;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IF_ICMPEQ = 0x9f;
+    static final int IF_ICMPNE = 0xa0;
+    static final int IF_ICMPLT = 0xa1;
+    static final int IF_ICMPGE = 0xa2;
+    static final int IF_ICMPGT = 0xa3;
+    static final int IF_ICMPLE = 0xa4;
+    static final int GOTO = 0xa7;
+    static final int IRETURN = 0xac;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int WIDE = 0xc4;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String,Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final String name;
+    private final String superName;
+    private final List<Method> methods = new ArrayList<>();
+
+    /**
+     * @param name internal name of the class (with slashes)
+     * @param superName internal name of its superclass
+     */
+    ICClassWriter(String name, String superName) {
+        this.name = name;
+        this.superName = superName;
+    }
+
+    // Constant pool entries are shared, keyed by a string describing them
+
+    private int constant(String key, int tag, Entry entry) {
+        Integer index = poolIndex.get(key);
+        if (index != null) return index;
+        try {
+            pool.writeByte(tag);
+            entry.write(pool);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+
+    private interface Entry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    int utf8(String s) {
+        return constant("U" + s, CONSTANT_UTF8, out -> out.writeUTF(s));
+    }
+
+    int classRef(String internalName) {
+        int nameIndex = utf8(internalName);
+        return constant("C" + internalName, CONSTANT_CLASS, out -> out.writeShort(nameIndex));
+    }
+
+    int integer(int value) {
+        return constant("I" + value, CONSTANT_INTEGER, out -> out.writeInt(value));
+    }
+
+    private int nameAndType(String memberName, String desc) {
+        int n = utf8(memberName);
+        int d = utf8(desc);
+        return constant("N" + memberName + " " + desc, CONSTANT_NAME_AND_TYPE, out -> {
+            out.writeShort(n);
+            out.writeShort(d);
+        });
+    }
+
+    private int memberRef(int tag, String owner, String memberName, String desc) {
+        int c = classRef(owner);
+        int nt = nameAndType(memberName, desc);
+        return constant(tag + owner + "." + memberName + " " + desc, tag, out -> {
+            out.writeShort(c);
+            out.writeShort(nt);
+        });
+    }
+
+    int fieldRef(String owner, String fieldName, String desc) {
+        return memberRef(CONSTANT_FIELDREF, owner, fieldName, desc);
+    }
+
+    int methodRef(String owner, String methodName, String desc) {
+        return memberRef(CONSTANT_METHODREF, owner, methodName, desc);
+    }
+
+    int interfaceMethodRef(String owner, String methodName, String desc) {
+        return memberRef(CONSTANT_INTERFACE_METHODREF, owner, methodName, desc);
+    }
+
+    /**
+     * Start a new method.
+     * @param access access flags
+     * @param methodName name of the method
+     * @param desc method descriptor
+     * @return the method, to add code to
+     */
+    Method method(int access, String methodName, String desc) {
+        Method m = new Method(access, utf8(methodName), utf8(desc));
+        methods.add(m);
+        return m;
+    }
+
+    /**
+     * @return the class file
+     */
+    byte[] toBytes() {
+        int thisIndex = classRef(name);
+        int superIndex = classRef(superName);
+        int codeIndex = utf8("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(0);      // interfaces
+            out.writeShort(0);      // fields
+            out.writeShort(methods.size());
+            for (Method m : methods) m.write(out, codeIndex);
+            out.writeShort(0);      // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A position in a method's code that branches can jump to.
+     */
+    static final class Label {
+        private int offset = -1;
+        private final List<Integer> fixups = new ArrayList<>();
+    }
+
+    /**
+     * The code of one method.
+     */
+    final class Method {
+        private final int access;
+        private final int nameIndex;
+        private final int descIndex;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<>();
+        private int maxStack;
+        private int maxLocals;
+
+        private Method(int access, int nameIndex, int descIndex) {
+            this.access = access;
+            this.nameIndex = nameIndex;
+            this.descIndex = descIndex;
+        }
+
+        /**
+         * Set the sizes of the operand stack and local variables.
+         */
+        void setMaxs(int maxStack, int maxLocals) {
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        void op(int opcode) {
+            code.write(opcode);
+        }
+
+        private void u2(int value) {
+            code.write(value >> 8);
+            code.write(value);
+        }
+
+        void pushInt(int value) {
+            if ((value >= -1) && (value <= 5)) {
+                op(ICONST_0 + value);
+            } else if ((value >= Byte.MIN_VALUE) && (value <= Byte.MAX_VALUE)) {
+                op(BIPUSH);
+                code.write(value);
+            } else if ((value >= Short.MIN_VALUE) && (value <= Short.MAX_VALUE)) {
+                op(SIPUSH);
+                u2(value);
+            } else {
+                ldc(integer(value));
+            }
+        }
+
+        private void ldc(int index) {
+            if (index < 256) {
+                op(LDC);
+                code.write(index);
+            } else {
+                op(LDC_W);
+                u2(index);
+            }
+        }
+
+        /**
+         * A load or store of a local variable.
+         */
+        void var(int opcode, int index) {
+            if (index < 256) {
+                op(opcode);
+                code.write(index);
+            } else {
+                op(WIDE);
+                op(opcode);
+                u2(index);
+            }
+        }
+
+        void iinc(int index, int delta) {
+            if ((index < 256) && (delta >= Byte.MIN_VALUE) && (delta <= Byte.MAX_VALUE)) {
+                op(IINC);
+                code.write(index);
+                code.write(delta);
+            } else {
+                op(WIDE);
+                op(IINC);
+                u2(index);
+                u2(delta);
+            }
+        }
+
+        void getField(String owner, String fieldName, String desc) {
+            op(GETFIELD);
+            u2(fieldRef(owner, fieldName, desc));
+        }
+
+        void invoke(int opcode, String owner, String methodName, String desc) {
+            op(opcode);
+            u2(methodRef(owner, methodName, desc));
+        }
+
+        /**
+         * @param argSlots number of argument words, not counting the receiver
+         */
+        void invokeInterface(String owner, String methodName, String desc, int argSlots) {
+            op(INVOKEINTERFACE);
+            u2(interfaceMethodRef(owner, methodName, desc));
+            code.write(argSlots + 1);
+            code.write(0);
+        }
+
+        Label newLabel() {
+            Label label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        void place(Label label) {
+            label.offset = code.size();
+        }
+
+        /**
+         * A branch or goto to a label, which may be placed later.
+         */
+        void jump(int opcode, Label label) {
+            label.fixups.add(code.size());
+            op(opcode);
+            u2(0);
+        }
+
+        private void write(DataOutputStream out, int codeIndex) throws IOException {
+            byte[] bytes = code.toByteArray();
+            if (bytes.length > Short.MAX_VALUE)
+                throw new IllegalStateException("Method too large");
+            for (Label label : labels) {
+                if (label.offset < 0)
+                    throw new IllegalStateException("Label never placed");
+                for (int at : label.fixups) {
+                    int delta = label.offset - at;
+                    bytes[at+1] = (byte) (delta >> 8);
+                    bytes[at+2] = (byte) delta;
+                }
+            }
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descIndex);
+            out.writeShort(1);      // the Code attribute
+            out.writeShort(codeIndex);
+            out.writeInt(12 + bytes.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0);      // exception table
+            out.writeShort(0);      // attributes
+        }
+    }
+}
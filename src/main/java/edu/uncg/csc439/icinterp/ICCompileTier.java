@@ -0,0 +1,62 @@
+package edu.uncg.csc439.icinterp;
+
+/**
+ * The compiled tier of an interpreter. Calls to each function are counted,
+ * and once a function has been called often enough it is translated to JVM
+ * bytecode (see ICBytecodeCompiler). The generated classes are shared by
+ * everything running the same ICProgram, but each interpreter has its own
+ * instances of them and its own call counts.
+ * Functions that can't be compiled are remembered, and stay interpreted.
+ */
+final class ICCompileTier {
+    private final ICInterp interp;
+    private final ICProgram program;
+    private final int threshold;
+
+    // Indexed by the line of each function's .fnStart
+    private final int[] calls;
+    private final ICCompiledFunction[] compiled;
+    private final boolean[] failed;
+
+    /**
+     * @param threshold number of calls after which a function is compiled
+     */
+    ICCompileTier(ICInterp interp, ICProgram program, int threshold) {
+        this.interp = interp;
+        this.program = program;
+        this.threshold = threshold;
+        int nLines = program.code().length;
+        this.calls = new int[nLines];
+        this.compiled = new ICCompiledFunction[nLines];
+        this.failed = new boolean[nLines];
+    }
+
+    /**
+     * Count a call to a function, compiling it if it has become hot.
+     * @param startLine line of the function's .fnStart
+     * @return the compiled function, or null if it should be interpreted
+     */
+    ICCompiledFunction lookup(int startLine) {
+        ICCompiledFunction fn = compiled[startLine];
+        if ((fn != null) || failed[startLine]) return fn;
+        if (++calls[startLine] < threshold) return null;
+
+        fn = instantiate(startLine);
+        if (fn == null) failed[startLine] = true;
+        compiled[startLine] = fn;
+        return fn;
+    }
+
+    private ICCompiledFunction instantiate(int startLine) {
+        try {
+            Class<?> c = program.compiledClass(startLine);
+            if (c == null) return null;
+            return (ICCompiledFunction) c.getConstructor(ICInterp.class).newInstance(interp);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            program.markNotCompilable(startLine);
+            interp.errorStream().println("Internal simulator error: Could not compile "
+                    + program.functionAt(startLine) + ": " + e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package edu.uncg.csc439.icinterp;
+
+/**
+ * Superclass of the classes generated by ICBytecodeCompiler, one for each
+ * compiled IC function. The generated classes are loaded by their own class
+ * loader, so they can only reach the interpreter through the protected
+ * methods here, which keep the interpreter's operand stack, call depth and
+ * instruction count in step with the interpreted code.
+ */
+public abstract class ICCompiledFunction {
+    private final ICInterp interp;
+    protected final ICMemory mem;
+
+    protected ICCompiledFunction(ICInterp interp) {
+        this.interp = interp;
+        this.mem = interp.memory();
+    }
+
+    /**
+     * Run the function, taking its arguments from the top of the operand
+     * stack (the first argument is on top) and popping them.
+     * @param nArgs number of arguments
+     * @return the value returned by the function
+     */
+    public abstract int invoke(int nArgs);
+
+    /**
+     * Pop the arguments into a new parameter frame.
+     * @return pointer to the frame
+     */
+    protected final int pushParams(int nArgs) {
+        return interp.pushParams(nArgs);
+    }
+
+    /**
+     * @return argument i of the nArgs on top of the operand stack, or 0 if
+     *         there are fewer arguments than that
+     */
+    protected final int arg(int i, int nArgs) {
+        return interp.peekArg(i, nArgs);
+    }
+
+    /**
+     * Pop the arguments without copying them anywhere.
+     */
+    protected final void dropArgs(int nArgs) {
+        interp.dropArgs(nArgs);
+    }
+
+    /**
+     * @return the current top of the operand stack
+     */
+    protected final int argTop() {
+        return interp.argTop();
+    }
+
+    protected final void pushArg(int val) {
+        interp.pushArg(val);
+    }
+
+    /**
+     * Call a function defined in the program.
+     * @param startLine line of the function's .fnStart
+     * @param numArgs number of arguments given in the call
+     * @param argBase top of the operand stack when the caller started
+     * @return the value returned by the function
+     */
+    protected final int call(int startLine, int numArgs, int argBase) {
+        return interp.callFromCompiled(startLine, numArgs, argBase);
+    }
+
+    /**
+     * Get ready for a tail call of this same function: the call's arguments
+     * are left on top of the operand stack, with nothing between them and
+     * argBase.
+     */
+    protected final void tailArgs(int numArgs, int argBase) {
+        interp.tailArgsFromCompiled(numArgs, argBase);
+    }
+
+    /**
+     * Call a builtin function.
+     * @param builtin number of the builtin (see ICInterp.builtin)
+     */
+    protected final int callBuiltin(int builtin, int numArgs, int argBase) {
+        return interp.callBuiltinFromCompiled(builtin, numArgs, argBase);
+    }
+
+    /**
+     * Add to the count of executed instructions.
+     */
+    protected final void count(int n) {
+        interp.addInstructions(n);
+    }
+
+    /**
+     * Finish a call: drop any arguments that were pushed and never used,
+     * and count the instructions executed since the last count.
+     */
+    protected final void leave(int argBase, int n) {
+        interp.leaveCompiled(argBase, n);
+    }
+}
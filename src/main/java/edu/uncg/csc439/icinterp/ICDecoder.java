@@ -0,0 +1,234 @@
+package edu.uncg.csc439.icinterp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes lines of intermediate code text into ICInstr objects. Decoding is
+ * done once, when the program is loaded, so that the interpreter never has to
+ * split or compare strings while it is running. All operands are resolved to
+ * slots at the same time (see ICOperand), with the temporaries of each
+ * function numbered from 0 so they fit in a small register file.
+ */
+public class ICDecoder {
+    private final Map<String,Integer> labels;
+    private final int[] globals;
+    private final Map<String,Integer> temps;
+
+    /**
+     * @param labels map from label names to line numbers, used to resolve
+     *               jump targets and global names
+     * @param globals pointers to the data for each data definition line
+     */
+    public ICDecoder(Map<String,Integer> labels, int[] globals) {
+        this.labels = labels;
+        this.globals = globals;
+        this.temps = new HashMap<>();
+    }
+
+    /**
+     * Decode a program. The lines must already have had their labels removed
+     * and be trimmed.
+     * @param lines the text of each line
+     * @return the decoded instructions, one for each line
+     */
+    public ICInstr[] decode(String[] lines) {
+        String[][] parts = new String[lines.length][];
+        for (int i=0; i<lines.length; i++)
+            parts[i] = lines[i].isEmpty() ? new String[0] : lines[i].split(" +");
+        return decode(lines, parts);
+    }
+
+    /**
+     * Decode a program whose lines have already been split into words.
+     * @param lines the text of each line, without its label
+     * @param parts the words of each line
+     * @return the decoded instructions, one for each line
+     */
+    public ICInstr[] decode(String[] lines, String[][] parts) {
+        ICInstr[] code = new ICInstr[lines.length];
+        int fnStart = -1;
+        for (int i=0; i<lines.length; i++) {
+            code[i] = decodeLine(parts[i], lines[i]);
+            if (code[i].op == ICOpcode.FN_START) {
+                if (fnStart >= 0) code[fnStart] = code[fnStart].withRegs(temps.size());
+                fnStart = i;
+                temps.clear();
+            }
+        }
+        if (fnStart >= 0) code[fnStart] = code[fnStart].withRegs(temps.size());
+        return code;
+    }
+
+    /**
+     * Decode a single line of IC text.
+     * @param parts the words of the line
+     * @param line the text of the line
+     * @return the decoded instruction
+     */
+    private ICInstr decodeLine(String[] parts, String line) {
+        if (parts.length == 0) return nop(line);
+
+        if (parts[0].equalsIgnoreCase(".fnStart")) {
+            int size = 0;
+            if (parts.length > 1) {
+                try {
+                    size = Integer.parseInt(parts[1]);
+                } catch (NumberFormatException e) {
+                    size = 0;
+                }
+            }
+            return new ICInstr(ICOpcode.FN_START, null, 0, ICOperand.NONE, ICOperand.NONE, ICOperand.NONE,
+                    null, -1, null, 0, size, line);
+        } else if (parts[0].equalsIgnoreCase(".fnEnd")) {
+            return simple(ICOpcode.FN_END, line);
+        } else if (parts[0].equals("return")) {
+            return simple(ICOpcode.RETURN, line);
+        } else if (parts[0].equals("return1") || parts[0].equals("return4")) {
+            int width = parts[0].charAt(6) - '0';
+            return new ICInstr(ICOpcode.RETURN_VAL, null, width, ICOperand.NONE, operand(parts, 1), ICOperand.NONE,
+                    null, -1, null, 0, 0, line);
+        } else if ((parts.length == 3) && (parts[1].equals("setsize"))) {
+            return new ICInstr(ICOpcode.SETSIZE, null, 4, operand(parts[0]), operand(parts, 2),
+                    ICOperand.NONE, null, -1, null, 0, 0, line);
+        } else if (parts[0].equals("param1") || parts[0].equals("param4")) {
+            int width = parts[0].charAt(5) - '0';
+            return new ICInstr(ICOpcode.PARAM, null, width, ICOperand.NONE, operand(parts, 1), ICOperand.NONE,
+                    null, -1, null, 0, 0, line);
+        } else if ((parts[0].equals("call")) || ((parts.length > 2) && (parts[2].equals("call")))) {
+            return decodeCall(parts, line);
+        } else if (parts[0].equals("goto")) {
+            return jump(ICOpcode.GOTO, null, ICOperand.NONE, ICOperand.NONE, label(parts, 1), line);
+        } else if (parts[0].equals("if")) {
+            if ((parts.length > 2) && parts[2].equals("goto")) {
+                return jump(ICOpcode.IF, null, operand(parts, 1), ICOperand.NONE, label(parts, 3), line);
+            } else {
+                ICInstr expr = decodeExpr(parts, 1, 0, ICOperand.NONE, line);
+                return jump(ICOpcode.IF_EXPR, expr.op, expr.src1, expr.src2, label(parts, 5), line);
+            }
+        } else if (parts[0].equals("ifFalse")) {
+            return jump(ICOpcode.IF_FALSE, null, operand(parts, 1), ICOperand.NONE, label(parts, 3), line);
+        } else if ((parts.length > 1) && (parts[1].equals("="))) {
+            if ((parts.length > 3) && parts[3].startsWith("stidx")) {
+                int width = parts[3].charAt(5) - '0';
+                return new ICInstr(ICOpcode.STIDX, null, width, operand(parts[0]), operand(parts, 2),
+                        operand(parts, 4), null, -1, null, 0, 0, line);
+            } else {
+                ICOperand dst = operand(parts[0]);
+                return decodeExpr(parts, 2, ICInterp.getTWidth(parts[0]), dst, line);
+            }
+        }
+        return nop(line);
+    }
+
+    /**
+     * Decode the expression starting at parts[si] (a copy, cast, unary or
+     * binary operation) into an instruction assigning to dst.
+     */
+    private ICInstr decodeExpr(String[] parts, int si, int tWidth, ICOperand dst, String line) {
+        ICOpcode op;
+        ICOperand src1 = ICOperand.NONE;
+        ICOperand src2 = ICOperand.NONE;
+        if (si >= parts.length) {
+            op = ICOpcode.ERRVAL;
+        } else if (parts[si].equals("narrow")) {
+            op = ICOpcode.NARROW;
+            src1 = operand(parts, si+1);
+        } else if (parts[si].equals("widen")) {
+            op = ICOpcode.WIDEN;
+            src1 = operand(parts, si+1);
+        } else if (parts[si].substring(0,1).matches("[A-Za-z0-9_]")) {
+            src1 = operand(parts[si]);
+            if (si+2 >= parts.length) {
+                op = ICOpcode.COPY;
+            } else {
+                op = ICOpcode.binaryOp(parts[si+1]);
+                src2 = operand(parts[si+2]);
+            }
+        } else if (si+1 >= parts.length) {
+            op = ICOpcode.ERRVAL;
+        } else {
+            op = ICOpcode.unaryOp(parts[si]);
+            src1 = operand(parts[si+1]);
+        }
+        return new ICInstr(op, null, tWidth, dst, src1, src2, null, -1, null, 0, 0, line);
+    }
+
+    private ICInstr decodeCall(String[] parts, String line) {
+        int si = 2;
+        ICOperand dst = operand(parts[0]);
+        if (parts[0].equals("call")) {
+            si = 0;
+            dst = ICOperand.NONE;
+        }
+        // The function name and argument count may be written "f,n" or "f, n"
+        StringBuilder callinfo = new StringBuilder();
+        for (int i=si+1; i<parts.length; i++)
+            callinfo.append(parts[i]);
+        String[] info = callinfo.toString().split(",");
+        int numArgs = 0;
+        if (info.length > 1) {
+            try {
+                numArgs = Integer.parseInt(info[1]);
+            } catch (NumberFormatException e) {
+                numArgs = 0;
+            }
+        }
+        int builtin = ICInterp.builtin(info[0]);
+        if (builtin >= 0) {
+            return new ICInstr(ICOpcode.BUILTIN, null, ICInterp.getTWidth(parts[0]), dst, ICOperand.NONE,
+                    ICOperand.NONE, null, builtin, info[0], numArgs, 0, line);
+        }
+        Integer target = labels.get(info[0]);
+        return new ICInstr(ICOpcode.CALL, null, ICInterp.getTWidth(parts[0]), dst, ICOperand.NONE, ICOperand.NONE,
+                null, (target == null) ? -1 : target, info[0], numArgs, 0, line);
+    }
+
+    private ICInstr jump(ICOpcode op, ICOpcode cond, ICOperand src1, ICOperand src2, String label, String line) {
+        Integer target = labels.get(label);
+        return new ICInstr(op, cond, 0, ICOperand.NONE, src1, src2, label, (target == null) ? -1 : target,
+                null, 0, 0, line);
+    }
+
+    private static ICInstr simple(ICOpcode op, String line) {
+        return new ICInstr(op, null, 0, ICOperand.NONE, ICOperand.NONE, ICOperand.NONE, null, -1, null, 0, 0, line);
+    }
+
+    private static ICInstr nop(String line) {
+        return simple(ICOpcode.NOP, line);
+    }
+
+    private ICOperand operand(String[] parts, int i) {
+        return (i < parts.length) ? operand(parts[i]) : ICOperand.NONE;
+    }
+
+    /**
+     * Decode an operand and resolve it to its slot. Globals and string
+     * literals that aren't defined can't be resolved.
+     */
+    private ICOperand operand(String name) {
+        ICOperand opnd = ICOperand.decode(name);
+        switch (opnd.kind) {
+            case GLOBAL:
+            case STRLIT: {
+                Integer line = labels.get(name);
+                if (line == null) return opnd.unresolved();
+                return opnd.withSlot(globals[line]);
+            }
+            case TEMP: {
+                Integer reg = temps.get(name);
+                if (reg == null) {
+                    reg = temps.size();
+                    temps.put(name, reg);
+                }
+                return opnd.withSlot(reg);
+            }
+            default:
+                return opnd;
+        }
+    }
+
+    private static String label(String[] parts, int i) {
+        return (i < parts.length) ? parts[i] : "";
+    }
+}
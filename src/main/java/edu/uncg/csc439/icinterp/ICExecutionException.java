@@ -0,0 +1,16 @@
+package edu.uncg.csc439.icinterp;
+
+/**
+ * An error that stops the program being run by ICInterp, such as a bad
+ * memory access or running past one of the limits set on the interpreter.
+ * The interpreter that threw it shouldn't be used to run anything else.
+ */
+public class ICExecutionException extends RuntimeException {
+    public ICExecutionException(String message) {
+        super(message);
+    }
+
+    public ICExecutionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,80 @@
+package edu.uncg.csc439.icinterp;
+
+/**
+ * Description of a function that a program can call, worked out when the
+ * program is loaded (see ICProgram.getFunction). Every call site is bound
+ * to its callee when it is decoded: a CALL carries the callee's entry line,
+ * and a BUILTIN the number of an intrinsic.
+ */
+public final class ICFunction {
+    private static final ICFunction[] INTRINSICS = {
+            new ICFunction("gf_printd", -1, -1, 0, 0, 1, ICInterp.PRINTD),
+            new ICFunction("gf_prints", -1, -1, 0, 0, 1, ICInterp.PRINTS),
+            new ICFunction("gf_read", -1, -1, 0, 0, 0, ICInterp.READ),
+            new ICFunction("gf_readline", -1, -1, 0, 0, 1, ICInterp.READLINE),
+    };
+
+    public final String name;
+    // Lines of the .fnStart and .fnEnd, or -1 for intrinsics
+    public final int entry;
+    public final int end;
+    // Bytes of locals, from the .fnStart
+    public final int frameSize;
+    // Number of temporary registers
+    public final int regs;
+    // Number of parameters the function uses (the parameters past the last
+    // one it uses can't be seen)
+    public final int paramCount;
+    // Number of the builtin (see ICInterp.builtin), or -1 for a function
+    // defined in the program
+    public final int builtin;
+
+    ICFunction(String name, int entry, int end, int frameSize, int regs, int paramCount, int builtin) {
+        this.name = name;
+        this.entry = entry;
+        this.end = end;
+        this.frameSize = frameSize;
+        this.regs = regs;
+        this.paramCount = paramCount;
+        this.builtin = builtin;
+    }
+
+    /**
+     * @return the description of a builtin function
+     * @param builtin number of the builtin
+     */
+    static ICFunction intrinsic(int builtin) {
+        return INTRINSICS[builtin];
+    }
+
+    /**
+     * Describe the function defined by the lines from a .fnStart to its
+     * .fnEnd.
+     * @param end line of the .fnEnd, or -1 if there is none before the next
+     *            function
+     */
+    static ICFunction defined(String name, ICInstr[] code, int entry, int end) {
+        int paramCount = 0;
+        int last = (end < 0) ? code.length : end;
+        for (int i=entry+1; (i<last) && (code[i].op != ICOpcode.FN_START); i++) {
+            for (ICOperand opnd : new ICOperand[] {code[i].dst, code[i].src1, code[i].src2}) {
+                if (opnd.kind == ICOperand.Kind.PARAM)
+                    paramCount = Math.max(paramCount, opnd.slot/4 + 1);
+            }
+        }
+        return new ICFunction(name, entry, end, code[entry].size, code[entry].regs, paramCount, -1);
+    }
+
+    /**
+     * @return true if this is a builtin function, run by the interpreter
+     *         itself rather than by IC code
+     */
+    public boolean isIntrinsic() {
+        return builtin >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
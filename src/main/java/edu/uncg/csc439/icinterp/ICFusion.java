@@ -0,0 +1,138 @@
+package edu.uncg.csc439.icinterp;
+
+/**
+ * Selection of specialized instructions for the FUSED dispatch strategy (see
+ * ICInterp.Dispatch). Each decoded instruction is given a small int opcode,
+ * so the interpreter loop can dispatch with a dense switch (a tableswitch).
+ * Opcodes other than GENERIC are only used when an instruction's operands are
+ * all ints, so they can skip the width handling of the general case:
+ * <ul>
+ *     <li>compare-and-branch: "if a relop b goto L", one opcode per relop</li>
+ *     <li>load-indexed: "t = a ldidx4 i"</li>
+ *     <li>an add, subtract or multiply followed by a copy of its result, as
+ *         in "t = a + b" then "x = t", fused into one step</li>
+ *     <li>plain int copies, adds, stores, params and jumps, and the empty
+ *         lines that carry labels</li>
+ * </ul>
+ * Everything else is GENERIC and goes through the decoded switch.
+ */
+final class ICFusion {
+    static final int GENERIC = 0;
+    static final int GOTO = 1;
+    static final int JLT = 2;
+    static final int JLE = 3;
+    static final int JGT = 4;
+    static final int JGE = 5;
+    static final int JEQ = 6;
+    static final int JNE = 7;
+    static final int JTRUE = 8;
+    static final int JFALSE = 9;
+    static final int ADD = 10;
+    static final int SUB = 11;
+    static final int MUL = 12;
+    static final int ADD_COPY = 13;
+    static final int SUB_COPY = 14;
+    static final int MUL_COPY = 15;
+    static final int COPY = 16;
+    static final int LDIDX4 = 17;
+    static final int STIDX4 = 18;
+    static final int PARAM4 = 19;
+    static final int NOP = 20;
+
+    private ICFusion() {
+    }
+
+    /**
+     * Choose the specialized opcode for every instruction of a program.
+     * @param code the decoded program
+     * @return the opcode for each instruction
+     */
+    static int[] select(ICInstr[] code) {
+        // A fused pair can't have a jump into its second instruction
+        boolean[] isTarget = new boolean[code.length];
+        for (ICInstr instr : code) {
+            if (isJump(instr.op)) isTarget[instr.target] = true;
+        }
+
+        int[] ops = new int[code.length];
+        for (int i=0; i<code.length; i++) {
+            ICInstr instr = code[i];
+            ICInstr next = (i+1 < code.length) ? code[i+1] : null;
+            switch (instr.op) {
+                case NOP:
+                    ops[i] = NOP;
+                    break;
+                case GOTO:
+                    ops[i] = GOTO;
+                    break;
+                case IF:
+                    ops[i] = JTRUE;
+                    break;
+                case IF_FALSE:
+                    ops[i] = JFALSE;
+                    break;
+                case IF_EXPR:
+                    if (!instr.byteOp) ops[i] = compareAndBranch(instr.cond);
+                    break;
+                case ADD:
+                case SUB:
+                case MUL:
+                    if (!instr.byteOp) {
+                        boolean copyNext = (next != null) && !isTarget[i+1] && (next.op == ICOpcode.COPY)
+                                && (next.width != 1) && (instr.dst.kind == ICOperand.Kind.TEMP)
+                                && (instr.dst.width != 1) && (next.src1.kind == ICOperand.Kind.TEMP)
+                                && (next.src1.slot == instr.dst.slot);
+                        ops[i] = arithmetic(instr.op, copyNext);
+                    }
+                    break;
+                case COPY:
+                    if (instr.width != 1) ops[i] = COPY;
+                    break;
+                case LDIDX4:
+                    if (!instr.byteOp) ops[i] = LDIDX4;
+                    break;
+                case STIDX:
+                    if (instr.width == 4) ops[i] = STIDX4;
+                    break;
+                case PARAM:
+                    if (instr.width == 4) ops[i] = PARAM4;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return ops;
+    }
+
+    private static boolean isJump(ICOpcode op) {
+        switch (op) {
+            case GOTO:
+            case IF:
+            case IF_EXPR:
+            case IF_FALSE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int compareAndBranch(ICOpcode cond) {
+        switch (cond) {
+            case LT: return JLT;
+            case LE: return JLE;
+            case GT: return JGT;
+            case GE: return JGE;
+            case EQ: return JEQ;
+            case NE: return JNE;
+            default: return GENERIC;
+        }
+    }
+
+    private static int arithmetic(ICOpcode op, boolean copyNext) {
+        switch (op) {
+            case ADD: return copyNext ? ADD_COPY : ADD;
+            case SUB: return copyNext ? SUB_COPY : SUB;
+            default: return copyNext ? MUL_COPY : MUL;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package edu.uncg.csc439.icinterp;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * Input for the gf_read and gf_readline builtins, parsed directly from
+ * bytes. It reads the same way as a Scanner with its default delimiter:
+ * gf_read skips whitespace and reads an optionally signed decimal int, and
+ * gf_readline reads the rest of the current line, ending with \n, \r\n or
+ * \r. Input is treated as single-byte chars, which is what the LittleC char
+ * type holds.
+ *
+ * When the input is a FileInputStream for a regular file (such as standard
+ * input redirected from a file), the rest of the file is memory mapped
+ * instead of being read through a buffer.
+ *
+ * Nothing is read until the program first asks for input.
+ */
+final class ICInput {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    // The unread input is data[pos..limit); for a stream, data wraps buf
+    private ByteBuffer data;
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    private boolean atEnd;
+
+    ICInput(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Read an int, after skipping whitespace. If the next token isn't an
+     * int, it is left unread.
+     * @return the int
+     * @throws NoSuchElementException if the input ends before a token
+     * @throws InputMismatchException if the token isn't an int (this is
+     *         also a NoSuchElementException)
+     */
+    int nextInt() {
+        while (true) {
+            if ((pos == limit) && !fill()) throw new NoSuchElementException();
+            if (!isSpace(data.get(pos))) break;
+            pos++;
+        }
+
+        int end = pos;
+        while (true) {
+            if (end == limit) {
+                // fill() may move the unread bytes even when it finds no more
+                int start = pos;
+                boolean more = fill();
+                end -= start - pos;
+                if (!more) break;
+            }
+            if (isSpace(data.get(end))) break;
+            end++;
+        }
+
+        int i = pos;
+        boolean negative = false;
+        byte first = data.get(i);
+        if ((first == '-') || (first == '+')) {
+            negative = (first == '-');
+            i++;
+        }
+        if (i == end) throw new InputMismatchException();
+        long val = 0;
+        for (; i < end; i++) {
+            int d = data.get(i) - '0';
+            if ((d < 0) || (d > 9) || (val > Integer.MAX_VALUE)) throw new InputMismatchException();
+            val = 10*val + d;
+        }
+        if (negative) val = -val;
+        if ((val < Integer.MIN_VALUE) || (val > Integer.MAX_VALUE)) throw new InputMismatchException();
+        pos = end;
+        return (int) val;
+    }
+
+    /**
+     * Read the rest of the current line into a char array in memory. Chars
+     * that don't fit are dropped.
+     * @param ptr pointer to the array
+     * @param max number of chars the array holds
+     * @return the length of the line, without its line ending
+     * @throws NoSuchElementException if there is no more input
+     */
+    int readLine(ICMemory mem, int ptr, int max) {
+        if ((pos == limit) && !fill()) throw new NoSuchElementException();
+
+        int end = pos;
+        byte b = 0;
+        while (true) {
+            if (end == limit) {
+                // fill() may move the unread bytes even when it finds no more
+                int start = pos;
+                boolean more = fill();
+                end -= start - pos;
+                if (!more) break;
+            }
+            b = data.get(end);
+            if ((b == '\n') || (b == '\r')) break;
+            end++;
+        }
+
+        int len = end - pos;
+        for (int i=0; (i < len) && (i < max); i++)
+            mem.setByte(ptr, 4+i, data.get(pos+i));
+
+        pos = end;
+        if (pos < limit) {
+            pos++;
+            if ((b == '\r') && ((pos < limit) || fill()) && (data.get(pos) == '\n'))
+                pos++;
+        }
+        return len;
+    }
+
+    private static boolean isSpace(byte b) {
+        return (b == ' ') || ((b >= '\t') && (b <= '\r')) || ((b >= 0x1c) && (b <= 0x1f));
+    }
+
+    /**
+     * Read more input, moving the unread bytes to the start of the buffer.
+     * @return false if there is no more input
+     */
+    private boolean fill() {
+        if (atEnd) return false;
+        if (data == null) {
+            if (map()) return limit > 0;
+            buf = new byte[BUFFER_SIZE];
+            data = ByteBuffer.wrap(buf);
+        }
+
+        int unread = limit - pos;
+        if (unread == buf.length) {
+            byte[] bigger = new byte[2*buf.length];
+            System.arraycopy(buf, pos, bigger, 0, unread);
+            buf = bigger;
+            data = ByteBuffer.wrap(buf);
+        } else {
+            System.arraycopy(buf, pos, buf, 0, unread);
+        }
+        pos = 0;
+        limit = unread;
+
+        try {
+            int n = in.read(buf, limit, buf.length - limit);
+            if (n <= 0) {
+                atEnd = true;
+                return false;
+            }
+            limit += n;
+            return true;
+        } catch (IOException e) {
+            throw new ICExecutionException("Error in executing intermediate code: Could not read input: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Map the rest of the input, if it is a regular file.
+     * @return true if the input was mapped
+     */
+    private boolean map() {
+        if (!(in instanceof FileInputStream)) return false;
+        try {
+            FileChannel channel = ((FileInputStream) in).getChannel();
+            long start = channel.position();
+            long size = channel.size() - start;
+            if ((size <= 0) || (size > Integer.MAX_VALUE)) return false;
+            data = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            channel.position(start + size);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Not a regular file, so read it as a stream
+            return false;
+        }
+        pos = 0;
+        limit = data.limit();
+        atEnd = true;
+        return true;
+    }
+}
@@ -0,0 +1,85 @@
+package edu.uncg.csc439.icinterp;
+
+/**
+ * A single decoded intermediate code instruction. Which fields are meaningful
+ * depends on the opcode:
+ * <ul>
+ *     <li>Assignments (COPY, casts, binary and unary operations): dst = src1 op src2</li>
+ *     <li>STIDX: dst is the array reference, src1 the index and src2 the value</li>
+ *     <li>IF_EXPR: cond is the operation applied to src1 and src2</li>
+ *     <li>Jumps: label is the target as written, target its resolved line (-1 if unknown)</li>
+ *     <li>CALL: funcName and numArgs, with dst receiving the result (or NONE),
+ *         and target the line of the function's .fnStart (-1 if unknown)</li>
+ *     <li>BUILTIN: the same as CALL, but target is the number of the builtin
+ *         function (see ICInterp.builtin)</li>
+ *     <li>TAIL_CALL: the same as CALL, for a call whose result is returned
+ *         by the next line that does anything (see ICProgram)</li>
+ *     <li>FN_START: size is the space needed for locals, and regs the number
+ *         of temporary registers the function uses</li>
+ * </ul>
+ * The width is the "target width" of the instruction (the width of the
+ * destination, parameter, return value or stored element), or 0 when there
+ * is none. Operations are done on bytes (byteOp) when the target width is 1
+ * or when all operands are bytes.
+ */
+public final class ICInstr {
+    public final ICOpcode op;
+    public final ICOpcode cond;
+    public final int width;
+    public final ICOperand dst;
+    public final ICOperand src1;
+    public final ICOperand src2;
+    public final String label;
+    public final int target;
+    public final String funcName;
+    public final int numArgs;
+    public final int size;
+    public final int regs;
+    public final boolean byteOp;
+    public final String text;
+
+    public ICInstr(ICOpcode op, ICOpcode cond, int width, ICOperand dst, ICOperand src1, ICOperand src2,
+                   String label, int target, String funcName, int numArgs, int size, String text) {
+        this(op, cond, width, dst, src1, src2, label, target, funcName, numArgs, size, 0, text);
+    }
+
+    private ICInstr(ICOpcode op, ICOpcode cond, int width, ICOperand dst, ICOperand src1, ICOperand src2,
+                    String label, int target, String funcName, int numArgs, int size, int regs, String text) {
+        this.op = op;
+        this.cond = cond;
+        this.width = width;
+        this.dst = dst;
+        this.src1 = src1;
+        this.src2 = src2;
+        this.label = label;
+        this.target = target;
+        this.funcName = funcName;
+        this.numArgs = numArgs;
+        this.size = size;
+        this.regs = regs;
+        this.byteOp = (width == 1) || ((src1.widthIn(width) == 1)
+                && ((src2 == ICOperand.NONE) || (src2.widthIn(width) == 1)));
+        this.text = text;
+    }
+
+    /**
+     * @param regs number of temporary registers
+     * @return a copy of this instruction with the given register count
+     */
+    public ICInstr withRegs(int regs) {
+        return new ICInstr(op, cond, width, dst, src1, src2, label, target, funcName, numArgs, size, regs, text);
+    }
+
+    /**
+     * @param op the new opcode
+     * @return a copy of this instruction with the given opcode
+     */
+    public ICInstr withOp(ICOpcode op) {
+        return new ICInstr(op, cond, width, dst, src1, src2, label, target, funcName, numArgs, size, regs, text);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -1,11 +1,18 @@
 package edu.uncg.csc439.icinterp;
 
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.util.*;
 
 /**
  * Interpreter for 3-address intermediate code, as defined for Phase 4 of the
  * CSC 439 compiler project.
  *
+ * An interpreter runs one ICProgram with its own memory, input and output,
+ * and is meant to be used by one thread at a time (apart from cancel). Since
+ * programs are immutable, many interpreters can run the same program at
+ * once.
+ *
  * This is not great code, and it's not really documented, but it works
  * (hopefully!). No more time to test or clean up, because it needs to go out
  * to the class.
@@ -13,164 +20,112 @@ import java.util.*;
  * @author Steve Tate
  */
 public class ICInterp {
+    // Debug messages are built only when this is set, so that the hot
+    // interpreter loop doesn't allocate strings that are never printed
+    private static final boolean DEBUG = false;
+
     private static void debugPrint(String m) {
-//        System.out.println(m);
+        System.out.println(m);
     }
 
-    private Map<String,Integer> labels;
-    private String[] lines;
-    private int[] globals;
-    private AddrSegment dSegment;
-    private Scanner sin;
+    private final ICProgram program;
+    private final ICInstr[] code;
+    private final ICMemory mem;
+    private final ICInput in;
+    // Output of the program is buffered, and written out when the buffer
+    // fills, when input is read, before errors are reported, and when the
+    // outermost executeFunction returns
+    private final ICOutput out;
+    private final PrintStream err;
+    private long instrCount;
 
-    private Vector<AddrSegment> segments;
-    private Stack<Integer> segFreeList;
-    public class AddrSegment {
-        private byte[] storage;
-        private int size;
-        private int segID;
+    // Arguments are pushed by param onto a single operand stack shared by all
+    // active calls, and activation records are reused from a pool indexed by
+    // call depth, so that a call does no allocation once the pool is warm
+    private int[] argStack = new int[64];
+    private int argTop;
+    private LocalEnv[] envPool = new LocalEnv[16];
+    private int depth;
 
-        private static final int SLACK = 64;
-
-        public AddrSegment(int size) {
-            if (size > 0x10000) {
-                System.err.println("Internal simulator error: Requested "+size+" segment");
-                System.exit(1);
-            }
-            if (!segFreeList.isEmpty()) {
-                segID = segFreeList.pop();
-                segments.set(segID, this);
-            } else {
-                segID = segments.size();
-                if (segID >= 0x10000) {
-                    System.err.println("Internal simulator error: Too many segments");
-                    System.exit(1);
-                }
-                segments.add(this);
-            }
-            this.size = size;
-            storage = new byte[(size==0)?32:size];
-        }
+    // Calls are run without recursion in Java (see executeFunction), so the
+    // depth of calls is limited only by this
+    public static final int DEFAULT_MAX_DEPTH = 1000000;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    private int entryDepth;
+    private int entryRetVal;
 
-        public int getID() {
-            return segID;
-        }
+    /**
+     * How the interpreter loop dispatches on instructions.
+     * <ul>
+     *     <li>DECODED: a switch on the decoded opcode of each instruction</li>
+     *     <li>FUSED: a dense int switch on opcodes specialized at load time,
+     *         including fused superinstructions (see ICFusion)</li>
+     * </ul>
+     */
+    public enum Dispatch { DECODED, FUSED }
 
-        public void delete() {
-            segFreeList.push(segID);
-            segments.set(segID, null);
-        }
+    private Dispatch dispatch;
+    private int[] fusedOps;
 
-        public int growBy(int toAdd) {
-            if (size + toAdd > storage.length) {
-                storage = Arrays.copyOf(storage, size+toAdd+SLACK);
-            }
-            int newStart = size;
-            size += toAdd;
-            return getPtr(newStart);
-        }
+    /**
+     * Whether functions are run by the interpreter or compiled to JVM
+     * bytecode (see ICCompileTier).
+     * <ul>
+     *     <li>INTERP: everything is interpreted</li>
+     *     <li>TIERED: functions are interpreted until they have been called
+     *         a number of times (the compile threshold), then compiled</li>
+     *     <li>COMPILED: functions are compiled when they are first called</li>
+     * </ul>
+     * Functions that can't be compiled are always interpreted.
+     */
+    public enum Tier { INTERP, TIERED, COMPILED }
 
-        public int getPtr(int offset) {
-            if ((offset < 0) || (offset >= size)) {
-                System.err.println("Internal sim error: Bad segment offset");
-                System.exit(1);
-            }
-            return (segID<<16)+offset;
-        }
+    public static final int DEFAULT_COMPILE_THRESHOLD = 1000;
+    private Tier tier;
+    private int compileThreshold = DEFAULT_COMPILE_THRESHOLD;
+    private ICCompileTier compileTier;
 
-        public int getExtent() {
-            return (segID<<16)+size;
-        }
+    // Compiled functions call each other through the Java stack, so calls
+    // nested deeper than this are interpreted instead, which keeps the Java
+    // stack bounded however deep the program recurses
+    private static final int MAX_NATIVE_DEPTH = 500;
+    private int nativeDepth;
 
-        public int getInt(int offset) {
-            int val = 0;
-            if (offset+3 < size) {
-                val = ((int) (storage[offset]) & 0xff) |
-                        (((int) (storage[offset + 1]) & 0xff) << 8) |
-                        (((int) (storage[offset + 2]) & 0xff) << 16) |
-                        (((int) (storage[offset + 3]) & 0xff) << 24);
-            } else {
-                System.err.println("Out of bounds memory access (getInt) - this should never happen.");
-                System.exit(1);
-            }
-            return val;
-        }
-
-        public void setInt(int offset, int val) {
-            if (offset+3 < size) {
-                storage[offset] = (byte)(val & 0xff);
-                storage[offset+1] = (byte)((val >> 8) & 0xff);
-                storage[offset+2] = (byte)((val >> 16) & 0xff);
-                storage[offset+3] = (byte)((val >> 24) & 0xff);
-            } else {
-                System.err.println("Out of bounds memory access (setInt) - this should never happen.");
-                System.exit(1);
-            }
-        }
-
-        public byte getByte(int offset) {
-            byte rVal = 0;
-            if (offset < size) {
-                rVal = storage[offset];
-            } else {
-                System.err.println("Out of bounds memory access (getByte) - this should never happen.");
-                System.exit(1);
-            }
-            return rVal;
-        }
-
-        public void setByte(int offset, byte val) {
-            if (offset < size) {
-                storage[offset] = val;
-            } else {
-                System.err.println("Out of bounds memory access (setByte) - this should never happen.");
-                System.exit(1);
-            }
-        }
-
-        public SimValue getVal(int width, int offset) {
-            if (width == 1) return new SimValue(1,getByte(offset));
-            else return new SimValue(4, getInt(offset));
-        }
-
-        public void setVal(int offset, SimValue val) {
-            if (val.width == 1) setByte(offset, val.cVal);
-            else setInt(offset, val.iVal);
-        }
-    }
+    // Limits on execution are checked at back-edges and calls, but only once
+    // instrCount reaches nextCheck, so the checks cost one comparison until
+    // then. Cancellation and the deadline are looked at every CHECK_INTERVAL
+    // instructions.
+    private static final long CHECK_INTERVAL = 1 << 16;
+    private long nextCheck = CHECK_INTERVAL;
+    private long instructionBudget = Long.MAX_VALUE;
+    private long timeLimitMillis;
+    private long deadline;
+    private volatile boolean cancelled;
 
-    public AddrSegment ptrToSeg(int ptr) {
-        int segID = (ptr >> 16) & 0xffff;
-        if (segID >= segments.size()) {
-            System.err.println("Internal sim error: Bad segment number");
-            System.exit(1);
-        }
-        return segments.get(segID);
-    }
+    // While a profiler is set, functions are interpreted by runProfiled.
+    // Otherwise the profiler costs a null check per call and return.
+    private ICProfiler profiler;
 
     public int ptrGetInt(int ptr, int offset) {
-        return ptrToSeg(ptr).getInt((ptr&0xffff)+offset);
+        return mem.getInt(ptr, offset);
     }
 
     public void ptrSetInt(int ptr, int offset, int val) {
-        ptrToSeg(ptr).setInt((ptr&0xffff)+offset, val);
+        mem.setInt(ptr, offset, val);
     }
 
     public byte ptrGetByte(int ptr, int offset) {
-        return ptrToSeg(ptr).getByte((ptr&0xffff)+offset);
+        return mem.getByte(ptr, offset);
     }
 
     public void ptrSetByte(int ptr, int offset, byte val) {
-        ptrToSeg(ptr).setByte((ptr&0xffff)+offset, val);
+        mem.setByte(ptr, offset, val);
     }
 
-    public void ptrSetVal(int ptr, SimValue val) {
-        if (val.width == 1) ptrSetByte(ptr, 0, val.cVal);
-        else ptrSetInt(ptr, 0, val.iVal);
-    }
+    static final int ERR_VAL = 999999999;
 
     public static class SimValue {
-        public static SimValue errVal = new SimValue(4,999999999);
+        public static SimValue errVal = new SimValue(4,ERR_VAL);
         public int width;
         public int iVal;
         public byte cVal;
@@ -201,14 +156,13 @@ public class ICInterp {
     }
 
     public int makeGlobalVar(int size) {
-        AddrSegment thisSeg = new AddrSegment(size);
-        return thisSeg.getPtr(0);
+        return mem.allocGlobal(size);
     }
 
     public int makeGlobalVarArray(int elemSize, int size) {
-        AddrSegment thisSeg = new AddrSegment(4 + elemSize*size);
-        thisSeg.setInt(0, size);
-        return thisSeg.getPtr(0);
+        int ptr = mem.allocGlobal(4 + elemSize*size);
+        mem.setInt(ptr, 0, size);
+        return ptr;
     }
 
     public int makeGlobalVarString(String val) {
@@ -228,410 +182,1035 @@ public class ICInterp {
         }
 
         int ptr = makeGlobalVarArray(1, chars.size());
-        AddrSegment thisSeg = ptrToSeg(ptr);
 
         for (int i=0; i<chars.size(); i++) {
-            thisSeg.setByte(4+i, chars.elementAt(i));
+            mem.setByte(ptr, 4+i, chars.elementAt(i));
         }
         return ptr;
     }
 
     private class LocalEnv {
-        private AddrSegment lSegment;
-        private AddrSegment pSegment;
-        private Map<String,SimValue> tempVars;
+        private int lFrame;
+        private int pFrame;
+        private int[] regs;
         private int currLine;
-        private Stack<SimValue> argStack;
-        private SimValue retVal;
+        private int argBase;
+        private int retVal;
 
-        public LocalEnv(int startLine, List<SimValue> paramList) {
-            this.pSegment = new AddrSegment(4*paramList.size());
-            for (int i=0; i<paramList.size(); i++) {
-                pSegment.setVal(4*i, paramList.get(i));
-            }
-            this.tempVars = new HashMap<>();
+        /**
+         * Set up this record for a new call, taking the arguments from the
+         * top of the operand stack (the first argument is on top).
+         */
+        public void begin(int startLine, int nArgs) {
+            this.pFrame = pushParams(nArgs);
+            this.argBase = argTop;
+            this.lFrame = 0;
             this.currLine = startLine;
-            this.argStack = new Stack<>();
-            this.retVal = null;
+            this.retVal = ERR_VAL;
         }
-        
+
         public void freeSpace() {
-            if (lSegment != null) {
-                lSegment.delete();
-                lSegment = null;
+            if (lFrame != 0) {
+                mem.popFrame(lFrame);
+                lFrame = 0;
             }
-            if (pSegment != null) {
-                pSegment.delete();
-                pSegment = null;
+            if (pFrame != 0) {
+                mem.popFrame(pFrame);
+                pFrame = 0;
             }
         }
 
-        public SimValue getRetVal() {
-            return (this.retVal==null)?SimValue.errVal:this.retVal;
-        }
-
-        public SimValue getVal(int tWidth, String name) {
-            if (name.startsWith("l")) {
-                return lSegment.getVal(getTWidth(name), Integer.parseInt(name.substring(3)));
-            } else if (name.startsWith("p")) {
-                return pSegment.getVal(getTWidth(name), Integer.parseInt(name.substring(3)));
-            } else if (name.startsWith("g") || (name.startsWith("m"))) {
-                int ptr = globals[labels.get(name)];
-                return ptrToSeg(ptr).getVal(getTWidth(name), 0);
-            } else if (name.startsWith("S")) {
-                return new SimValue(4,globals[labels.get(name)]);
-            } else if (name.startsWith("t")) {
-                SimValue val = tempVars.get(name);
-                if (val == null) return SimValue.errVal;
-                else return val;
-            } else if (Character.isDigit(name.charAt(0))) {
-                return new SimValue(tWidth, Integer.parseInt(name));
+        // Values are raw ints: a value read through a byte-wide name (or a
+        // constant in a byte-wide context) is always a sign-extended byte, so
+        // the width of every value is known from the decoded instruction.
+        public int getVal(int tWidth, ICOperand opnd) {
+            switch (opnd.kind) {
+                case LOCAL:
+                    return (opnd.width == 1) ? mem.getByte(lFrame, opnd.slot) : mem.getInt(lFrame, opnd.slot);
+                case PARAM:
+                    return (opnd.width == 1) ? mem.getByte(pFrame, opnd.slot) : mem.getInt(pFrame, opnd.slot);
+                case GLOBAL:
+                    return (opnd.width == 1) ? ptrGetByte(opnd.slot, 0) : ptrGetInt(opnd.slot, 0);
+                case STRLIT:
+                    return opnd.slot;
+                case TEMP:
+                    return regs[opnd.slot];
+                case CONST:
+                    return (tWidth == 1) ? (byte)opnd.value : opnd.value;
+                default:
+                    return ERR_VAL;
             }
-            return SimValue.errVal;
-        }
-
-        public int getAddr(String name) {
-            if (name.startsWith("l")) {
-                return lSegment.getPtr(Integer.parseInt(name.substring(3)));
-            } else if (name.startsWith("p")) {
-                return pSegment.getPtr(Integer.parseInt(name.substring(3)));
-            } else if (name.startsWith("g")) {
-                return globals[labels.get(name)];
-            } else if (name.startsWith("S")) {
-                return globals[labels.get(name)];
+        }
+
+        public int getAddr(ICOperand opnd) {
+            switch (opnd.kind) {
+                case LOCAL:
+                    return lFrame + opnd.slot;
+                case PARAM:
+                    return pFrame + opnd.slot;
+                case GLOBAL:
+                case STRLIT:
+                    return opnd.slot;
+                default:
+                    return 0;
             }
-            return 0;
-        }
-
-        public void setVal(String name, SimValue val) {
-            if (name.startsWith("l")) {
-                lSegment.setVal(Integer.parseInt(name.substring(3)), val);
-            } else if (name.startsWith("p")) {
-                pSegment.setVal(Integer.parseInt(name.substring(3)), val);
-            } else if (name.startsWith("g") || name.startsWith("m")) {
-                int ptr = globals[labels.get(name)];
-                ptrSetVal(ptr, val);
-            } else if (name.startsWith("t")) {
-                tempVars.put(name, val);
+        }
+
+        public void setVal(ICOperand opnd, int val) {
+            switch (opnd.kind) {
+                case LOCAL:
+                    if (opnd.width == 1) mem.setByte(lFrame, opnd.slot, (byte)val);
+                    else mem.setInt(lFrame, opnd.slot, val);
+                    break;
+                case PARAM:
+                    if (opnd.width == 1) mem.setByte(pFrame, opnd.slot, (byte)val);
+                    else mem.setInt(pFrame, opnd.slot, val);
+                    break;
+                case GLOBAL:
+                    if (opnd.width == 1) ptrSetByte(opnd.slot, 0, (byte)val);
+                    else ptrSetInt(opnd.slot, 0, val);
+                    break;
+                case TEMP:
+                    regs[opnd.slot] = (opnd.width == 1) ? (byte)val : val;
+                    break;
+                default:
+                    break;
             }
         }
 
-        public SimValue calcVal(int tWidth, String[] parts, int si) {
-            SimValue val1;
-            SimValue val2;
-            int rval;
-
-            // Check for special values/operations first
-            if (parts[si].equals("narrow")) {
-                val1 = getVal(tWidth, parts[si+1]);
-                return new SimValue(1, val1.getAsI());
-            } else if (parts[si].equals("widen")) {
-                val1 = getVal(tWidth, parts[si+1]);
-                return new SimValue(4, val1.getAsI());
-            } else  if (parts[si].substring(0,1).matches("[A-Za-z0-9_]")) {
-                val1 = getVal(tWidth, parts[si]);
-                if (si+2 >= parts.length) return val1;
-                // Must be a binary op
-                val2 = getVal(tWidth, parts[si+2]);
-                if ((tWidth == 1) || (val1.width == 1) && (val2.width == 1)) {
-                    byte cval = 111;
-                    if (parts[si + 1].equals("-")) return new SimValue(1, (byte)(val1.cVal - val2.cVal));
-                    else if (parts[si + 1].equals("+"))
-                        return new SimValue(1, (byte)(val1.cVal + val2.cVal));
-                    else if (parts[si + 1].equals("*"))
-                        return new SimValue(1, (byte)(val1.cVal * val2.cVal));
-                    else if (parts[si + 1].equals("/"))
-                        return new SimValue(1, (byte)(val1.cVal / val2.cVal));
-                    else if (parts[si + 1].equals("%"))
-                        return new SimValue(1, (byte)(val1.cVal % val2.cVal));
-                    else if (parts[si + 1].equals("<"))
-                        return new SimValue(4, (val1.cVal < val2.cVal) ? 1 : 0);
-                    else if (parts[si + 1].equals("<="))
-                        return new SimValue(4, (val1.cVal <= val2.cVal) ? 1 : 0);
-                    else if (parts[si + 1].equals(">"))
-                        return new SimValue(4, (val1.cVal > val2.cVal) ? 1 : 0);
-                    else if (parts[si + 1].equals(">="))
-                        return new SimValue(4, (val1.cVal >= val2.cVal) ? 1 : 0);
-                    else if (parts[si + 1].equals("=="))
-                        return new SimValue(4, (val1.cVal == val2.cVal) ? 1 : 0);
-                    else if (parts[si + 1].equals("!="))
-                        return new SimValue(4, (val1.cVal != val2.cVal) ? 1 : 0);
-                    else if (parts[si+1].equals("ldidx1"))
-                        return new SimValue(1, ptrGetByte(val1.iVal, 4+val2.iVal));
-                    else return SimValue.errVal;
-                } else {
-                    if (parts[si + 1].equals("-"))
-                        return new SimValue(4, val1.iVal - val2.iVal);
-                    else if (parts[si + 1].equals("+"))
-                        return new SimValue(4, val1.iVal + val2.iVal);
-                    else if (parts[si + 1].equals("*"))
-                        return new SimValue(4, val1.iVal * val2.iVal);
-                    else if (parts[si + 1].equals("/"))
-                        return new SimValue(4, val1.iVal / val2.iVal);
-                    else if (parts[si + 1].equals("%"))
-                        return new SimValue(4, val1.iVal % val2.iVal);
-                    else if (parts[si + 1].equals("<"))
-                        return new SimValue(4, (val1.iVal < val2.iVal) ? 1 : 0);
-                    else if (parts[si + 1].equals("<="))
-                        return new SimValue(4, (val1.iVal <= val2.iVal) ? 1 : 0);
-                    else if (parts[si + 1].equals(">"))
-                        return new SimValue(4, (val1.iVal > val2.iVal) ? 1 : 0);
-                    else if (parts[si + 1].equals(">="))
-                        return new SimValue(4, (val1.iVal >= val2.iVal) ? 1 : 0);
-                    else if (parts[si + 1].equals("=="))
-                        return new SimValue(4, (val1.iVal == val2.iVal) ? 1 : 0);
-                    else if (parts[si + 1].equals("!="))
-                        return new SimValue(4, (val1.iVal != val2.iVal) ? 1 : 0);
-                    else if (parts[si+1].equals("ldidx4")) {
-                        return new SimValue(4, ptrGetInt(val1.iVal, 4+4*val2.iVal));
-                    } else if (parts[si+1].equals("ldidx1")) {
-                        return new SimValue(1, ptrGetByte(val1.iVal, 4+val2.iVal));
-                    } else return SimValue.errVal;
-                }
-            } else {
-                // Must be a unary op
-                if (si+1 >= parts.length) return SimValue.errVal;
-                val1 = getVal(tWidth, parts[si+1]);
-                if (parts[si].equals("-")) {
-                    if ((tWidth == 1) || (val1.width == 1))
-                        return new SimValue(1, -((byte)val1.cVal));
+        public int calcVal(ICOpcode op, ICInstr instr) {
+            int tWidth = instr.width;
+            int val1;
+            int val2;
+
+            switch (op) {
+                case NARROW:
+                    return (byte)getVal(tWidth, instr.src1);
+                case WIDEN:
+                case COPY:
+                case POS:
+                    return getVal(tWidth, instr.src1);
+                case ADD: case SUB: case MUL: case DIV: case MOD:
+                case LT: case LE: case GT: case GE: case EQ: case NE:
+                case LDIDX1: case LDIDX4:
+                    val1 = getVal(tWidth, instr.src1);
+                    val2 = getVal(tWidth, instr.src2);
+                    if (instr.byteOp) {
+                        byte c1 = (byte)val1;
+                        byte c2 = (byte)val2;
+                        switch (op) {
+                            case SUB: return (byte)(c1 - c2);
+                            case ADD: return (byte)(c1 + c2);
+                            case MUL: return (byte)(c1 * c2);
+                            case DIV: return (byte)(c1 / c2);
+                            case MOD: return (byte)(c1 % c2);
+                            case LT: return (c1 < c2) ? 1 : 0;
+                            case LE: return (c1 <= c2) ? 1 : 0;
+                            case GT: return (c1 > c2) ? 1 : 0;
+                            case GE: return (c1 >= c2) ? 1 : 0;
+                            case EQ: return (c1 == c2) ? 1 : 0;
+                            case NE: return (c1 != c2) ? 1 : 0;
+                            case LDIDX1: return ptrGetByte(val1, 4+val2);
+                            default: return ERR_VAL;
+                        }
+                    } else {
+                        switch (op) {
+                            case SUB: return val1 - val2;
+                            case ADD: return val1 + val2;
+                            case MUL: return val1 * val2;
+                            case DIV: return val1 / val2;
+                            case MOD: return val1 % val2;
+                            case LT: return (val1 < val2) ? 1 : 0;
+                            case LE: return (val1 <= val2) ? 1 : 0;
+                            case GT: return (val1 > val2) ? 1 : 0;
+                            case GE: return (val1 >= val2) ? 1 : 0;
+                            case EQ: return (val1 == val2) ? 1 : 0;
+                            case NE: return (val1 != val2) ? 1 : 0;
+                            case LDIDX4: return ptrGetInt(val1, 4+4*val2);
+                            case LDIDX1: return ptrGetByte(val1, 4+val2);
+                            default: return ERR_VAL;
+                        }
+                    }
+                case NEG:
+                    val1 = getVal(tWidth, instr.src1);
+                    if (instr.byteOp)
+                        return (byte)-((byte)val1);
                     else
-                        return new SimValue(4, -val1.iVal);
-                } else if (parts[si].equals("+")) return val1;
-                else if (parts[si].equals("!")) return new SimValue(4, (val1.iVal==0)?0:1);
-                else if (parts[si].equals("&")) {
-                    return new SimValue(4, getAddr(parts[si+1]));
-                } else if (parts[si].equals("#")) {
-                    return new SimValue(4, ptrGetInt(val1.iVal,0));
-                }
-                else return SimValue.errVal;
+                        return -val1;
+                case NOT:
+                    val1 = getVal(tWidth, instr.src1);
+                    return (val1==0)?0:1;
+                case ADDR:
+                    return getAddr(instr.src1);
+                case LEN:
+                    val1 = getVal(tWidth, instr.src1);
+                    return ptrGetInt(val1,0);
+                default:
+                    return ERR_VAL;
             }
         }
 
-        public boolean execLine() {
-            debugPrint("Exec: "+lines[currLine]);
-            String[] parts = lines[currLine].split(" +");
-            if (parts[0].equalsIgnoreCase(".fnStart")) {
-                int locSpace = Integer.parseInt(parts[1]);
-                lSegment = new AddrSegment(locSpace);
-            } else if (parts[0].equalsIgnoreCase(".fnEnd") || parts[0].equals("return")) {
-                return false;
-            } else if (parts[0].equals("return1")) {
-                retVal = getVal(1, parts[1]);
-                return false;
-            } else if (parts[0].equals("return4")) {
-                retVal = getVal(4, parts[1]);
-                return false;
-            } else if ((parts.length == 3) && (parts[1].equals("setsize"))) {
-                setVal(parts[0], getVal(4, parts[2]));
-            } else if (parts[0].equals("param1")) {
-                SimValue pVal = getVal(1, parts[1]);
-                debugPrint("Got val for param: "+pVal.cVal);
-                argStack.push(pVal);
-            } else if (parts[0].equals("param4")) {
-                SimValue pVal = getVal(4, parts[1]);
-                debugPrint("Got val for param: " + pVal.iVal);
-                argStack.push(pVal);
-            } else if ((parts[0].equals("call")) || ((parts.length > 2) && (parts[2].equals("call")))) {
-                int si = 2;
-                if (parts[0].equals("call")) si = 0;
-                String[] callinfo = parts[si+1].split(",");
-                int numArgs = Integer.parseInt(callinfo[1]);
-                List<SimValue> argList = new LinkedList<>();
-                for (int i=0; i<numArgs; i++) {
-                    if (argStack.empty())
-                        argList.add(SimValue.errVal);
-                    else
-                        argList.add(argStack.pop());
+        // Jump from line pc, checking the limits on execution at back-edges
+        private void jump(int pc, int target) {
+            if ((target <= pc) && (instrCount >= nextCheck)) checkLimits();
+            currLine = target;
+        }
+
+        /**
+         * Run this function until it calls a function or returns.
+         * @return the record to continue running: the callee's after a call,
+         *         or the caller's after a return
+         */
+        public LocalEnv run() {
+            if (profiler != null) return runProfiled();
+            if (fusedOps != null) return runFused();
+            while (true) {
+                LocalEnv next = step(code[currLine]);
+                if (next != this) return next;
+            }
+        }
+
+        /**
+         * The decoded loop, counting each line executed.
+         */
+        private LocalEnv runProfiled() {
+            final ICProfiler p = profiler;
+            while (true) {
+                p.countLine(currLine);
+                LocalEnv next = step(code[currLine]);
+                if (next != this) return next;
+            }
+        }
+
+        /**
+         * Execute one instruction, using the decoded switch.
+         * @return this record, or the record to switch to after a call or
+         *         return
+         */
+        private LocalEnv step(ICInstr instr) {
+            instrCount++;
+            if (DEBUG) debugPrint("Exec: "+instr);
+            switch (instr.op) {
+                case FN_START:
+                    lFrame = mem.pushFrame(instr.size);
+                    if ((regs == null) || (regs.length < instr.regs))
+                        regs = new int[instr.regs];
+                    // A temporary read before it is written gives ERR_VAL
+                    Arrays.fill(regs, 0, instr.regs, ERR_VAL);
+                    break;
+                case FN_END:
+                case RETURN:
+                    return leave();
+                case RETURN_VAL:
+                    retVal = getVal(instr.width, instr.src1);
+                    return leave();
+                case SETSIZE:
+                    setVal(instr.dst, getVal(4, instr.src1));
+                    break;
+                case PARAM: {
+                    int pVal = getVal(instr.width, instr.src1);
+                    if (DEBUG) debugPrint("Got val for param: " + pVal);
+                    pushArg(pVal);
+                    break;
                 }
-                SimValue fnResult = executeFunction(callinfo[0], argList);
-                if (si == 2) setVal(parts[0], fnResult);
-            } else if (parts[0].equals("goto")) {
-                Integer nextLine = labels.get(parts[1]);
-                if (nextLine == null) {
-                    System.err.println("Jump to unknown label: " + parts[1]);
-                    return false;
-                } else {
-                    currLine = nextLine;
-                    return true;
+                case BUILTIN: {
+                    padArgs(argBase, instr.numArgs);
+                    int fnResult = callBuiltin(instr.target, instr.numArgs);
+                    if (instr.dst != ICOperand.NONE) setVal(instr.dst, fnResult);
+                    break;
                 }
-            } else if (parts[0].equals("if")) {
-                if (parts[2].equals("goto")) {
-                    int val = getVal(0, parts[1]).getAsI();
-                    if (val != 0) {
-                        Integer nextLine = labels.get(parts[3]);
-                        if (nextLine == null) {
-                            System.err.println("Jump to unknown label: " + parts[3]);
-                            return false;
-                        } else {
-                            currLine = nextLine;
-                            return true;
-                        }
-                    }
-                } else {
-                    int result = calcVal(0, parts, 1).getAsI();
-                    if (result != 0) {
-                        Integer nextLine = labels.get(parts[5]);
-                        if (nextLine == null) {
-                            System.err.println("Jump to unknown label: " + parts[5]);
-                            return false;
-                        } else {
-                            currLine = nextLine;
-                            return true;
-                        }
+                case CALL: {
+                    padArgs(argBase, instr.numArgs);
+                    ICCompiledFunction fn = compiled(instr.target);
+                    if (fn != null) {
+                        int fnResult = runCompiled(fn, instr.numArgs);
+                        if (instr.dst != ICOperand.NONE) setVal(instr.dst, fnResult);
+                        break;
                     }
+                    return enter(instr.target, instr.numArgs);
                 }
-            } else if (parts[0].equals("ifFalse")) {
-                int val = getVal(0, parts[1]).getAsI();
-                if (val == 0) {
-                    Integer nextLine = labels.get(parts[3]);
-                    if (nextLine == null) {
-                        System.err.println("Jump to unknown label: " + parts[3]);
-                        return false;
-                    } else {
-                        currLine = nextLine;
-                        return true;
+                case TAIL_CALL: {
+                    padArgs(argBase, instr.numArgs);
+                    ICCompiledFunction fn = compiled(instr.target);
+                    if (fn != null) {
+                        setVal(instr.dst, runCompiled(fn, instr.numArgs));
+                        break;
                     }
+                    tailCall(instr.target, instr.numArgs);
+                    return this;
                 }
-            } else if ((parts.length > 1) && (parts[1].equals("="))) {
-                if ((parts.length > 3) && parts[3].startsWith("stidx")) {
+                case GOTO:
+                    jump(currLine, instr.target);
+                    return this;
+                case IF:
+                    if (getVal(0, instr.src1) != 0) {
+                        jump(currLine, instr.target);
+                        return this;
+                    }
+                    break;
+                case IF_EXPR:
+                    if (calcVal(instr.cond, instr) != 0) {
+                        jump(currLine, instr.target);
+                        return this;
+                    }
+                    break;
+                case IF_FALSE:
+                    if (getVal(0, instr.src1) == 0) {
+                        jump(currLine, instr.target);
+                        return this;
+                    }
+                    break;
+                case STIDX: {
                     // Special case for indexed array storage...
-                    int tWidth = parts[3].charAt(5) - '0';
-                    SimValue aRef = getVal(4, parts[0]);
-                    SimValue idx = getVal(4, parts[2]);
-                    SimValue rhs = getVal(tWidth, parts[4]);
-                    if (tWidth == 1)
-                        ptrSetByte(aRef.iVal, 4 + idx.iVal, rhs.cVal);
+                    int aRef = getVal(4, instr.dst);
+                    int idx = getVal(4, instr.src1);
+                    int rhs = getVal(instr.width, instr.src2);
+                    if (instr.width == 1)
+                        ptrSetByte(aRef, 4 + idx, (byte)rhs);
                     else
-                        ptrSetInt(aRef.iVal, 4 + 4 * idx.iVal, rhs.iVal);
-                } else {
-                    SimValue result = calcVal(getTWidth(parts[0]), parts, 2);
-                    debugPrint("Got value: " + result.getAsI());
-                    setVal(parts[0], result);
+                        ptrSetInt(aRef, 4 + 4 * idx, rhs);
+                    break;
+                }
+                case NOP:
+                    break;
+                default: {
+                    int result = calcVal(instr.op, instr);
+                    if (DEBUG) debugPrint("Got value: " + result);
+                    setVal(instr.dst, result);
+                    break;
                 }
             }
 
             currLine++;
-            return true;
-        }
-    }
-
-    public ICInterp(String code) {
-        lines = code.split("\n");
-        globals = new int[lines.length];
-        segments = new Vector<>();
-        segments.add(null);  // Entry 0 is null (uninit/null ptr check)
-        segFreeList = new Stack<>();
-        dSegment = new AddrSegment(0);
-        sin = new Scanner(System.in);
-
-        labels = new HashMap<>();
-        List<String> carryOverLabels = null;
-        for (int i=0; i<lines.length; i++) {
-            String thisLabel = null;
-            String[] parsed = lines[i].split(":");
-            if (parsed[0].matches("[A-Za-z_][A-Za-z0-9_]*")) {
-                thisLabel = parsed[0];
-                labels.put(parsed[0],i);
-                lines[i] = lines[i].substring(parsed[0].length()+1);
-            }
-            lines[i] = lines[i].trim();
-            if (lines[i].length() == 0) {
-                if (thisLabel != null) {
-                    if (carryOverLabels == null) carryOverLabels = new LinkedList<>();
-                    carryOverLabels.add(thisLabel);
-                }
-            } else {
-                if (thisLabel != null) {
-                    labels.put(thisLabel, i);
-                }
-                if (carryOverLabels != null) {
-                    for (String s: carryOverLabels)
-                        labels.put(s, i);
-                    carryOverLabels = null;
-                }
-            }
+            return this;
+        }
 
-            if (lines[i].startsWith(".db ") || (lines[i].startsWith(".dw "))) {
-                int elemSize = 1;
-                if (lines[i].startsWith(".dw ")) elemSize = 4;
-                int valStart = 4;
-                while ((valStart < lines[i].length()) && (lines[i].charAt(valStart) == ' '))
-                    valStart++;
-                if (valStart == lines[i].length()) {
-                    globals[i] = dSegment.growBy(elemSize);
-                } else {
-                    globals[i] = dSegment.getExtent();
-                    String[] vals = lines[i].substring(valStart).split(" *, *");
-                    for (String valInit : vals) {
-                        int nCopies = 1;
-                        int intVal = 0;
-                        if (valInit.contains("#")) {
-                            String[] parts = valInit.split("#");
-                            intVal = Integer.parseInt(parts[0]);
-                            nCopies = Integer.parseInt(parts[1]);
-                        } else {
-                            intVal = Integer.parseInt(valInit);
-                        }
-                        int ptr = dSegment.growBy(elemSize*nCopies);
-                        for (int j=0; j<nCopies; j++) {
-                            if (elemSize == 1) ptrSetByte(ptr, j*elemSize, (byte) intVal);
-                            else ptrSetInt(ptr, j*elemSize, intVal);
-                        }
+        // Value of an operand in an instruction that works on ints, with
+        // the common cases checked first
+        private int fetch(ICOperand opnd) {
+            if (opnd.kind == ICOperand.Kind.TEMP) return regs[opnd.slot];
+            if (opnd.kind == ICOperand.Kind.CONST) return opnd.value;
+            if ((opnd.kind == ICOperand.Kind.LOCAL) && (opnd.width != 1)) return mem.getInt(lFrame, opnd.slot);
+            return getVal(0, opnd);
+        }
+
+        private void store(ICOperand opnd, int val) {
+            if (opnd.width == 1) setVal(opnd, val);
+            else if (opnd.kind == ICOperand.Kind.TEMP) regs[opnd.slot] = val;
+            else if (opnd.kind == ICOperand.Kind.LOCAL) mem.setInt(lFrame, opnd.slot, val);
+            else setVal(opnd, val);
+        }
+
+        /**
+         * The FUSED dispatch loop: a switch on the specialized opcodes chosen
+         * by ICFusion, falling back to the decoded switch for everything else.
+         */
+        private LocalEnv runFused() {
+            final int[] ops = fusedOps;
+            while (true) {
+                int pc = currLine;
+                ICInstr instr = code[pc];
+                switch (ops[pc]) {
+                    case ICFusion.NOP:
+                        instrCount++;
+                        break;
+                    case ICFusion.GOTO:
+                        instrCount++;
+                        jump(pc, instr.target);
+                        continue;
+                    case ICFusion.JLT:
+                        instrCount++;
+                        if (fetch(instr.src1) < fetch(instr.src2)) { jump(pc, instr.target); continue; }
+                        break;
+                    case ICFusion.JLE:
+                        instrCount++;
+                        if (fetch(instr.src1) <= fetch(instr.src2)) { jump(pc, instr.target); continue; }
+                        break;
+                    case ICFusion.JGT:
+                        instrCount++;
+                        if (fetch(instr.src1) > fetch(instr.src2)) { jump(pc, instr.target); continue; }
+                        break;
+                    case ICFusion.JGE:
+                        instrCount++;
+                        if (fetch(instr.src1) >= fetch(instr.src2)) { jump(pc, instr.target); continue; }
+                        break;
+                    case ICFusion.JEQ:
+                        instrCount++;
+                        if (fetch(instr.src1) == fetch(instr.src2)) { jump(pc, instr.target); continue; }
+                        break;
+                    case ICFusion.JNE:
+                        instrCount++;
+                        if (fetch(instr.src1) != fetch(instr.src2)) { jump(pc, instr.target); continue; }
+                        break;
+                    case ICFusion.JTRUE:
+                        instrCount++;
+                        if (fetch(instr.src1) != 0) { jump(pc, instr.target); continue; }
+                        break;
+                    case ICFusion.JFALSE:
+                        instrCount++;
+                        if (fetch(instr.src1) == 0) { jump(pc, instr.target); continue; }
+                        break;
+                    case ICFusion.ADD:
+                        instrCount++;
+                        store(instr.dst, fetch(instr.src1) + fetch(instr.src2));
+                        break;
+                    case ICFusion.SUB:
+                        instrCount++;
+                        store(instr.dst, fetch(instr.src1) - fetch(instr.src2));
+                        break;
+                    case ICFusion.MUL:
+                        instrCount++;
+                        store(instr.dst, fetch(instr.src1) * fetch(instr.src2));
+                        break;
+                    case ICFusion.ADD_COPY: {
+                        instrCount += 2;
+                        int val = fetch(instr.src1) + fetch(instr.src2);
+                        regs[instr.dst.slot] = val;
+                        store(code[pc+1].dst, val);
+                        currLine = pc+2;
+                        continue;
+                    }
+                    case ICFusion.SUB_COPY: {
+                        instrCount += 2;
+                        int val = fetch(instr.src1) - fetch(instr.src2);
+                        regs[instr.dst.slot] = val;
+                        store(code[pc+1].dst, val);
+                        currLine = pc+2;
+                        continue;
+                    }
+                    case ICFusion.MUL_COPY: {
+                        instrCount += 2;
+                        int val = fetch(instr.src1) * fetch(instr.src2);
+                        regs[instr.dst.slot] = val;
+                        store(code[pc+1].dst, val);
+                        currLine = pc+2;
+                        continue;
+                    }
+                    case ICFusion.COPY:
+                        instrCount++;
+                        store(instr.dst, fetch(instr.src1));
+                        break;
+                    case ICFusion.LDIDX4:
+                        instrCount++;
+                        store(instr.dst, ptrGetInt(fetch(instr.src1), 4+4*fetch(instr.src2)));
+                        break;
+                    case ICFusion.STIDX4:
+                        instrCount++;
+                        ptrSetInt(fetch(instr.dst), 4+4*fetch(instr.src1), fetch(instr.src2));
+                        break;
+                    case ICFusion.PARAM4:
+                        instrCount++;
+                        pushArg(fetch(instr.src1));
+                        break;
+                    default: {
+                        LocalEnv next = step(instr);
+                        if (next != this) return next;
+                        continue;
                     }
                 }
+                currLine++;
+            }
+        }
+
+        /**
+         * Replace this call with a call to the function at startLine, whose
+         * arguments are the top nArgs entries of the operand stack. The
+         * callee runs in this record, at the same depth, and returns
+         * straight to this function's caller.
+         */
+        private void tailCall(int startLine, int nArgs) {
+            if (instrCount >= nextCheck) checkLimits();
+            freeSpace();
+            dropUnusedArgs(argBase, nArgs);
+            if (profiler != null) {
+                profiler.leaveTo(depth-1, instrCount);
+                profiler.enter(startLine, instrCount);
+            }
+            begin(startLine, nArgs);
+        }
+
+        /**
+         * Return from this function, passing its return value to the caller.
+         * @return the caller's record, or null if this call was made from
+         *         outside the interpreter
+         */
+        private LocalEnv leave() {
+            freeSpace();
+            argTop = argBase;   // Drop any arguments that were never used
+            depth--;
+            if (profiler != null) profiler.leaveTo(depth, instrCount);
+            if (depth == entryDepth) {
+                entryRetVal = retVal;
+                return null;
             }
+            LocalEnv caller = envPool[depth-1];
+            ICInstr callInstr = code[caller.currLine];
+            if (callInstr.dst != ICOperand.NONE) caller.setVal(callInstr.dst, retVal);
+            caller.currLine++;
+            return caller;
         }
+    }
 
+    public ICInterp(String program) {
+        this(program, ICMemory.Model.SEGMENTED);
     }
 
-    public SimValue executeFunction(String fname, List<SimValue> params) {
-        if (fname.equals("gf_printd")) {
-            if ((params != null) && (params.size() == 1)) System.out.print(params.get(0).getAsI());
-            return SimValue.errVal;
-        } else if (fname.equals("gf_prints")) {
-            if ((params != null) && (params.size() == 1)) {
-                int ptr = params.get(0).getAsI();
-                if (ptr == 0) return SimValue.errVal;
-                int aLen = ptrGetInt(ptr, 0);
-                for (int i=0; i<aLen; i++) {
-                    char c = (char)ptrGetByte(ptr,4+i);
-                    if (c == '\0') break;
-                    System.out.print(c);
-                }
+    /**
+     * Load a program and set up an interpreter for it that uses the
+     * standard input and output.
+     * @param program the intermediate code to run
+     * @param memModel the memory backend to run it with
+     */
+    public ICInterp(String program, ICMemory.Model memModel) {
+        this(ICProgram.load(program, memModel), System.in, System.out, System.err);
+    }
+
+    /**
+     * @param program the program to run
+     * @param in the program's standard input
+     * @param out the program's standard output
+     * @param err where errors in running the program are reported
+     */
+    public ICInterp(ICProgram program, InputStream in, PrintStream out, PrintStream err) {
+        this(program, program.newMemory(), in, out, err);
+    }
+
+    /**
+     * Set up an interpreter whose memory starts with the state saved in a
+     * snapshot (see ICSnapshot.fork).
+     */
+    ICInterp(ICSnapshot snapshot, InputStream in, PrintStream out, PrintStream err) {
+        this(snapshot.getProgram(), snapshot.newMemory(), in, out, err);
+    }
+
+    private ICInterp(ICProgram program, ICMemory mem, InputStream in, PrintStream out, PrintStream err) {
+        this.program = program;
+        this.code = program.code();
+        this.mem = mem;
+        this.in = new ICInput(in);
+        this.out = new ICOutput(out, ICOutput.DEFAULT_BUFFER_SIZE);
+        this.err = err;
+        setDispatch(Dispatch.FUSED);
+        setTier(Tier.TIERED);
+    }
+
+    void pushArg(int val) {
+        if (argTop == argStack.length)
+            argStack = Arrays.copyOf(argStack, 2*argTop);
+        argStack[argTop++] = val;
+    }
+
+    int argTop() {
+        return argTop;
+    }
+
+    /**
+     * @return argument i of the nArgs on top of the operand stack, or 0 if
+     *         there are fewer arguments than that
+     */
+    int peekArg(int i, int nArgs) {
+        return (i < nArgs) ? argStack[argTop-1-i] : 0;
+    }
+
+    void dropArgs(int nArgs) {
+        argTop -= nArgs;
+    }
+
+    /**
+     * Pop the arguments on top of the operand stack into a new parameter
+     * frame, with the first argument at offset 0.
+     * @return pointer to the frame
+     */
+    int pushParams(int nArgs) {
+        int pFrame = mem.pushFrame(4*nArgs);
+        for (int i=0; i<nArgs; i++) {
+            mem.setInt(pFrame, 4*i, argStack[argTop-1-i]);
+        }
+        argTop -= nArgs;
+        return pFrame;
+    }
+
+    /**
+     * Make sure a call has numArgs arguments on the operand stack above
+     * argBase: arguments that were never pushed get the error value.
+     */
+    private void padArgs(int argBase, int numArgs) {
+        int missing = numArgs - (argTop - argBase);
+        if (missing > 0) {
+            for (int i=0; i<missing; i++) pushArg(0);
+            System.arraycopy(argStack, argBase, argStack, argBase+missing, argTop-missing-argBase);
+            Arrays.fill(argStack, argBase, argBase+missing, ERR_VAL);
+        }
+    }
+
+    /**
+     * Drop any arguments between argBase and the numArgs arguments of a
+     * tail call, which were pushed and never used, as returning would.
+     */
+    private void dropUnusedArgs(int argBase, int numArgs) {
+        System.arraycopy(argStack, argTop-numArgs, argStack, argBase, numArgs);
+        argTop = argBase + numArgs;
+    }
+
+    public ICProgram getProgram() {
+        return program;
+    }
+
+    /**
+     * Save the state of memory (the data area and everything that functions
+     * run so far have stored in it), so that any number of interpreters can
+     * start from it (see ICSnapshot.fork) without running the same setup
+     * again. Memory is shared copy-on-write, so this interpreter can keep
+     * running too.
+     * @return the snapshot
+     * @throws IllegalStateException if a function is running
+     */
+    public ICSnapshot snapshot() {
+        if (depth != 0)
+            throw new IllegalStateException("Can't take a snapshot while a function is running");
+        return new ICSnapshot(program, mem.fork());
+    }
+
+    ICMemory memory() {
+        return mem;
+    }
+
+    /**
+     * @return the stream for reporting errors, after writing out any
+     *         buffered output so that the two appear in order
+     */
+    PrintStream errorStream() {
+        out.flush();
+        return err;
+    }
+
+    /**
+     * Count instructions run by compiled code, which calls this at
+     * back-edges and calls, so the limits on execution are checked here.
+     */
+    void addInstructions(int n) {
+        instrCount += n;
+        if (instrCount >= nextCheck) checkLimits();
+    }
+
+    /**
+     * Finish a call to a compiled function.
+     */
+    void leaveCompiled(int argBase, int n) {
+        argTop = argBase;   // Drop any arguments that were never used
+        instrCount += n;
+    }
+
+    int callBuiltinFromCompiled(int builtin, int numArgs, int argBase) {
+        padArgs(argBase, numArgs);
+        return callBuiltin(builtin, numArgs);
+    }
+
+    /**
+     * Get the arguments ready for a tail call that compiled code makes to
+     * its own function.
+     */
+    void tailArgsFromCompiled(int numArgs, int argBase) {
+        padArgs(argBase, numArgs);
+        dropUnusedArgs(argBase, numArgs);
+    }
+
+    /**
+     * A call made by compiled code to a function defined in the program,
+     * which may be compiled or interpreted.
+     */
+    int callFromCompiled(int startLine, int numArgs, int argBase) {
+        padArgs(argBase, numArgs);
+        return invoke(startLine, numArgs);
+    }
+
+    /**
+     * Choose whether functions are interpreted or compiled.
+     * @param tier the execution tier
+     */
+    public void setTier(Tier tier) {
+        this.tier = tier;
+        resetCompileTier();
+    }
+
+    public Tier getTier() {
+        return tier;
+    }
+
+    /**
+     * Set the number of calls after which a function is compiled, in the
+     * TIERED tier.
+     * @param compileThreshold number of calls
+     */
+    public void setCompileThreshold(int compileThreshold) {
+        this.compileThreshold = compileThreshold;
+        resetCompileTier();
+    }
+
+    public int getCompileThreshold() {
+        return compileThreshold;
+    }
+
+    private void resetCompileTier() {
+        if (profiler != null) {
+            compileTier = null;
+            return;
+        }
+        switch (tier) {
+            case TIERED:
+                compileTier = new ICCompileTier(this, program, compileThreshold);
+                break;
+            case COMPILED:
+                compileTier = new ICCompileTier(this, program, 1);
+                break;
+            default:
+                compileTier = null;
+                break;
+        }
+    }
+
+    /**
+     * Count a call to a function in the compiled tier.
+     * @return the compiled function to run, or null if the call should be
+     *         interpreted
+     */
+    private ICCompiledFunction compiled(int startLine) {
+        if ((compileTier == null) || (nativeDepth >= MAX_NATIVE_DEPTH)) return null;
+        return compileTier.lookup(startLine);
+    }
+
+    private int runCompiled(ICCompiledFunction fn, int nArgs) {
+        checkDepth();
+        depth++;
+        nativeDepth++;
+        try {
+            return fn.invoke(nArgs);
+        } finally {
+            nativeDepth--;
+            depth--;
+        }
+    }
+
+    /**
+     * Run a function to completion, whose arguments are the top nArgs
+     * entries of the operand stack.
+     * @param startLine line of the function's .fnStart
+     * @return the value returned by the function
+     */
+    private int invoke(int startLine, int nArgs) {
+        ICCompiledFunction fn = compiled(startLine);
+        if (fn != null) return runCompiled(fn, nArgs);
+
+        // All calls made from here are run by this one loop, using the
+        // pool of records as the call stack
+        int savedEntryDepth = entryDepth;
+        entryDepth = depth;
+        try {
+            LocalEnv env = enter(startLine, nArgs);
+            while (env != null) {
+                env = env.run();
             }
-            return SimValue.errVal;
-        } else if (fname.equals("gf_read")) {
-            int readVal = sin.nextInt();
-            return new SimValue(4,readVal);
-        } else if (fname.equals("gf_readline")) {
-            if ((params != null) && (params.size() == 1)) {
-                int ptr = params.get(0).getAsI();
-                if (ptr == 0) return SimValue.errVal;
-                int aLen = ptrGetInt(ptr, 0);
+            return entryRetVal;
+        } finally {
+            depth = entryDepth;
+            entryDepth = savedEntryDepth;
+            if (profiler != null) profiler.leaveTo(depth, instrCount);
+        }
+    }
 
-                String line = sin.nextLine();
-                for (int i=0; i<line.length() && i<aLen; i++) {
-                    ptrSetByte(ptr, 4+i, (byte)line.charAt(i));
-                }
-                if (line.length() < aLen)
-                    ptrSetByte(ptr, 4+line.length(), (byte)0);
+    /**
+     * @return the number of IC instructions executed so far
+     */
+    public long getInstructionCount() {
+        return instrCount;
+    }
+
+    /**
+     * Choose how the interpreter loop dispatches on instructions.
+     * @param dispatch the dispatch strategy
+     */
+    public void setDispatch(Dispatch dispatch) {
+        this.dispatch = dispatch;
+        fusedOps = (dispatch == Dispatch.FUSED) ? program.fusedOps() : null;
+    }
+
+    public Dispatch getDispatch() {
+        return dispatch;
+    }
+
+    /**
+     * Profile the program from now on. While profiling, every function is
+     * interpreted, whatever the tier.
+     * @param profiler the profiler for this interpreter's program, or null
+     *                 to stop profiling
+     */
+    public void setProfiler(ICProfiler profiler) {
+        if (depth != 0)
+            throw new IllegalStateException("Can't start or stop profiling while the program is running");
+        if ((profiler != null) && (profiler.getProgram() != program))
+            throw new IllegalArgumentException("Profiler is for a different program");
+        this.profiler = profiler;
+        resetCompileTier();
+    }
+
+    public ICProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Set the limit on the depth of calls in the interpreted program.
+     * @param maxDepth maximum number of active calls
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Limit the memory the interpreted program can have allocated at once:
+     * its data area, globals and frames. An allocation that would go over
+     * the limit throws an ICLimitException.
+     * @param maxBytes maximum number of bytes, or 0 for no limit
+     */
+    public void setMemoryLimit(long maxBytes) {
+        mem.setLimit(maxBytes);
+    }
+
+    public long getMemoryLimit() {
+        return mem.getLimit();
+    }
+
+    /**
+     * @return the number of bytes of memory the program has allocated now
+     */
+    public long getLiveBytes() {
+        return mem.liveBytes();
+    }
+
+    /**
+     * @return the most bytes of memory the program has had allocated at
+     *         once, since the interpreter was made or resetPeakBytes
+     */
+    public long getPeakBytes() {
+        return mem.peakBytes();
+    }
+
+    /**
+     * Start measuring getPeakBytes again from the memory allocated now.
+     */
+    public void resetPeakBytes() {
+        mem.resetPeak();
+    }
+
+    /**
+     * Set how much of the program's output is buffered before it is
+     * written. Output is also written whenever the program reads input and
+     * when it finishes.
+     * @param size number of bytes, or 0 to write the output of each print
+     *             right away
+     */
+    public void setOutputBufferSize(int size) {
+        out.setThreshold(size);
+    }
+
+    public int getOutputBufferSize() {
+        return out.getThreshold();
+    }
+
+    /**
+     * Write out any output that is still buffered.
+     */
+    public void flush() {
+        out.flush();
+    }
+
+    /**
+     * Execute a function, starting from outside of the interpreted program.
+     * @param fname name of the function
+     * @param params values of the arguments
+     * @return the value returned by the function
+     * @throws ICExecutionException if the program fails or runs past one of
+     *         the limits set on this interpreter
+     */
+    public SimValue executeFunction(String fname, List<SimValue> params) {
+        int nArgs = (params == null) ? 0 : params.size();
+        for (int i=nArgs-1; i>=0; i--) {
+            pushArg(params.get(i).getAsI());
+        }
+        boolean outermost = (depth == 0);
+        if (outermost && (timeLimitMillis > 0)) {
+            deadline = System.nanoTime() + timeLimitMillis * 1000000;
+            nextCheck = Math.min(nextCheck, instrCount + CHECK_INTERVAL);
+        }
+        try {
+            ICFunction fn = program.getFunction(fname);
+            if (DEBUG) debugPrint("Executing function "+fname+" (line "+((fn == null) ? -1 : fn.entry)+")");
+            if (fn == null) {
+                errorStream().println("Error in executing intermediate code: Unknown function "+fname);
+                argTop -= nArgs;
+                return SimValue.errVal;
             }
-            return SimValue.errVal;
+            if (fn.isIntrinsic()) return new SimValue(4, callBuiltin(fn.builtin, nArgs));
+            return new SimValue(4, invoke(fn.entry, nArgs));
+        } catch (ArithmeticException e) {
+            throw new ICExecutionException("Error in executing intermediate code: "+e.getMessage(), e);
+        } finally {
+            if (outermost) out.flush();
         }
-        debugPrint("Executing function "+fname+" (line "+labels.get(fname)+")");
-        Integer startLine = labels.get(fname);
-        if (startLine == null) {
-            System.err.println("Error in executing intermediate code: Unknown function "+fname);
-            return SimValue.errVal;
+    }
+
+    /**
+     * Check the limits on a new call.
+     */
+    private void checkDepth() {
+        if (depth >= maxDepth) {
+            throw new ICLimitException(ICLimitException.Limit.CALL_DEPTH,
+                    "Error in executing intermediate code: Call depth exceeds "+maxDepth);
         }
-        LocalEnv env = new LocalEnv(startLine, params);
+        if (instrCount >= nextCheck) checkLimits();
+    }
 
-        while (env.execLine()) ;
+    /**
+     * Check the instruction budget, cancellation and the deadline, and
+     * decide when to check them next.
+     */
+    private void checkLimits() {
+        if (instrCount >= instructionBudget) {
+            throw new ICLimitException(ICLimitException.Limit.INSTRUCTIONS,
+                    "Error in executing intermediate code: Instruction budget of "+instructionBudget+" exceeded");
+        }
+        if (cancelled) {
+            throw new ICLimitException(ICLimitException.Limit.CANCELLED,
+                    "Error in executing intermediate code: Cancelled");
+        }
+        if ((timeLimitMillis > 0) && (System.nanoTime() - deadline >= 0)) {
+            throw new ICLimitException(ICLimitException.Limit.DEADLINE,
+                    "Error in executing intermediate code: Time limit of "+timeLimitMillis+" ms exceeded");
+        }
+        nextCheck = Math.min(instructionBudget, instrCount + CHECK_INTERVAL);
+    }
+
+    /**
+     * Limit the total number of instructions this interpreter runs.
+     * @param instructionBudget maximum number of instructions
+     */
+    public void setInstructionBudget(long instructionBudget) {
+        this.instructionBudget = instructionBudget;
+        nextCheck = Math.min(instructionBudget, instrCount + CHECK_INTERVAL);
+    }
+
+    public long getInstructionBudget() {
+        return instructionBudget;
+    }
+
+    /**
+     * Limit the wall-clock time of each call to executeFunction.
+     * @param timeLimitMillis time limit in milliseconds, or 0 for none
+     */
+    public void setTimeLimit(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    public long getTimeLimit() {
+        return timeLimitMillis;
+    }
+
+    /**
+     * Stop the running program, which then throws an ICLimitException from
+     * executeFunction. This may be called from any thread, and also stops
+     * any later runs.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
 
-        SimValue retVal = env.getRetVal();
-        env.freeSpace();
+    /**
+     * Start an interpreted call to a function, whose arguments are the top
+     * nArgs entries of the operand stack.
+     * @return the callee's record
+     */
+    private LocalEnv enter(int startLine, int nArgs) {
+        checkDepth();
+        // Calls to compiled functions take up depth without using the pool
+        if (depth >= envPool.length)
+            envPool = Arrays.copyOf(envPool, Math.max(2*envPool.length, depth+1));
+        LocalEnv env = envPool[depth];
+        if (env == null) {
+            env = new LocalEnv();
+            envPool[depth] = env;
+        }
+        depth++;
+        if (profiler != null) profiler.enter(startLine, instrCount);
+        env.begin(startLine, nArgs);
+        return env;
+    }
 
-        return retVal;
+    // Builtin functions, which calls are resolved to when they are decoded
+    static final int PRINTD = 0;
+    static final int PRINTS = 1;
+    static final int READ = 2;
+    static final int READLINE = 3;
+
+    /**
+     * @return the number of the builtin function with this name, or -1 if
+     *         it isn't a builtin
+     */
+    static int builtin(String fname) {
+        switch (fname) {
+            case "gf_printd": return PRINTD;
+            case "gf_prints": return PRINTS;
+            case "gf_read": return READ;
+            case "gf_readline": return READLINE;
+            default: return -1;
+        }
+    }
+
+    /**
+     * Call a builtin function whose arguments are the top nArgs entries of
+     * the operand stack, which are popped by the time this returns.
+     */
+    private int callBuiltin(int builtin, int nArgs) {
+        int argsAt = argTop - nArgs;
+        argTop = argsAt;
+        if (profiler != null) profiler.countBuiltin(builtin);
+        if (builtin == PRINTD) {
+            if (nArgs == 1) out.printInt(argStack[argsAt]);
+            return ERR_VAL;
+        } else if (builtin == PRINTS) {
+            if (nArgs == 1) {
+                int ptr = argStack[argsAt];
+                if (ptr == 0) return ERR_VAL;
+                out.printString(mem, ptr);
+            }
+            return ERR_VAL;
+        } else if (builtin == READ) {
+            out.flush();
+            try {
+                return in.nextInt();
+            } catch (NoSuchElementException e) {
+                throw new ICExecutionException("Error in executing intermediate code: No integer to read", e);
+            }
+        } else if (builtin == READLINE) {
+            if (nArgs == 1) {
+                int ptr = argStack[argsAt];
+                if (ptr == 0) return ERR_VAL;
+                int aLen = ptrGetInt(ptr, 0);
+
+                int lineLen;
+                out.flush();
+                try {
+                    lineLen = in.readLine(mem, ptr, aLen);
+                } catch (NoSuchElementException e) {
+                    throw new ICExecutionException("Error in executing intermediate code: No line to read", e);
+                }
+                if (lineLen < aLen)
+                    ptrSetByte(ptr, 4+lineLen, (byte)0);
+            }
+            return ERR_VAL;
+        }
+        return ERR_VAL;
     }
 }
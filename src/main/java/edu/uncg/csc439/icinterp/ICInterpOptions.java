@@ -0,0 +1,344 @@
+package edu.uncg.csc439.icinterp;
+
+import edu.uncg.csc439.icode.ICBinary;
+import edu.uncg.csc439.icode.ICOptimizationOptions;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line options for running the interpreter, shared by the programs
+ * that run intermediate code. Options come before any other arguments and
+ * are written as -name=value.
+ */
+public class ICInterpOptions {
+    private ICMemory.Model memModel = ICMemory.Model.SEGMENTED;
+    private int maxDepth = ICInterp.DEFAULT_MAX_DEPTH;
+    private ICInterp.Dispatch dispatch = ICInterp.Dispatch.FUSED;
+    private ICInterp.Tier tier = ICInterp.Tier.TIERED;
+    private int compileThreshold = ICInterp.DEFAULT_COMPILE_THRESHOLD;
+    private long instructionBudget = Long.MAX_VALUE;
+    private long timeLimitMillis;
+    private long memoryLimit;
+    private int outputBufferSize = ICOutput.DEFAULT_BUFFER_SIZE;
+    private String profileFile;
+    private final ICOptimizationOptions optimization = new ICOptimizationOptions();
+
+    /**
+     * @return a description of the options, for usage messages
+     */
+    public static String usage() {
+        return "   -mem=segmented|linear  memory model for the interpreter (default segmented)\n" +
+               "   -maxdepth=N            limit on the depth of calls (default " + ICInterp.DEFAULT_MAX_DEPTH + ")\n" +
+               "   -dispatch=decoded|fused  interpreter dispatch strategy (default fused)\n" +
+               "   -tier=interp|tiered|compiled  when functions are compiled to JVM bytecode (default tiered)\n" +
+               "   -threshold=N           calls before a function is compiled, with -tier=tiered (default " +
+                       ICInterp.DEFAULT_COMPILE_THRESHOLD + ")\n" +
+               "   -maxinstr=N            stop after running N instructions (default no limit)\n" +
+               "   -timeout=MS            stop after running for MS milliseconds (default no limit)\n" +
+               "   -maxmem=BYTES          stop when more than BYTES bytes of memory are allocated (default no limit)\n" +
+               "   -outbuf=N              bytes of output buffered before writing, 0 for none (default " +
+                       ICOutput.DEFAULT_BUFFER_SIZE + ")\n" +
+               "   -profile=FILE          write an execution profile to FILE, and its call stacks to\n" +
+               "                          FILE.folded for flame graph tools (all code is interpreted)\n";
+    }
+
+    /**
+     * Parse the options at the start of the command line. Errors are
+     * reported on System.err.
+     *
+     * @param argv command line arguments
+     * @return the arguments that follow the options, or null if there was an
+     *         error in the options
+     */
+    public String[] parse(String[] argv) {
+        List<String> rest = new ArrayList<>();
+        int i = 0;
+        for (; (i < argv.length) && argv[i].startsWith("-") && (argv[i].length() > 1); i++) {
+            String arg = argv[i];
+            int eq = arg.indexOf('=');
+            String name = (eq < 0) ? arg : arg.substring(0, eq);
+            String value = (eq < 0) ? "" : arg.substring(eq+1);
+            if (name.equals("-mem")) {
+                if (value.equals("segmented")) {
+                    memModel = ICMemory.Model.SEGMENTED;
+                } else if (value.equals("linear")) {
+                    memModel = ICMemory.Model.LINEAR;
+                } else {
+                    System.err.println("Unknown memory model: " + value);
+                    return null;
+                }
+            } else if (name.equals("-dispatch")) {
+                if (value.equals("decoded")) {
+                    dispatch = ICInterp.Dispatch.DECODED;
+                } else if (value.equals("fused")) {
+                    dispatch = ICInterp.Dispatch.FUSED;
+                } else {
+                    System.err.println("Unknown dispatch strategy: " + value);
+                    return null;
+                }
+            } else if (name.equals("-tier")) {
+                if (value.equals("interp")) {
+                    tier = ICInterp.Tier.INTERP;
+                } else if (value.equals("tiered")) {
+                    tier = ICInterp.Tier.TIERED;
+                } else if (value.equals("compiled")) {
+                    tier = ICInterp.Tier.COMPILED;
+                } else {
+                    System.err.println("Unknown tier: " + value);
+                    return null;
+                }
+            } else if (name.equals("-threshold")) {
+                compileThreshold = parsePositive(name, value);
+                if (compileThreshold < 0) return null;
+            } else if (name.equals("-maxinstr")) {
+                instructionBudget = parsePositiveLong(name, value);
+                if (instructionBudget < 0) return null;
+            } else if (name.equals("-timeout")) {
+                timeLimitMillis = parsePositiveLong(name, value);
+                if (timeLimitMillis < 0) return null;
+            } else if (name.equals("-maxmem")) {
+                memoryLimit = parsePositiveLong(name, value);
+                if (memoryLimit < 0) return null;
+            } else if (name.equals("-outbuf")) {
+                outputBufferSize = parseNonNegative(name, value);
+                if (outputBufferSize < 0) return null;
+            } else if (name.equals("-profile")) {
+                if (value.isEmpty()) {
+                    System.err.println("Option " + name + " needs a file name");
+                    return null;
+                }
+                profileFile = value;
+            } else if (name.equals("-maxdepth")) {
+                maxDepth = parsePositive(name, value);
+                if (maxDepth < 0) return null;
+            } else if (optimization.parseOption(arg)) {
+                // -O0, -O1, -O2 or -Ostats
+            } else {
+                System.err.println("Unknown option: " + arg);
+                return null;
+            }
+        }
+        for (; i < argv.length; i++)
+            rest.add(argv[i]);
+        return rest.toArray(new String[0]);
+    }
+
+    /**
+     * @return the value of a numeric option, or -1 (after reporting the
+     *         error) if it isn't a positive number
+     */
+    private static int parsePositive(String name, String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) return n;
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        System.err.println("Option " + name + " needs a positive number");
+        return -1;
+    }
+
+    private static int parseNonNegative(String name, String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= 0) return n;
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        System.err.println("Option " + name + " needs a number that isn't negative");
+        return -1;
+    }
+
+    private static long parsePositiveLong(String name, String value) {
+        try {
+            long n = Long.parseLong(value);
+            if (n > 0) return n;
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        System.err.println("Option " + name + " needs a positive number");
+        return -1;
+    }
+
+    public ICMemory.Model getMemModel() {
+        return memModel;
+    }
+
+    public void setMemModel(ICMemory.Model memModel) {
+        this.memModel = memModel;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public ICInterp.Dispatch getDispatch() {
+        return dispatch;
+    }
+
+    public void setDispatch(ICInterp.Dispatch dispatch) {
+        this.dispatch = dispatch;
+    }
+
+    public ICInterp.Tier getTier() {
+        return tier;
+    }
+
+    public void setTier(ICInterp.Tier tier) {
+        this.tier = tier;
+    }
+
+    public int getCompileThreshold() {
+        return compileThreshold;
+    }
+
+    public void setCompileThreshold(int compileThreshold) {
+        this.compileThreshold = compileThreshold;
+    }
+
+    public long getInstructionBudget() {
+        return instructionBudget;
+    }
+
+    public void setInstructionBudget(long instructionBudget) {
+        this.instructionBudget = instructionBudget;
+    }
+
+    public long getTimeLimit() {
+        return timeLimitMillis;
+    }
+
+    public void setTimeLimit(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    /**
+     * @return the limit on allocated memory in bytes, or 0 if there is none
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    public void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    public int getOutputBufferSize() {
+        return outputBufferSize;
+    }
+
+    public void setOutputBufferSize(int outputBufferSize) {
+        this.outputBufferSize = outputBufferSize;
+    }
+
+    /**
+     * @return the file the profile is written to, or null if the program
+     *         isn't profiled
+     */
+    public String getProfileFile() {
+        return profileFile;
+    }
+
+    public void setProfileFile(String profileFile) {
+        this.profileFile = profileFile;
+    }
+
+    /**
+     * @return the options for optimizing intermediate code generated from a
+     *         LittleC program before it is run
+     */
+    public ICOptimizationOptions getOptimization() {
+        return optimization;
+    }
+
+    /**
+     * @param program the intermediate code to run
+     * @return the program, loaded for the memory model in these options
+     */
+    public ICProgram loadProgram(String program) {
+        return ICProgram.load(program, memModel);
+    }
+
+    /**
+     * @param program the intermediate code to run, in the binary form
+     * @return the program, loaded for the memory model in these options
+     */
+    public ICProgram loadProgram(ICBinary program) {
+        return ICProgram.load(program, memModel);
+    }
+
+    /**
+     * @param program the intermediate code to run
+     * @return an interpreter for the program, set up with these options, that
+     *         uses the standard input and output. Standard input is read from
+     *         its file descriptor rather than through System.in, so that it
+     *         can be memory mapped when it is redirected from a file.
+     */
+    public ICInterp createInterp(String program) {
+        return createInterp(loadProgram(program));
+    }
+
+    /**
+     * @param program the program to run, which should have been loaded with
+     *                loadProgram
+     * @return an interpreter for the program, set up with these options, that
+     *         uses the standard input and output, as createInterp(String)
+     *         does
+     */
+    public ICInterp createInterp(ICProgram program) {
+        return createInterp(program, new FileInputStream(FileDescriptor.in), System.out, System.err);
+    }
+
+    /**
+     * @param program the program to run, which should have been loaded with
+     *                loadProgram
+     * @param in the program's standard input
+     * @param out the program's standard output
+     * @param err where errors in running the program are reported
+     * @return an interpreter for the program, set up with these options
+     */
+    public ICInterp createInterp(ICProgram program, InputStream in, PrintStream out, PrintStream err) {
+        ICInterp interp = new ICInterp(program, in, out, err);
+        interp.setMaxDepth(maxDepth);
+        interp.setDispatch(dispatch);
+        interp.setCompileThreshold(compileThreshold);
+        interp.setTier(tier);
+        interp.setInstructionBudget(instructionBudget);
+        interp.setTimeLimit(timeLimitMillis);
+        interp.setMemoryLimit(memoryLimit);
+        interp.setOutputBufferSize(outputBufferSize);
+        if (profileFile != null) interp.setProfiler(new ICProfiler(program));
+        return interp;
+    }
+
+    /**
+     * Write the profile of a program run by an interpreter made by
+     * createInterp, if profiling was asked for: the report goes to the
+     * profile file, and the call stacks to the same name with ".folded"
+     * added.
+     * @param interp the interpreter, which has finished running
+     * @param err where to report a failure to write the files
+     */
+    public void writeProfile(ICInterp interp, PrintStream err) {
+        ICProfiler profiler = interp.getProfiler();
+        if ((profileFile == null) || (profiler == null)) return;
+        try (PrintStream report = new PrintStream(new FileOutputStream(profileFile));
+             PrintStream stacks = new PrintStream(new FileOutputStream(profileFile + ".folded"))) {
+            profiler.writeReport(report);
+            profiler.writeCollapsedStacks(stacks);
+        } catch (IOException e) {
+            err.println("Could not write profile: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package edu.uncg.csc439.icinterp;
+
+/**
+ * The program ran past one of the limits set on the interpreter, or was
+ * cancelled. Limits are checked at back-edges and calls, so a program can
+ * run a little past its instruction budget or deadline before it is stopped.
+ * The memory limit is checked on every allocation.
+ */
+public class ICLimitException extends ICExecutionException {
+    /**
+     * The limit that stopped the program.
+     */
+    public enum Limit { INSTRUCTIONS, DEADLINE, CANCELLED, CALL_DEPTH, MEMORY }
+
+    private final Limit limit;
+
+    public ICLimitException(Limit limit, String message) {
+        super(message);
+        this.limit = limit;
+    }
+
+    public Limit getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,25 @@
+package edu.uncg.csc439.icinterp;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A program that can't be run because of errors found when it was loaded,
+ * such as jumps to labels or calls to functions that aren't defined. All
+ * the errors in the program are reported together.
+ */
+public class ICLoadException extends ICExecutionException {
+    private final List<String> problems;
+
+    public ICLoadException(List<String> problems) {
+        super("Error in loading intermediate code: " + String.join("\n", problems));
+        this.problems = Collections.unmodifiableList(problems);
+    }
+
+    /**
+     * @return a description of each error, with its line number
+     */
+    public List<String> getProblems() {
+        return problems;
+    }
+}
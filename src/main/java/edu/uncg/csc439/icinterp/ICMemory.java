@@ -0,0 +1,140 @@
+package edu.uncg.csc439.icinterp;
+
+/**
+ * Memory used by the intermediate code interpreter. Memory is addressed with
+ * int pointers, where 0 is the null pointer, and every access is given as a
+ * pointer plus a byte offset from it. Ints are stored little-endian.
+ *
+ * There are three kinds of space: the data area (filled in from .db/.dw
+ * directives when the program is loaded), other global variables, and
+ * frames for locals and parameters, which are allocated and freed in
+ * last-in first-out order as functions are called and return.
+ *
+ * Accesses outside of allocated memory (as far as the model checks) and
+ * allocations that can't be satisfied throw ICMemoryException.
+ *
+ * Every memory counts the bytes it has allocated, including the data area,
+ * and can be limited to a number of them. Allocations that would go over
+ * the limit throw ICLimitException.
+ */
+public interface ICMemory {
+    /**
+     * The available memory backends.
+     * <ul>
+     *     <li>SEGMENTED: every frame and global lives in its own segment of at
+     *         most 64K, with at most 64K segments. Accesses are checked
+     *         against the size of their segment.</li>
+     *     <li>LINEAR: a single growable byte array holding the global data
+     *         followed by a stack of frames, limited only by the size of a
+     *         Java array.</li>
+     * </ul>
+     */
+    enum Model { SEGMENTED, LINEAR }
+
+    /**
+     * @param model which backend to use
+     * @return a new, empty memory
+     */
+    static ICMemory create(Model model) {
+        switch (model) {
+            case LINEAR: return new LinearMemory();
+            default: return new SegmentedMemory();
+        }
+    }
+
+    int getInt(int ptr, int offset);
+
+    void setInt(int ptr, int offset, int val);
+
+    byte getByte(int ptr, int offset);
+
+    void setByte(int ptr, int offset, byte val);
+
+    /**
+     * Copy bytes out of memory.
+     * @param ptr pointer to copy from
+     * @param offset byte offset from ptr of the first byte
+     * @param dst array to copy into
+     * @param dstPos position in dst of the first byte
+     * @param len number of bytes
+     */
+    default void getBytes(int ptr, int offset, byte[] dst, int dstPos, int len) {
+        for (int i=0; i<len; i++)
+            dst[dstPos+i] = getByte(ptr, offset+i);
+    }
+
+    /**
+     * Extend the data area.
+     * @param size number of bytes to add
+     * @return pointer to the start of the new space
+     */
+    int growData(int size);
+
+    /**
+     * @return pointer to the current end of the data area, which is where
+     *         the next growData will start
+     */
+    int dataExtent();
+
+    /**
+     * Allocate space for a global variable, which is never freed.
+     * @param size number of bytes
+     * @return pointer to the new space
+     */
+    int allocGlobal(int size);
+
+    /**
+     * Allocate a zero-filled frame.
+     * @param size number of bytes
+     * @return pointer to the frame (never 0)
+     */
+    int pushFrame(int size);
+
+    /**
+     * Free a frame, which must be the most recently allocated one that
+     * hasn't been freed.
+     * @param ptr pointer returned by pushFrame
+     */
+    void popFrame(int ptr);
+
+    /**
+     * @return the number of bytes allocated and not yet freed: the data
+     *         area, globals and frames (with any padding that aligns them)
+     */
+    long liveBytes();
+
+    /**
+     * @return the highest liveBytes since the memory was made or forked,
+     *         or since resetPeak
+     */
+    long peakBytes();
+
+    /**
+     * Start measuring peakBytes again from the current liveBytes.
+     */
+    void resetPeak();
+
+    /**
+     * Limit the number of bytes that can be allocated at once. Memory
+     * that is already allocated stays allocated even if it is over the
+     * limit.
+     * @param maxBytes maximum liveBytes, or 0 for no limit
+     */
+    void setLimit(long maxBytes);
+
+    /**
+     * @return the limit on liveBytes, or 0 if there is none
+     */
+    long getLimit();
+
+    /**
+     * Make an independent copy of this memory, which has no frames
+     * allocated, with the same contents and the same pointers. Storage may
+     * be shared copy-on-write, so a copy is cheap to make however large the
+     * data area is. A memory that is never written to again can be forked
+     * by any number of threads at once. The copy starts with no limit, and
+     * with its peakBytes at its liveBytes.
+     * @return the copy
+     */
+    ICMemory fork();
+}
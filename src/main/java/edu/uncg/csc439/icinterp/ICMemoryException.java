@@ -0,0 +1,11 @@
+package edu.uncg.csc439.icinterp;
+
+/**
+ * A memory access outside of allocated memory, or an allocation that the
+ * memory model can't satisfy.
+ */
+public class ICMemoryException extends ICExecutionException {
+    public ICMemoryException(String message) {
+        super(message);
+    }
+}
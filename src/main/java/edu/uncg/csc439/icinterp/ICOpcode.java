@@ -0,0 +1,88 @@
+package edu.uncg.csc439.icinterp;
+
+/**
+ * Opcodes for decoded intermediate code instructions. Each line of IC text is
+ * decoded once (see ICDecoder) into an ICInstr carrying one of these opcodes,
+ * so the interpreter can dispatch on the opcode instead of re-examining the
+ * text of the line every time it is executed.
+ */
+public enum ICOpcode {
+    // Lines that do nothing when executed (empty lines, .db/.dw, unknown)
+    NOP,
+
+    // Directives
+    FN_START,       // .fnStart size
+    FN_END,         // .fnEnd
+
+    // Control flow
+    RETURN,         // return
+    RETURN_VAL,     // return1 x / return4 x
+    PARAM,          // param1 x / param4 x
+    CALL,           // [x =] call f,n
+    BUILTIN,        // [x =] call f,n where f is a builtin function
+    TAIL_CALL,      // x = call f,n where the caller returns x right after
+    GOTO,           // goto L
+    IF,             // if x goto L
+    IF_EXPR,        // if x relop y goto L
+    IF_FALSE,       // ifFalse x goto L
+
+    // Stores
+    SETSIZE,        // x setsize n
+    STIDX,          // a = i stidx1 x / a = i stidx4 x
+
+    // Copy and casts
+    COPY,           // x = y
+    NARROW,         // x = narrow y
+    WIDEN,          // x = widen y
+
+    // Binary operations
+    ADD, SUB, MUL, DIV, MOD,
+    LT, LE, GT, GE, EQ, NE,
+    LDIDX1, LDIDX4,
+
+    // Unary operations
+    NEG, POS, NOT, ADDR, LEN,
+
+    // Operation that could not be decoded (produces the error value)
+    ERRVAL;
+
+    /**
+     * Look up the opcode for a binary operator as written in IC text.
+     * @param oprt the operator string
+     * @return the opcode, or ERRVAL if the operator is unknown
+     */
+    public static ICOpcode binaryOp(String oprt) {
+        switch (oprt) {
+            case "+": return ADD;
+            case "-": return SUB;
+            case "*": return MUL;
+            case "/": return DIV;
+            case "%": return MOD;
+            case "<": return LT;
+            case "<=": return LE;
+            case ">": return GT;
+            case ">=": return GE;
+            case "==": return EQ;
+            case "!=": return NE;
+            case "ldidx1": return LDIDX1;
+            case "ldidx4": return LDIDX4;
+            default: return ERRVAL;
+        }
+    }
+
+    /**
+     * Look up the opcode for a unary operator as written in IC text.
+     * @param oprt the operator string
+     * @return the opcode, or ERRVAL if the operator is unknown
+     */
+    public static ICOpcode unaryOp(String oprt) {
+        switch (oprt) {
+            case "-": return NEG;
+            case "+": return POS;
+            case "!": return NOT;
+            case "&": return ADDR;
+            case "#": return LEN;
+            default: return ERRVAL;
+        }
+    }
+}
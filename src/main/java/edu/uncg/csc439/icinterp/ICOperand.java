@@ -0,0 +1,110 @@
+package edu.uncg.csc439.icinterp;
+
+/**
+ * A decoded operand of an intermediate code instruction. The kind of the
+ * operand (local, parameter, global, string literal, temporary or constant)
+ * and its width are worked out once when the instruction is decoded, and the
+ * operand is resolved to a numeric slot so that it can be found without
+ * looking at its name while the program runs:
+ * <ul>
+ *     <li>LOCAL and PARAM: the offset in the frame or parameter segment</li>
+ *     <li>GLOBAL and STRLIT: the pointer to the data</li>
+ *     <li>TEMP: the index in the function's temporary register file</li>
+ * </ul>
+ */
+public final class ICOperand {
+    public enum Kind { LOCAL, PARAM, GLOBAL, STRLIT, TEMP, CONST, OTHER }
+
+    public static final ICOperand NONE = new ICOperand(Kind.OTHER, "", 0, 0, 0);
+
+    public final Kind kind;
+    public final String name;
+    public final int width;
+    public final int value;
+    public final int slot;
+
+    private ICOperand(Kind kind, String name, int width, int value, int slot) {
+        this.kind = kind;
+        this.name = name;
+        this.width = width;
+        this.value = value;
+        this.slot = slot;
+    }
+
+    /**
+     * @param slot the slot this operand resolves to
+     * @return a copy of this operand resolved to the given slot
+     */
+    public ICOperand withSlot(int slot) {
+        return new ICOperand(kind, name, width, value, slot);
+    }
+
+    /**
+     * @return a copy of this operand that can't be resolved, so it reads as
+     *         the error value and ignores stores
+     */
+    public ICOperand unresolved() {
+        return new ICOperand(Kind.OTHER, name, width, 0, 0);
+    }
+
+    /**
+     * Decode an operand name, following the IC naming conventions: the first
+     * character gives the kind of name and (for variables) the second gives
+     * the width. Locals and parameters get their offset as their slot, but
+     * globals, string literals and temporaries must still be resolved.
+     * @param name the operand as written in IC text
+     * @return the decoded operand
+     */
+    public static ICOperand decode(String name) {
+        if (name.isEmpty()) return NONE;
+        int width = ICInterp.getTWidth(name);
+        if (name.startsWith("l") || name.startsWith("p")) {
+            int offset = offset(name);
+            if (offset < 0) return new ICOperand(Kind.OTHER, name, 0, 0, 0);
+            return new ICOperand(name.startsWith("l") ? Kind.LOCAL : Kind.PARAM, name, width, 0, offset);
+        } else if (name.startsWith("g") || name.startsWith("m")) {
+            return new ICOperand(Kind.GLOBAL, name, width, 0, 0);
+        } else if (name.startsWith("S")) {
+            return new ICOperand(Kind.STRLIT, name, width, 0, 0);
+        } else if (name.startsWith("t")) {
+            return new ICOperand(Kind.TEMP, name, width, 0, 0);
+        } else if (Character.isDigit(name.charAt(0))) {
+            try {
+                return new ICOperand(Kind.CONST, name, 0, Integer.parseInt(name), 0);
+            } catch (NumberFormatException e) {
+                return new ICOperand(Kind.OTHER, name, 0, 0, 0);
+            }
+        }
+        return new ICOperand(Kind.OTHER, name, 0, 0, 0);
+    }
+
+    /**
+     * Offset of a local or parameter name, which is written as (for example)
+     * l4@12 -- the offset always starts at the fourth character. Returns -1
+     * if the name is malformed.
+     */
+    private static int offset(String name) {
+        try {
+            return Integer.parseInt(name.substring(3));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The width of this operand's value when it is used in an instruction
+     * with the given target width. Constants take on the width of the
+     * instruction; everything else is either a byte or an int.
+     * @param tWidth target width of the instruction
+     * @return 1 or 4 (or tWidth for constants)
+     */
+    public int widthIn(int tWidth) {
+        if (kind == Kind.CONST) return tWidth;
+        return ((width == 1) && (kind != Kind.STRLIT) && (kind != Kind.OTHER)) ? 1 : 4;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
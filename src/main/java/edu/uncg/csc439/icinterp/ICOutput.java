@@ -0,0 +1,109 @@
+package edu.uncg.csc439.icinterp;
+
+import java.io.PrintStream;
+
+/**
+ * Buffered output for the gf_printd and gf_prints builtins. Numbers are
+ * formatted and strings are copied straight from memory into a byte buffer,
+ * which is written to the underlying stream only when it fills past a
+ * threshold or is flushed, so printing doesn't make a synchronized
+ * PrintStream call (or build a String) per value or character.
+ *
+ * Strings are written as raw bytes, which is what the LittleC char type
+ * holds.
+ */
+final class ICOutput {
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+    // Room for any formatted int
+    private static final int MIN_CAPACITY = 16;
+
+    private final PrintStream out;
+    private byte[] buf;
+    private int count;
+    private int threshold;
+
+    /**
+     * @param out the stream to write to
+     * @param threshold see setThreshold
+     */
+    ICOutput(PrintStream out, int threshold) {
+        this.out = out;
+        setThreshold(threshold);
+    }
+
+    /**
+     * Set how many bytes are buffered before they are written. A threshold
+     * of 0 writes the output of every print right away.
+     */
+    void setThreshold(int threshold) {
+        if (buf != null) flush();
+        this.threshold = threshold;
+        this.buf = new byte[Math.max(threshold, MIN_CAPACITY)];
+    }
+
+    int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Print an int in decimal.
+     */
+    void printInt(int val) {
+        if (buf.length - count < MIN_CAPACITY) drain();
+        // Digits are generated from a non-positive value, so that
+        // Integer.MIN_VALUE needs no special case
+        int v = val;
+        if (v < 0) buf[count++] = '-';
+        else v = -v;
+        int start = count;
+        do {
+            buf[count++] = (byte) ('0' - (v % 10));
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = count-1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+        if (count >= threshold) flush();
+    }
+
+    /**
+     * Print a char array: a length word followed by the chars, which may end
+     * early with a '\0'.
+     * @param ptr pointer to the array
+     */
+    void printString(ICMemory mem, int ptr) {
+        int end = 4 + mem.getInt(ptr, 0);
+        int pos = 4;
+        while (pos < end) {
+            if (count == buf.length) drain();
+            int n = Math.min(end - pos, buf.length - count);
+            mem.getBytes(ptr, pos, buf, count, n);
+            int stop = count + n;
+            for (int i = count; i < stop; i++) {
+                if (buf[i] == 0) {
+                    count = i;
+                    if (count >= threshold) flush();
+                    return;
+                }
+            }
+            count = stop;
+            pos += n;
+        }
+        if (count >= threshold) flush();
+    }
+
+    /**
+     * Write out everything buffered so far.
+     */
+    void flush() {
+        if (count > 0) drain();
+        out.flush();
+    }
+
+    private void drain() {
+        out.write(buf, 0, count);
+        count = 0;
+    }
+}
@@ -0,0 +1,253 @@
+package edu.uncg.csc439.icinterp;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Execution profile of a program run by ICInterp (see ICInterp.setProfiler).
+ * Time is measured in executed IC instructions, which is deterministic and
+ * matches what the interpreter does. The profile records
+ * <ul>
+ *     <li>how many times each line was executed</li>
+ *     <li>calls to each function, including builtins</li>
+ *     <li>instructions executed in each function (exclusive) and in it and
+ *         everything it called (inclusive, counting recursive calls once)</li>
+ *     <li>instructions executed under each distinct call stack, which is
+ *         written in the "collapsed stack" format read by flame graph tools
+ *         (one line per stack: function names from the outermost, separated
+ *         by semicolons, then a space and the count)</li>
+ * </ul>
+ * Stacks deeper than MAX_STACK_DEPTH are cut off at that depth, with
+ * everything deeper counted in the function at the cut.
+ */
+public final class ICProfiler {
+    static final int MAX_STACK_DEPTH = 512;
+    private static final int REPORT_LINES = 30;
+
+    private final ICProgram program;
+    private final ICInstr[] code;
+
+    private final long[] lineCounts;
+    private final long[] calls;
+    private final long[] inclusive;
+    private final long[] exclusive;
+    private final long[] builtinCalls = new long[4];
+
+    // The call stack, as a path in the tree of all stacks seen so far, with
+    // the instruction count when each call started
+    private final Node root = new Node(-1, null);
+    private Node[] stack = new Node[64];
+    private int[] stackFns = new int[64];
+    private long[] entryCounts = new long[64];
+    private int sp;
+    private int[] active;
+    private long mark;
+
+    /**
+     * A node in the tree of call stacks.
+     */
+    private static final class Node {
+        private final int fn;
+        private final Node parent;
+        private final int depth;
+        private final Map<Integer,Node> children = new HashMap<>();
+        private long self;
+
+        Node(int fn, Node parent) {
+            this.fn = fn;
+            this.parent = parent;
+            this.depth = (parent == null) ? 0 : parent.depth + 1;
+        }
+
+        Node child(int fn) {
+            if (depth >= MAX_STACK_DEPTH) return this;
+            return children.computeIfAbsent(fn, f -> new Node(f, this));
+        }
+    }
+
+    /**
+     * @param program the program that will be profiled
+     */
+    public ICProfiler(ICProgram program) {
+        this.program = program;
+        this.code = program.code();
+        int n = code.length;
+        lineCounts = new long[n];
+        calls = new long[n];
+        inclusive = new long[n];
+        exclusive = new long[n];
+        active = new int[n];
+    }
+
+    ICProgram getProgram() {
+        return program;
+    }
+
+    void countLine(int pc) {
+        lineCounts[pc]++;
+    }
+
+    void countBuiltin(int builtin) {
+        builtinCalls[builtin]++;
+    }
+
+    /**
+     * A call to the function starting at startLine is starting.
+     * @param instrCount the interpreter's instruction count
+     */
+    void enter(int startLine, long instrCount) {
+        Node current = (sp == 0) ? root : stack[sp-1];
+        current.self += instrCount - mark;
+        if (sp > 0) exclusive[stackFns[sp-1]] += instrCount - mark;
+        mark = instrCount;
+        if (sp == stack.length) {
+            stack = Arrays.copyOf(stack, 2*sp);
+            stackFns = Arrays.copyOf(stackFns, 2*sp);
+            entryCounts = Arrays.copyOf(entryCounts, 2*sp);
+        }
+        stack[sp] = current.child(startLine);
+        stackFns[sp] = startLine;
+        entryCounts[sp] = instrCount;
+        sp++;
+        calls[startLine]++;
+        active[startLine]++;
+    }
+
+    /**
+     * Calls are returning (or being unwound by an exception) until there
+     * are only depth calls left.
+     * @param instrCount the interpreter's instruction count
+     */
+    void leaveTo(int depth, long instrCount) {
+        while (sp > depth) {
+            sp--;
+            int fn = stackFns[sp];
+            stack[sp].self += instrCount - mark;
+            exclusive[fn] += instrCount - mark;
+            mark = instrCount;
+            if (--active[fn] == 0) inclusive[fn] += instrCount - entryCounts[sp];
+            stack[sp] = null;
+        }
+    }
+
+    /**
+     * @return the number of times a line was executed
+     * @param line the line number, counting from 1
+     */
+    public long getLineCount(int line) {
+        return lineCounts[line-1];
+    }
+
+    /**
+     * @return the number of calls to a function, which may be a builtin
+     */
+    public long getCalls(String fname) {
+        int builtin = ICInterp.builtin(fname);
+        if (builtin >= 0) return builtinCalls[builtin];
+        int start = functionStart(fname);
+        return (start < 0) ? 0 : calls[start];
+    }
+
+    /**
+     * @return instructions executed in a function and the functions it
+     *         called, from calls that have returned
+     */
+    public long getInclusive(String fname) {
+        int start = functionStart(fname);
+        return (start < 0) ? 0 : inclusive[start];
+    }
+
+    /**
+     * @return instructions executed in a function itself
+     */
+    public long getExclusive(String fname) {
+        int start = functionStart(fname);
+        return (start < 0) ? 0 : exclusive[start];
+    }
+
+    private int functionStart(String fname) {
+        ICFunction fn = program.getFunction(fname);
+        return ((fn == null) || fn.isIntrinsic()) ? -1 : fn.entry;
+    }
+
+    private String name(int startLine) {
+        return program.functionAt(startLine).name;
+    }
+
+    /**
+     * Write a report of the functions, sorted by exclusive instructions,
+     * and of the most executed lines.
+     */
+    public void writeReport(PrintStream out) {
+        long total = 0;
+        for (long count : lineCounts) total += count;
+
+        out.printf("Instructions executed: %d%n%n", total);
+        out.printf("%-24s %12s %14s %7s %14s %7s%n", "function", "calls", "exclusive", "%", "inclusive", "%");
+        List<Integer> fns = new ArrayList<>();
+        for (int i=0; i<code.length; i++) {
+            if (calls[i] > 0) fns.add(i);
+        }
+        fns.sort((a, b) -> Long.compare(exclusive[b], exclusive[a]));
+        for (int fn : fns) {
+            out.printf("%-24s %12d %14d %6.2f%% %14d %6.2f%%%n", name(fn), calls[fn],
+                    exclusive[fn], percent(exclusive[fn], total), inclusive[fn], percent(inclusive[fn], total));
+        }
+        for (String builtin : new String[] {"gf_printd", "gf_prints", "gf_read", "gf_readline"}) {
+            long n = builtinCalls[ICInterp.builtin(builtin)];
+            if (n > 0) out.printf("%-24s %12d%n", builtin, n);
+        }
+
+        List<Integer> lines = new ArrayList<>();
+        for (int i=0; i<code.length; i++) {
+            if (lineCounts[i] > 0) lines.add(i);
+        }
+        lines.sort((a, b) -> Long.compare(lineCounts[b], lineCounts[a]));
+        out.printf("%n%-8s %14s %7s  %s%n", "line", "count", "%", "instruction");
+        int fn = -1;
+        int[] lineFns = new int[code.length];
+        for (int i=0; i<code.length; i++) {
+            if (code[i].op == ICOpcode.FN_START) fn = i;
+            lineFns[i] = fn;
+        }
+        for (int i=0; (i<lines.size()) && (i<REPORT_LINES); i++) {
+            int line = lines.get(i);
+            String where = (lineFns[line] < 0) ? "" : "  (" + name(lineFns[line]) + ")";
+            out.printf("%-8d %14d %6.2f%%  %s%s%n", line+1, lineCounts[line],
+                    percent(lineCounts[line], total), code[line].text, where);
+        }
+    }
+
+    private static double percent(long n, long total) {
+        return (total == 0) ? 0 : 100.0 * n / total;
+    }
+
+    /**
+     * Write the instructions executed under each call stack, in collapsed
+     * stack format.
+     */
+    public void writeCollapsedStacks(PrintStream out) {
+        List<Node> nodes = new ArrayList<>(root.children.values());
+        StringBuilder line = new StringBuilder();
+        while (!nodes.isEmpty()) {
+            Node node = nodes.remove(nodes.size()-1);
+            nodes.addAll(node.children.values());
+            if (node.self == 0) continue;
+            String[] names = new String[node.depth];
+            for (Node n = node; n != root; n = n.parent)
+                names[n.depth-1] = name(n.fn);
+            line.setLength(0);
+            for (String name : names) {
+                if (line.length() > 0) line.append(';');
+                line.append(name);
+            }
+            out.print(line);
+            out.print(' ');
+            out.println(node.self);
+        }
+    }
+}
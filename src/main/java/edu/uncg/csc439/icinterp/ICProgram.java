@@ -0,0 +1,363 @@
+package edu.uncg.csc439.icinterp;
+
+import edu.uncg.csc439.icode.ICBinary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A loaded intermediate code program: its decoded instructions, labels and
+ * the initial contents of its data area, for one memory model. A program is
+ * immutable once loaded, so a single program can be run by any number of
+ * ICInterp instances at once, on any threads, each with its own memory,
+ * input and output.
+ *
+ * Functions compiled to JVM bytecode (see ICCompileTier) are also kept
+ * here, so that they are only generated once for all the interpreters that
+ * run the program.
+ */
+public final class ICProgram {
+    private static final String PACKAGE = "edu/uncg/csc439/icinterp/compiled/";
+
+    private final ICMemory.Model memModel;
+    private final Map<String,Integer> labels;
+    private final ICInstr[] code;
+    private final int[] fusedOps;
+    // Functions by name (including the builtins) and by entry line
+    private final Map<String,ICFunction> functions = new HashMap<>();
+    private final ICFunction[] functionAt;
+    private final List<ICFunction> defined = new ArrayList<>();
+    // Memory holding just the data area, which every interpreter's memory
+    // is forked from; it is never written to
+    private final ICMemory image;
+
+    // Generated classes, indexed by the line of each function's .fnStart
+    private final Loader loader = new Loader();
+    private final Class<?>[] compiled;
+    private final boolean[] notCompilable;
+
+    /**
+     * Class loader for the generated classes.
+     */
+    private static final class Loader extends ClassLoader {
+        Loader() {
+            super(ICCompiledFunction.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private ICProgram(ICMemory.Model memModel, Map<String,Integer> labels, ICInstr[] code,
+                      ICMemory image) {
+        this.memModel = memModel;
+        this.labels = Collections.unmodifiableMap(labels);
+        this.code = code;
+        this.functionAt = new ICFunction[code.length];
+        describeFunctions();
+        checkTargets();
+        markTailCalls();
+        this.fusedOps = ICFusion.select(code);
+        this.image = image;
+        this.compiled = new Class<?>[code.length];
+        this.notCompilable = new boolean[code.length];
+    }
+
+    /**
+     * Load a program from its text, laying out its data for the given
+     * memory model.
+     * @param program the intermediate code
+     * @param memModel the memory model it will be run with
+     * @return the loaded program
+     * @throws ICLoadException if the program jumps to labels or calls
+     *         functions that aren't defined
+     */
+    public static ICProgram load(String program, ICMemory.Model memModel) {
+        String[] lines = program.split("\n");
+        Map<String,Integer> labels = new HashMap<>();
+        List<String> carryOverLabels = null;
+        for (int i=0; i<lines.length; i++) {
+            String thisLabel = null;
+            String[] parsed = lines[i].split(":");
+            if (parsed[0].matches("[A-Za-z_][A-Za-z0-9_]*")) {
+                thisLabel = parsed[0];
+                labels.put(parsed[0],i);
+                lines[i] = lines[i].substring(parsed[0].length()+1);
+            }
+            lines[i] = lines[i].trim();
+            if (lines[i].length() == 0) {
+                if (thisLabel != null) {
+                    if (carryOverLabels == null) carryOverLabels = new LinkedList<>();
+                    carryOverLabels.add(thisLabel);
+                }
+            } else {
+                if (thisLabel != null) {
+                    labels.put(thisLabel, i);
+                }
+                if (carryOverLabels != null) {
+                    for (String s: carryOverLabels)
+                        labels.put(s, i);
+                    carryOverLabels = null;
+                }
+            }
+        }
+        return load(lines, null, labels, memModel);
+    }
+
+    /**
+     * Load a program in the binary form written by ICode.writeBinary, whose
+     * labels are already resolved and whose lines are already split into
+     * words, so that nothing has to be parsed but the words themselves.
+     * Line numbers count from the first line of the code.
+     * @param program the intermediate code
+     * @param memModel the memory model it will be run with
+     * @return the loaded program
+     * @throws ICLoadException if the program jumps to labels or calls
+     *         functions that aren't defined
+     */
+    public static ICProgram load(ICBinary program, ICMemory.Model memModel) {
+        int size = program.getSize();
+        String[] lines = new String[size];
+        String[][] parts = new String[size][];
+        for (int i=0; i<size; i++) {
+            lines[i] = program.getLineText(i);
+            parts[i] = program.getLineTokens(i);
+        }
+        return load(lines, parts, new HashMap<>(program.getLabels()), memModel);
+    }
+
+    /**
+     * Lay out the data of a program, then decode it.
+     * @param lines the text of each line, without its label
+     * @param parts the words of each line, or null to split the text
+     * @param labels map from label names to line numbers
+     * @return the loaded program
+     */
+    private static ICProgram load(String[] lines, String[][] parts, Map<String,Integer> labels,
+                                  ICMemory.Model memModel) {
+        int[] globals = new int[lines.length];
+        ICMemory mem = ICMemory.create(memModel);
+        for (int i=0; i<lines.length; i++) {
+            if (lines[i].startsWith(".db ") || (lines[i].startsWith(".dw "))) {
+                int elemSize = 1;
+                if (lines[i].startsWith(".dw ")) elemSize = 4;
+                int valStart = 4;
+                while ((valStart < lines[i].length()) && (lines[i].charAt(valStart) == ' '))
+                    valStart++;
+                if (valStart == lines[i].length()) {
+                    globals[i] = mem.growData(elemSize);
+                } else {
+                    globals[i] = mem.dataExtent();
+                    String[] vals = lines[i].substring(valStart).split(" *, *");
+                    for (String valInit : vals) {
+                        int nCopies = 1;
+                        int intVal = 0;
+                        if (valInit.contains("#")) {
+                            String[] count = valInit.split("#");
+                            intVal = Integer.parseInt(count[0]);
+                            nCopies = Integer.parseInt(count[1]);
+                        } else {
+                            intVal = Integer.parseInt(valInit);
+                        }
+                        int ptr = mem.growData(elemSize*nCopies);
+                        for (int j=0; j<nCopies; j++) {
+                            if (elemSize == 1) mem.setByte(ptr, j*elemSize, (byte) intVal);
+                            else mem.setInt(ptr, j*elemSize, intVal);
+                        }
+                    }
+                }
+            }
+        }
+
+
+        // Decode every line once, now that all labels and globals are known
+        ICDecoder decoder = new ICDecoder(labels, globals);
+        ICInstr[] code = (parts == null) ? decoder.decode(lines) : decoder.decode(lines, parts);
+        return new ICProgram(memModel, labels, code, mem.fork());
+    }
+
+    /**
+     * Make a descriptor for each function, named by a label on its .fnStart
+     * (preferring a gf_ name), and bind the builtins' names.
+     */
+    private void describeFunctions() {
+        Map<Integer,String> names = new HashMap<>();
+        for (Map.Entry<String,Integer> e : labels.entrySet()) {
+            int line = e.getValue();
+            if (code[line].op != ICOpcode.FN_START) continue;
+            String old = names.get(line);
+            if ((old == null) || preferName(e.getKey(), old))
+                names.put(line, e.getKey());
+        }
+        for (int i=0; i<code.length; i++) {
+            if (code[i].op != ICOpcode.FN_START) continue;
+            int end = -1;
+            for (int j=i+1; (j<code.length) && (end<0) && (code[j].op != ICOpcode.FN_START); j++) {
+                if (code[j].op == ICOpcode.FN_END) end = j;
+            }
+            String name = names.getOrDefault(i, "fn" + (i+1));
+            functionAt[i] = ICFunction.defined(name, code, i, end);
+            defined.add(functionAt[i]);
+        }
+        for (Map.Entry<String,Integer> e : labels.entrySet()) {
+            ICFunction fn = functionAt[e.getValue()];
+            if (fn != null) functions.put(e.getKey(), fn);
+        }
+        for (int i=ICInterp.PRINTD; i<=ICInterp.READLINE; i++) {
+            ICFunction fn = ICFunction.intrinsic(i);
+            functions.put(fn.name, fn);
+        }
+    }
+
+    // gf_ names first, then in alphabetical order, so that the choice
+    // doesn't depend on the order of the labels map
+    private static boolean preferName(String a, String b) {
+        boolean aGlobal = a.startsWith("gf_");
+        boolean bGlobal = b.startsWith("gf_");
+        return (aGlobal != bGlobal) ? aGlobal : (a.compareTo(b) < 0);
+    }
+
+    /**
+     * Make sure that every jump goes to a label and every call to a
+     * function, so that the interpreter can use their targets unchecked.
+     * @throws ICLoadException listing every jump or call that doesn't
+     */
+    private void checkTargets() {
+        List<String> problems = new ArrayList<>();
+        for (int i=0; i<code.length; i++) {
+            ICInstr instr = code[i];
+            switch (instr.op) {
+                case GOTO:
+                case IF:
+                case IF_EXPR:
+                case IF_FALSE:
+                    if (instr.target < 0)
+                        problems.add("Line " + (i+1) + ": Unknown label " + instr.label);
+                    break;
+                case CALL:
+                    if (instr.target < 0)
+                        problems.add("Line " + (i+1) + ": Unknown function " + instr.funcName);
+                    else if (functionAt[instr.target] == null)
+                        problems.add("Line " + (i+1) + ": " + instr.funcName + " is not a function");
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (!problems.isEmpty()) throw new ICLoadException(problems);
+    }
+
+    /**
+     * Turn each call whose int result is returned by the next line that
+     * does anything into a TAIL_CALL, which the interpreter makes in the
+     * caller's record instead of a new one. A function that takes the
+     * address of one of its locals or parameters keeps its frames until it
+     * returns, since the callee might still be using them, so its calls are
+     * left alone.
+     */
+    private void markTailCalls() {
+        for (ICFunction fn : defined) {
+            int last = fn.entry + 1;
+            boolean addressTaken = false;
+            for (; (last < code.length) && (code[last].op != ICOpcode.FN_START); last++) {
+                ICInstr instr = code[last];
+                if ((instr.op == ICOpcode.ADDR) && ((instr.src1.kind == ICOperand.Kind.LOCAL)
+                        || (instr.src1.kind == ICOperand.Kind.PARAM)))
+                    addressTaken = true;
+                if (last == fn.end) break;
+            }
+            if (addressTaken) continue;
+
+            for (int i=fn.entry+1; i<last; i++) {
+                ICInstr instr = code[i];
+                if ((instr.op != ICOpcode.CALL) || (instr.dst.kind != ICOperand.Kind.TEMP)
+                        || (instr.dst.width != 4))
+                    continue;
+                int next = i+1;
+                while ((next < last) && (code[next].op == ICOpcode.NOP)) next++;
+                if (next == last) continue;
+                ICInstr ret = code[next];
+                if ((ret.op == ICOpcode.RETURN_VAL) && (ret.width == 4)
+                        && (ret.src1.kind == ICOperand.Kind.TEMP) && (ret.src1.slot == instr.dst.slot))
+                    code[i] = instr.withOp(ICOpcode.TAIL_CALL);
+            }
+        }
+    }
+
+    public ICMemory.Model getMemModel() {
+        return memModel;
+    }
+
+    /**
+     * @return a new memory holding the initial contents of the data area
+     */
+    ICMemory newMemory() {
+        return image.fork();
+    }
+
+    Map<String,Integer> labels() {
+        return labels;
+    }
+
+    /**
+     * @param name name of a function, which may be a builtin
+     * @return the description of the function, or null if there is none
+     */
+    public ICFunction getFunction(String name) {
+        return functions.get(name);
+    }
+
+    /**
+     * @return the functions defined in the program, in order
+     */
+    public List<ICFunction> getFunctions() {
+        return Collections.unmodifiableList(defined);
+    }
+
+    /**
+     * @param line a line of the program
+     * @return the function whose .fnStart is on the line, or null
+     */
+    ICFunction functionAt(int line) {
+        return functionAt[line];
+    }
+
+    ICInstr[] code() {
+        return code;
+    }
+
+    int[] fusedOps() {
+        return fusedOps;
+    }
+
+    /**
+     * Compile a function to JVM bytecode, or find the class it was already
+     * compiled to.
+     * @param startLine line of the function's .fnStart
+     * @return the generated class, or null if the function can't be compiled
+     */
+    synchronized Class<?> compiledClass(int startLine) {
+        if ((compiled[startLine] != null) || notCompilable[startLine]) return compiled[startLine];
+        String name = PACKAGE + "F" + startLine + "_" + functionAt[startLine].name;
+        byte[] bytes = new ICBytecodeCompiler(code, functionAt[startLine]).compile(name);
+        if (bytes == null) {
+            notCompilable[startLine] = true;
+            return null;
+        }
+        compiled[startLine] = loader.define(name.replace('/', '.'), bytes);
+        return compiled[startLine];
+    }
+
+    /**
+     * Don't try to compile a function again.
+     */
+    synchronized void markNotCompilable(int startLine) {
+        compiled[startLine] = null;
+        notCompilable[startLine] = true;
+    }
+}
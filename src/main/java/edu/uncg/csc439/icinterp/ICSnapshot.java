@@ -0,0 +1,44 @@
+package edu.uncg.csc439.icinterp;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+
+/**
+ * The state of an interpreter's memory, saved by ICInterp.snapshot after
+ * running functions that set up global data. Each fork is a new interpreter
+ * for the same program whose memory starts out as a copy of the snapshot, so
+ * the setup is done once instead of once per run.
+ *
+ * The snapshot's memory is never written to, and forks share its storage
+ * copy-on-write (the linear memory model copies the data area when it is
+ * forked), so a snapshot can be forked by any number of threads at once.
+ */
+public final class ICSnapshot {
+    private final ICProgram program;
+    private final ICMemory mem;
+
+    ICSnapshot(ICProgram program, ICMemory mem) {
+        this.program = program;
+        this.mem = mem;
+    }
+
+    public ICProgram getProgram() {
+        return program;
+    }
+
+    ICMemory newMemory() {
+        return mem.fork();
+    }
+
+    /**
+     * Make a new interpreter starting from this snapshot. It is set up like
+     * one made by the ICInterp constructor, apart from its memory.
+     * @param in the program's standard input
+     * @param out the program's standard output
+     * @param err where errors in running the program are reported
+     * @return the interpreter
+     */
+    public ICInterp fork(InputStream in, PrintStream out, PrintStream err) {
+        return new ICInterp(this, in, out, err);
+    }
+}
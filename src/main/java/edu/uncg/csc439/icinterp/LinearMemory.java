@@ -0,0 +1,204 @@
+package edu.uncg.csc439.icinterp;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Flat memory model: a single byte array, where a pointer is simply an index
+ * into the array. The data area and globals are bump-allocated from the
+ * bottom, and frames are bump-allocated on a stack that starts right after
+ * them, so allocating or freeing a frame only moves the stack pointer. The
+ * array grows as needed, so arrays and recursion depth are limited only by
+ * the size of a Java array.
+ *
+ * Accesses are only checked against the size of the whole array, not of the
+ * variable being accessed, and against the null pointers below BASE. The
+ * live bytes are everything below the stack pointer.
+ */
+public class LinearMemory implements ICMemory {
+    private static final VarHandle INT =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // Nothing is ever allocated below this, so that 0 stays a null pointer
+    private static final int BASE = 16;
+    private static final int INITIAL_SIZE = 64 * 1024;
+    private static final int MAX_SIZE = Integer.MAX_VALUE - 16;
+
+    private byte[] memory;
+    private int heapTop;
+    private int sp;
+    private final MemoryAccount account;
+
+    public LinearMemory() {
+        memory = new byte[INITIAL_SIZE];
+        heapTop = BASE;
+        sp = BASE;
+        account = new MemoryAccount(0);
+    }
+
+    private LinearMemory(byte[] memory, int heapTop) {
+        this.memory = memory;
+        this.heapTop = heapTop;
+        this.sp = heapTop;
+        this.account = new MemoryAccount(heapTop - BASE);
+    }
+
+    private static ICMemoryException outOfBounds(String what) {
+        return new ICMemoryException("Out of bounds memory access (" + what + ")");
+    }
+
+    /**
+     * Reject pointers below BASE, which nothing is allocated at, as the
+     * segmented model rejects segment 0.
+     */
+    private static void checkNull(int ptr, String what) {
+        if (ptr < BASE) {
+            throw new ICMemoryException("Null pointer access (" + what + ")");
+        }
+    }
+
+    @Override
+    public int getInt(int ptr, int offset) {
+        checkNull(ptr, "getInt");
+        try {
+            return (int) INT.get(memory, ptr + offset);
+        } catch (IndexOutOfBoundsException e) {
+            throw outOfBounds("getInt");
+        }
+    }
+
+    @Override
+    public void setInt(int ptr, int offset, int val) {
+        checkNull(ptr, "setInt");
+        try {
+            INT.set(memory, ptr + offset, val);
+        } catch (IndexOutOfBoundsException e) {
+            throw outOfBounds("setInt");
+        }
+    }
+
+    @Override
+    public byte getByte(int ptr, int offset) {
+        checkNull(ptr, "getByte");
+        try {
+            return memory[ptr + offset];
+        } catch (IndexOutOfBoundsException e) {
+            throw outOfBounds("getByte");
+        }
+    }
+
+    @Override
+    public void getBytes(int ptr, int offset, byte[] dst, int dstPos, int len) {
+        checkNull(ptr, "getBytes");
+        try {
+            System.arraycopy(memory, ptr + offset, dst, dstPos, len);
+        } catch (IndexOutOfBoundsException e) {
+            throw outOfBounds("getBytes");
+        }
+    }
+
+    @Override
+    public void setByte(int ptr, int offset, byte val) {
+        checkNull(ptr, "setByte");
+        try {
+            memory[ptr + offset] = val;
+        } catch (IndexOutOfBoundsException e) {
+            throw outOfBounds("setByte");
+        }
+    }
+
+    /**
+     * Make sure the array holds at least the given number of bytes.
+     */
+    private void ensureSize(long size) {
+        if (size <= memory.length) return;
+        if (size > MAX_SIZE) {
+            throw new ICMemoryException("Internal simulator error: Out of memory");
+        }
+        long newSize = Math.max(size, Math.min(2L * memory.length, MAX_SIZE));
+        memory = Arrays.copyOf(memory, (int) newSize);
+    }
+
+    @Override
+    public int growData(int size) {
+        // Global space can only be added while no frames are allocated,
+        // since the stack starts right after it
+        if (sp > ((heapTop + 3) & ~3)) {
+            throw new ICMemoryException("Internal simulator error: Global allocation while running");
+        }
+        account.allocate((long) heapTop + size - sp);
+        ensureSize((long) heapTop + size);
+        int ptr = heapTop;
+        heapTop += size;
+        sp = heapTop;
+        return ptr;
+    }
+
+    @Override
+    public int dataExtent() {
+        return heapTop;
+    }
+
+    @Override
+    public int allocGlobal(int size) {
+        return growData(size);
+    }
+
+    @Override
+    public int pushFrame(int size) {
+        int ptr = (sp + 3) & ~3;
+        account.allocate((long) ptr + size - sp);
+        ensureSize((long) ptr + size);
+        Arrays.fill(memory, ptr, ptr + size, (byte) 0);
+        sp = ptr + size;
+        return ptr;
+    }
+
+    @Override
+    public void popFrame(int ptr) {
+        account.free(sp - ptr);
+        sp = ptr;
+    }
+
+    @Override
+    public long liveBytes() {
+        return account.live();
+    }
+
+    @Override
+    public long peakBytes() {
+        return account.peak();
+    }
+
+    @Override
+    public void resetPeak() {
+        account.resetPeak();
+    }
+
+    @Override
+    public void setLimit(long maxBytes) {
+        account.setLimit(maxBytes);
+    }
+
+    @Override
+    public long getLimit() {
+        return account.limit();
+    }
+
+    /**
+     * The frames live in the same array as the globals, so the first call
+     * would copy a shared array anyway. The globals are copied right away
+     * instead, with one arraycopy.
+     */
+    @Override
+    public ICMemory fork() {
+        if (sp > ((heapTop + 3) & ~3)) {
+            throw new ICMemoryException("Internal simulator error: Fork while running");
+        }
+        byte[] copy = new byte[Math.max(INITIAL_SIZE, heapTop)];
+        System.arraycopy(memory, 0, copy, 0, heapTop);
+        return new LinearMemory(copy, heapTop);
+    }
+}
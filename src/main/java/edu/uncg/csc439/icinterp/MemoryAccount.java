@@ -0,0 +1,58 @@
+package edu.uncg.csc439.icinterp;
+
+/**
+ * Counts the bytes a memory has allocated (see ICMemory.liveBytes), keeps
+ * the highest count, and enforces the memory's limit.
+ */
+final class MemoryAccount {
+    private long live;
+    private long peak;
+    private long limit;
+
+    /**
+     * @param live bytes already allocated, which are also the peak so far
+     */
+    MemoryAccount(long live) {
+        this.live = live;
+        this.peak = live;
+    }
+
+    /**
+     * Count an allocation, unless it would go over the limit.
+     * @param bytes number of bytes allocated
+     * @throws ICLimitException if the allocation would go over the limit
+     */
+    void allocate(long bytes) {
+        long total = live + bytes;
+        if ((limit > 0) && (total > limit)) {
+            throw new ICLimitException(ICLimitException.Limit.MEMORY,
+                    "Error in executing intermediate code: Memory limit of "+limit+" bytes exceeded");
+        }
+        live = total;
+        if (total > peak) peak = total;
+    }
+
+    void free(long bytes) {
+        live -= bytes;
+    }
+
+    long live() {
+        return live;
+    }
+
+    long peak() {
+        return peak;
+    }
+
+    void resetPeak() {
+        peak = live;
+    }
+
+    long limit() {
+        return limit;
+    }
+
+    void setLimit(long limit) {
+        this.limit = limit;
+    }
+}
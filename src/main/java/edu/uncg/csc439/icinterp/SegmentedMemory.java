@@ -0,0 +1,318 @@
+package edu.uncg.csc439.icinterp;
+
+import java.util.Arrays;
+
+/**
+ * The original memory model of the interpreter: every frame and global lives
+ * in its own segment, and a pointer holds a segment number in its upper 16
+ * bits and an offset in its lower 16 bits. Segment 0 is never used, so that
+ * null pointers can be caught.
+ *
+ * A fork shares the storage of every segment with the memory it was forked
+ * from, and whichever of them writes to a shared segment first copies it.
+ *
+ * The live bytes are the sizes of the segments in use, not counting the
+ * slack that lets the data area grow in place.
+ */
+public class SegmentedMemory implements ICMemory {
+    // Not a Vector, since every memory access looks up its segment here
+    private AddrSegment[] segments;
+    private int numSegments;
+    // Deleted segments keep their ID and storage, so that frames can reuse
+    // them without allocating
+    private AddrSegment[] freeSegs;
+    private int numFree;
+    private final MemoryAccount account;
+    public class AddrSegment {
+        private byte[] storage;
+        private int size;
+        private int segID;
+        // The storage may also belong to segments of other memories
+        private boolean shared;
+
+        private static final int SLACK = 64;
+
+        public AddrSegment(int size) {
+            checkSize(size);
+            segID = numSegments;
+            if (segID >= 0x10000) {
+                throw new ICMemoryException("Internal simulator error: Too many segments");
+            }
+            if (segID == segments.length)
+                segments = Arrays.copyOf(segments, 2*segID);
+            segments[numSegments++] = this;
+            this.size = size;
+            storage = new byte[(size==0)?32:size];
+        }
+
+        /**
+         * Copy a segment of another memory into the same place in this
+         * one, sharing its storage, or make a deleted segment with its ID.
+         */
+        private AddrSegment(AddrSegment from, boolean live) {
+            segID = from.segID;
+            if (live) {
+                // Memories that are only forked from are never written to
+                if (!from.shared) from.shared = true;
+                storage = from.storage;
+                size = from.size;
+                shared = true;
+            } else {
+                storage = new byte[0];
+            }
+        }
+
+        /**
+         * Get a copy of the storage of its own before writing.
+         */
+        private void unshare() {
+            storage = storage.clone();
+            shared = false;
+        }
+
+        private void checkSize(int size) {
+            if (size > 0x10000) {
+                throw new ICMemoryException("Internal simulator error: Requested "+size+" segment");
+            }
+        }
+
+        /**
+         * Bring a deleted segment back into use, zero-filled.
+         */
+        private void reuse(int size) {
+            checkSize(size);
+            if ((storage.length < size) || shared) {
+                storage = new byte[size];
+                shared = false;
+            } else {
+                Arrays.fill(storage, 0, size, (byte)0);
+            }
+            this.size = size;
+            segments[segID] = this;
+        }
+
+        public int getID() {
+            return segID;
+        }
+
+        public void delete() {
+            account.free(size);
+            if (numFree == freeSegs.length)
+                freeSegs = Arrays.copyOf(freeSegs, 2*numFree);
+            freeSegs[numFree++] = this;
+            segments[segID] = null;
+        }
+
+        public int growBy(int toAdd) {
+            account.allocate(toAdd);
+            if (size + toAdd > storage.length) {
+                storage = Arrays.copyOf(storage, size+toAdd+SLACK);
+                shared = false;
+            } else if (shared) {
+                unshare();
+            }
+            int newStart = size;
+            size += toAdd;
+            return getPtr(newStart);
+        }
+
+        public int getPtr(int offset) {
+            if ((offset < 0) || (offset >= size)) {
+                throw new ICMemoryException("Internal sim error: Bad segment offset");
+            }
+            return (segID<<16)+offset;
+        }
+
+        public int getExtent() {
+            return (segID<<16)+size;
+        }
+
+        public int getInt(int offset) {
+            int val = 0;
+            if ((offset >= 0) && (offset+3 < size)) {
+                val = ((int) (storage[offset]) & 0xff) |
+                        (((int) (storage[offset + 1]) & 0xff) << 8) |
+                        (((int) (storage[offset + 2]) & 0xff) << 16) |
+                        (((int) (storage[offset + 3]) & 0xff) << 24);
+            } else {
+                throw outOfBounds("getInt");
+            }
+            return val;
+        }
+
+        public void setInt(int offset, int val) {
+            if ((offset >= 0) && (offset+3 < size)) {
+                if (shared) unshare();
+                storage[offset] = (byte)(val & 0xff);
+                storage[offset+1] = (byte)((val >> 8) & 0xff);
+                storage[offset+2] = (byte)((val >> 16) & 0xff);
+                storage[offset+3] = (byte)((val >> 24) & 0xff);
+            } else {
+                throw outOfBounds("setInt");
+            }
+        }
+
+        public byte getByte(int offset) {
+            byte rVal = 0;
+            if ((offset >= 0) && (offset < size)) {
+                rVal = storage[offset];
+            } else {
+                throw outOfBounds("getByte");
+            }
+            return rVal;
+        }
+
+        public void getBytes(int offset, byte[] dst, int dstPos, int len) {
+            if ((offset >= 0) && (len <= size - offset)) {
+                System.arraycopy(storage, offset, dst, dstPos, len);
+            } else {
+                throw outOfBounds("getBytes");
+            }
+        }
+
+        public void setByte(int offset, byte val) {
+            if ((offset >= 0) && (offset < size)) {
+                if (shared) unshare();
+                storage[offset] = val;
+            } else {
+                throw outOfBounds("setByte");
+            }
+        }
+    }
+
+    /**
+     * An access before the start or past the end of a variable, such as an
+     * array index that is out of range.
+     */
+    private static ICMemoryException outOfBounds(String what) {
+        return new ICMemoryException("Out of bounds memory access (" + what + ")");
+    }
+
+    public AddrSegment ptrToSeg(int ptr) {
+        int segID = (ptr >> 16) & 0xffff;
+        if (segID >= numSegments) {
+            throw new ICMemoryException("Internal sim error: Bad segment number");
+        }
+        AddrSegment seg = segments[segID];
+        if (seg == null) {
+            // Segment 0 is the null pointer; others are frames that were freed
+            throw new ICMemoryException((segID == 0) ? "Null pointer access" : "Access to freed memory");
+        }
+        return seg;
+    }
+
+    private AddrSegment dSegment;
+
+    public SegmentedMemory() {
+        segments = new AddrSegment[64];
+        numSegments = 1;  // Entry 0 is null (uninit/null ptr check)
+        freeSegs = new AddrSegment[64];
+        account = new MemoryAccount(0);
+        dSegment = new AddrSegment(0);
+    }
+
+    private SegmentedMemory(SegmentedMemory from) {
+        segments = new AddrSegment[from.segments.length];
+        numSegments = from.numSegments;
+        for (int i=1; i<numSegments; i++) {
+            if (from.segments[i] != null) segments[i] = new AddrSegment(from.segments[i], true);
+        }
+        // Deleted segments are reused in the same order as in the original
+        freeSegs = new AddrSegment[from.freeSegs.length];
+        numFree = from.numFree;
+        for (int i=0; i<numFree; i++)
+            freeSegs[i] = new AddrSegment(from.freeSegs[i], false);
+        dSegment = segments[from.dSegment.segID];
+        account = new MemoryAccount(from.account.live());
+    }
+
+    @Override
+    public int getInt(int ptr, int offset) {
+        return ptrToSeg(ptr).getInt((ptr&0xffff)+offset);
+    }
+
+    @Override
+    public void setInt(int ptr, int offset, int val) {
+        ptrToSeg(ptr).setInt((ptr&0xffff)+offset, val);
+    }
+
+    @Override
+    public byte getByte(int ptr, int offset) {
+        return ptrToSeg(ptr).getByte((ptr&0xffff)+offset);
+    }
+
+    @Override
+    public void getBytes(int ptr, int offset, byte[] dst, int dstPos, int len) {
+        ptrToSeg(ptr).getBytes((ptr&0xffff)+offset, dst, dstPos, len);
+    }
+
+    @Override
+    public void setByte(int ptr, int offset, byte val) {
+        ptrToSeg(ptr).setByte((ptr&0xffff)+offset, val);
+    }
+
+    @Override
+    public int growData(int size) {
+        return dSegment.growBy(size);
+    }
+
+    @Override
+    public int dataExtent() {
+        return dSegment.getExtent();
+    }
+
+    private AddrSegment newSegment(int size) {
+        account.allocate(size);
+        if (numFree > 0) {
+            AddrSegment seg = freeSegs[--numFree];
+            seg.reuse(size);
+            return seg;
+        }
+        return new AddrSegment(size);
+    }
+
+    @Override
+    public int allocGlobal(int size) {
+        return newSegment(size).getID()<<16;
+    }
+
+    @Override
+    public int pushFrame(int size) {
+        return newSegment(size).getID()<<16;
+    }
+
+    @Override
+    public void popFrame(int ptr) {
+        ptrToSeg(ptr).delete();
+    }
+
+    @Override
+    public long liveBytes() {
+        return account.live();
+    }
+
+    @Override
+    public long peakBytes() {
+        return account.peak();
+    }
+
+    @Override
+    public void resetPeak() {
+        account.resetPeak();
+    }
+
+    @Override
+    public void setLimit(long maxBytes) {
+        account.setLimit(maxBytes);
+    }
+
+    @Override
+    public long getLimit() {
+        return account.limit();
+    }
+
+    @Override
+    public ICMemory fork() {
+        return new SegmentedMemory(this);
+    }
+}
@@ -0,0 +1,493 @@
+package edu.uncg.csc439.icode;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class implements a compact binary form of an IC program, so that the program can
+ * be stored once and then run or compiled to MIPS any number of times without going
+ * through the front end or through the text of the code. The layout is:
+ * <pre>
+ *     magic "LCIC", version (u16)
+ *     opcode table: count, then the name of each kind of line (see Kind)
+ *     name table: count, then each distinct term (labels, names, operators) once
+ *     lines: count, then for each line its opcode, subtype (u8), label and terms
+ *     labels: count, then each label name with the line it resolves to
+ * </pre>
+ * Counts and indexes are unsigned variable-length ints, and terms are indexes into the
+ * name table (0 for a missing term). A label on a line with nothing else on it resolves
+ * to the next line that does have something, as it does when the text is loaded.
+ */
+public class ICBinary {
+
+    //=============== CLASS VARIABLES ===============
+
+    private static final byte[] MAGIC = {'L', 'C', 'I', 'C'};
+    private static final int VERSION = 1;
+
+    /**
+     * The kinds of line, which are the opcodes of the binary form. Their names are
+     * written to the opcode table, so that codes don't depend on the order here.
+     */
+    private enum Kind {
+        EMPTY, PLAIN, DIRECTIVE, COPY, BIN_OPRT, UNI_OPRT, CAST, ADDRESS_POINTER,
+        ARRAY_INDEXING, PARAMETER_PASS, FUNC_CALL, RETURN, JUMP, BOOL_JUMP, RELT_JUMP
+    }
+
+    private final String[] names;
+    private final String[][] nameTokens;
+    private final Kind[] kinds;
+    private final int[] subtypes;
+    private final int[] lineLabels;
+    private final int[][] lineTerms;
+    private final Map<String, Integer> labels;
+
+    //=============== CONSTRUCTORS ===============
+
+    private ICBinary(String[] names, Kind[] kinds, int[] subtypes, int[] lineLabels,
+                     int[][] lineTerms, Map<String, Integer> labels) {
+        this.names = names;
+        this.nameTokens = new String[names.length][];
+        this.kinds = kinds;
+        this.subtypes = subtypes;
+        this.lineLabels = lineLabels;
+        this.lineTerms = lineTerms;
+        this.labels = Collections.unmodifiableMap(labels);
+    }
+
+    /**
+     * Encode the provided ICLines, interning every term and resolving every label.
+     * @param icLines
+     * @return
+     */
+    public static ICBinary from(ICLines icLines) {
+        ArrayList<ICLine> lines = icLines.getICLinesList();
+        Map<String, Integer> nameIndexes = new HashMap<>();
+        ArrayList<String> names = new ArrayList<>();
+        int size = lines.size();
+        Kind[] kinds = new Kind[size];
+        int[] subtypes = new int[size];
+        int[] lineLabels = new int[size];
+        int[][] lineTerms = new int[size][];
+        for (int i = 0; i < size; i++) {
+            ICLine icLine = lines.get(i);
+            kinds[i] = kindOf(icLine);
+            subtypes[i] = subtypeOf(icLine);
+            if (icLine.isEmpty()) {
+                lineLabels[i] = -1;
+                lineTerms[i] = new int[0];
+                continue;
+            }
+            String label = icLine.getLabel();
+            lineLabels[i] = (label == null || label.isEmpty()) ? -1 : intern(label, nameIndexes, names);
+            ArrayList<String> terms = icLine.getTerms();
+            lineTerms[i] = new int[terms.size() - 1];
+            for (int t = 1; t < terms.size(); t++) {
+                String term = terms.get(t);
+                lineTerms[i][t - 1] = (term == null) ? -1 : intern(term, nameIndexes, names);
+            }
+        }
+        String[] nameArray = names.toArray(new String[0]);
+        return new ICBinary(nameArray, kinds, subtypes, lineLabels, lineTerms,
+                resolveLabels(nameArray, lineLabels, lineTerms));
+    }
+
+    //=============== METHODS ===============
+
+    /**
+     * Write this program in the binary form.
+     * @param out
+     * @throws IOException
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(MAGIC);
+        data.writeShort(VERSION);
+        Kind[] kindTable = Kind.values();
+        writeCount(data, kindTable.length);
+        for (Kind kind : kindTable) {
+            data.writeUTF(kind.name());
+        }
+        writeCount(data, this.names.length);
+        for (String name : this.names) {
+            data.writeUTF(name);
+        }
+        writeCount(data, this.kinds.length);
+        for (int i = 0; i < this.kinds.length; i++) {
+            writeCount(data, this.kinds[i].ordinal());
+            data.writeByte(this.subtypes[i]);
+            writeCount(data, this.lineLabels[i] + 1);
+            writeCount(data, this.lineTerms[i].length);
+            for (int term : this.lineTerms[i]) {
+                writeCount(data, term + 1);
+            }
+        }
+        Map<String, Integer> nameIndexes = new HashMap<>();
+        for (int i = 0; i < this.names.length; i++) {
+            nameIndexes.put(this.names[i], i);
+        }
+        writeCount(data, this.labels.size());
+        for (Map.Entry<String, Integer> label : this.labels.entrySet()) {
+            writeCount(data, nameIndexes.get(label.getKey()));
+            writeCount(data, label.getValue());
+        }
+        data.flush();
+    }
+
+    /**
+     * Read a program in the binary form.
+     * @param in
+     * @return
+     * @throws IOException If the input is not a program in the binary form, or ends
+     *                     before the end of the program
+     */
+    public static ICBinary read(InputStream in) throws IOException {
+        try {
+            return read(new DataInputStream(in));
+        } catch (EOFException e) {
+            throw new IOException("Truncated binary intermediate code", e);
+        }
+    }
+
+    private static ICBinary read(DataInputStream data) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a binary intermediate code file");
+        }
+        int version = data.readUnsignedShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary intermediate code version " + version);
+        }
+        Kind[] kindTable = new Kind[readCount(data)];
+        for (int i = 0; i < kindTable.length; i++) {
+            String kindName = data.readUTF();
+            try {
+                kindTable[i] = Kind.valueOf(kindName);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown kind of intermediate code line " + kindName);
+            }
+        }
+        String[] names = new String[readCount(data)];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = data.readUTF();
+        }
+        int size = readCount(data);
+        Kind[] kinds = new Kind[size];
+        int[] subtypes = new int[size];
+        int[] lineLabels = new int[size];
+        int[][] lineTerms = new int[size][];
+        for (int i = 0; i < size; i++) {
+            kinds[i] = kindTable[readIndex(data, kindTable.length, false)];
+            subtypes[i] = data.readUnsignedByte();
+            lineLabels[i] = readIndex(data, names.length, true);
+            lineTerms[i] = new int[readCount(data)];
+            for (int t = 0; t < lineTerms[i].length; t++) {
+                lineTerms[i][t] = readIndex(data, names.length, true);
+            }
+        }
+        Map<String, Integer> labels = new LinkedHashMap<>();
+        int numLabels = readCount(data);
+        for (int i = 0; i < numLabels; i++) {
+            String name = names[readIndex(data, names.length, false)];
+            labels.put(name, readIndex(data, size, false));
+        }
+        return new ICBinary(names, kinds, subtypes, lineLabels, lineTerms, labels);
+    }
+
+    /**
+     * Check if a file starts like a program in the binary form.
+     * @param fileName
+     * @return
+     */
+    public static boolean isBinaryFile(String fileName) {
+        try (InputStream in = new FileInputStream(fileName)) {
+            byte[] magic = in.readNBytes(MAGIC.length);
+            return Arrays.equals(magic, MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the number of lines in the program.
+     * @return
+     */
+    public int getSize() {
+        return this.kinds.length;
+    }
+
+    /**
+     * Get the line each label resolves to.
+     * @return
+     */
+    public Map<String, Integer> getLabels() {
+        return this.labels;
+    }
+
+    /**
+     * Get the text of the line at the specified index, without its label, as it is
+     * written by ICLine.toString().
+     * @param index
+     * @return
+     */
+    public String getLineText(int index) {
+        StringBuilder text = new StringBuilder();
+        for (int term : this.lineTerms[index]) {
+            if (term >= 0) {
+                text.append(' ').append(this.names[term]);
+            }
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * Get the words of the line at the specified index, without its label: its terms,
+     * split at spaces, with empty terms left out.
+     * @param index
+     * @return
+     */
+    public String[] getLineTokens(int index) {
+        int count = 0;
+        for (int term : this.lineTerms[index]) {
+            if (term >= 0) {
+                count += this.tokens(term).length;
+            }
+        }
+        String[] tokens = new String[count];
+        int next = 0;
+        for (int term : this.lineTerms[index]) {
+            if (term >= 0) {
+                for (String token : this.tokens(term)) {
+                    tokens[next++] = token;
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Rebuild the ICLines of the program, with each line of the same class as it was
+     * written from.
+     * @return
+     */
+    public ICLines toICLines() {
+        ICLines icLines = new ICLines();
+        for (int i = 0; i < this.kinds.length; i++) {
+            ICLine icLine = this.newLine(this.kinds[i], this.subtypes[i]);
+            if (!icLine.isEmpty()) {
+                ArrayList<String> terms = new ArrayList<>();
+                for (int term : this.lineTerms[i]) {
+                    terms.add((term < 0) ? null : this.names[term]);
+                }
+                icLine.setTerms(terms);
+                icLine.setLabel((this.lineLabels[i] < 0) ? "" : this.names[this.lineLabels[i]]);
+            }
+            icLines.addLine(icLines.getSize(), icLine);
+        }
+        return icLines;
+    }
+
+    /**
+     * Get the words of a name, split once and then kept.
+     * @param name
+     * @return
+     */
+    private String[] tokens(int name) {
+        if (this.nameTokens[name] == null) {
+            String trimmed = this.names[name].trim();
+            this.nameTokens[name] = trimmed.isEmpty() ? new String[0] : trimmed.split(" +");
+        }
+        return this.nameTokens[name];
+    }
+
+    private static int intern(String name, Map<String, Integer> nameIndexes, ArrayList<String> names) {
+        Integer index = nameIndexes.get(name);
+        if (index == null) {
+            index = names.size();
+            nameIndexes.put(name, index);
+            names.add(name);
+        }
+        return index;
+    }
+
+    /**
+     * Resolve each label to its line, or, if there is nothing else on its line, to the
+     * next line that has something on it.
+     * @param names
+     * @param lineLabels
+     * @param lineTerms
+     * @return
+     */
+    private static Map<String, Integer> resolveLabels(String[] names, int[] lineLabels, int[][] lineTerms) {
+        Map<String, Integer> labels = new LinkedHashMap<>();
+        ArrayList<String> carryOver = new ArrayList<>();
+        for (int i = 0; i < lineLabels.length; i++) {
+            String label = (lineLabels[i] < 0) ? null : names[lineLabels[i]];
+            if (label != null) {
+                labels.put(label, i);
+            }
+            boolean hasTerms = false;
+            for (int term : lineTerms[i]) {
+                if (term >= 0 && !names[term].trim().isEmpty()) {
+                    hasTerms = true;
+                }
+            }
+            if (!hasTerms) {
+                if (label != null) {
+                    carryOver.add(label);
+                }
+            } else {
+                for (String carried : carryOver) {
+                    labels.put(carried, i);
+                }
+                carryOver.clear();
+            }
+        }
+        return labels;
+    }
+
+    private static Kind kindOf(ICLine icLine) {
+        if (icLine.isEmpty()) {
+            return Kind.EMPTY;
+        } else if (icLine instanceof ICDirective) {
+            return Kind.DIRECTIVE;
+        } else if (icLine instanceof ICCopy) {
+            return Kind.COPY;
+        } else if (icLine instanceof ICBinOprt) {
+            return Kind.BIN_OPRT;
+        } else if (icLine instanceof ICUniOprt) {
+            return Kind.UNI_OPRT;
+        } else if (icLine instanceof ICCast) {
+            return Kind.CAST;
+        } else if (icLine instanceof ICAddressPointer) {
+            return Kind.ADDRESS_POINTER;
+        } else if (icLine instanceof ICArrayIndexing) {
+            return Kind.ARRAY_INDEXING;
+        } else if (icLine instanceof ICParameterPass) {
+            return Kind.PARAMETER_PASS;
+        } else if (icLine instanceof ICFuncCall) {
+            return Kind.FUNC_CALL;
+        } else if (icLine instanceof ICReturn) {
+            return Kind.RETURN;
+        } else if (icLine instanceof ICJump) {
+            return Kind.JUMP;
+        } else if (icLine instanceof ICBoolJump) {
+            return Kind.BOOL_JUMP;
+        } else if (icLine instanceof ICReltJump) {
+            return Kind.RELT_JUMP;
+        } else {
+            return Kind.PLAIN;
+        }
+    }
+
+    /**
+     * Get the part of a line's state that is not in its terms.
+     * @param icLine
+     * @return
+     */
+    private static int subtypeOf(ICLine icLine) {
+        if (icLine instanceof ICDirective) {
+            return ((ICDirective)icLine).getDirectiveType();
+        } else if (icLine instanceof ICAddressPointer) {
+            return ((ICAddressPointer)icLine).getInstrType();
+        } else if (icLine instanceof ICReturn) {
+            return ((ICReturn)icLine).getReturnType();
+        } else if (icLine instanceof ICFuncCall) {
+            return ((ICFuncCall)icLine).returnsValue() ? 1 : 0;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Make a line of the specified kind and subtype, whose terms are then replaced.
+     * @param kind
+     * @param subtype
+     * @return
+     */
+    private ICLine newLine(Kind kind, int subtype) {
+        switch (kind) {
+            case EMPTY:
+                return new ICLine(ICLine.EMPTY);
+            case DIRECTIVE:
+                return new ICDirective(subtype, "");
+            case COPY:
+                return new ICCopy("", "");
+            case BIN_OPRT:
+                return new ICBinOprt("", "", "", "");
+            case UNI_OPRT:
+                return new ICUniOprt("", "", "");
+            case CAST:
+                return new ICCast("", ICCast.widen, "");
+            case ADDRESS_POINTER:
+                return new ICAddressPointer(subtype, "", "");
+            case ARRAY_INDEXING:
+                return new ICArrayIndexing("", "", ICArrayIndexing.read, ICArrayIndexing.integer, "");
+            case PARAMETER_PASS:
+                return new ICParameterPass(ICParameterPass.paramInt, "");
+            case FUNC_CALL:
+                return new ICFuncCall((subtype != 0) ? "?" : "", "", "");
+            case RETURN:
+                return new ICReturn(subtype, "");
+            case JUMP:
+                return new ICJump("");
+            case BOOL_JUMP:
+                return new ICBoolJump(true, "", "");
+            case RELT_JUMP:
+                return new ICReltJump(true, "", "", "", "");
+            default:
+                return new ICLine();
+        }
+    }
+
+    private static void writeCount(DataOutputStream data, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            data.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        data.writeByte(value);
+    }
+
+    private static int readCount(DataInputStream data) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = data.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IOException("Bad count in binary intermediate code");
+    }
+
+    /**
+     * Read an index into a table of the specified size.
+     * @param data
+     * @param size
+     * @param optional If true, 0 means no entry (returned as -1) and indexes are one more
+     * @return
+     * @throws IOException
+     */
+    private static int readIndex(DataInputStream data, int size, boolean optional) throws IOException {
+        int index = readCount(data) - (optional ? 1 : 0);
+        if (index >= size || (index < 0 && !optional)) {
+            throw new IOException("Bad index in binary intermediate code");
+        }
+        return index;
+    }
+}
@@ -136,23 +136,32 @@ public class ICLine {
 
     @Override
     public String toString() {
-        // Get the label
-        int size = this.terms.size();
-        String label = this.getLabel();
+        StringBuilder lineStr = new StringBuilder();
+        this.appendTo(lineStr);
+        return lineStr.toString();
+    }
+
+    /**
+     * Append the text of this ICLine (as returned by toString) to the provided builder.
+     * @param lineStr
+     */
+    public void appendTo(StringBuilder lineStr) {
         // Append terms into a string
-        String termsStr = "";
+        int size = this.terms.size();
+        StringBuilder termsStr = new StringBuilder();
         for (int i = 1; i < size; i++) {
             String term = this.getTerm(i);
             if (term != null) {
-                termsStr += " " + term;
+                termsStr.append(' ').append(term);
             }
         }
-        termsStr = termsStr.trim();
-        // Return the string
+        // Append the label, then the terms
+        String label = this.getLabel();
         if (!label.isEmpty()) {
-            return label + ": " + termsStr;
+            lineStr.append(label).append(": ");
         } else {
-            return "\t\t" + termsStr;
+            lineStr.append("\t\t");
         }
+        lineStr.append(termsStr.toString().trim());
     }
 }
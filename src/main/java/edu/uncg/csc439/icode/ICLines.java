@@ -1,5 +1,7 @@
 package edu.uncg.csc439.icode;
 
+import edu.uncg.csc439.icode.ICCreation.ICNames;
+
 import java.util.ArrayList;
 
 /**
@@ -74,6 +76,16 @@ public class ICLines {
         }
     }
 
+    /**
+     * Remove the ICLine at the specified index. All ICLine objects after it are shifted
+     * up (or to the left).
+     * @param index
+     * @return The removed ICLine
+     */
+    public ICLine removeLine(int index) {
+        return this.icLines.remove(index);
+    }
+
     /**
      * Replace the ICLine in the specified index for the provided ICLine.
      * @param index
@@ -91,12 +103,97 @@ public class ICLines {
         return this.icLines.size();
     }
 
+    /**
+     * Determine if the ICLine at the specified index is a tail call: a call whose int result
+     * is returned by the next line that is not just a label. The callee of a tail call can
+     * reuse the caller's stack frame, unless the caller takes the address of one of its own
+     * local variables or parameters (which the callee could then still be using).
+     * @param index
+     * @return The ICReturn that returns the result of the call, or null if it is not a tail call
+     */
+    public ICReturn getTailReturn(int index) {
+        ICLine icLine = this.icLines.get(index);
+        if (!(icLine instanceof ICFuncCall)) {
+            return null;
+        }
+        ICFuncCall icFuncCall = (ICFuncCall)icLine;
+        if (!icFuncCall.returnsValue()
+                || ICNames.getObjectTypeOfGenName(icFuncCall.getAddress()) != ICNames.integerType) {
+            return null;
+        }
+        // Find the next line that is not just a label
+        int next = index + 1;
+        while (next < this.icLines.size() && this.isLabelOnly(this.icLines.get(next))) {
+            next++;
+        }
+        if (next == this.icLines.size() || !(this.icLines.get(next) instanceof ICReturn)) {
+            return null;
+        }
+        ICReturn icReturn = (ICReturn)this.icLines.get(next);
+        if (icReturn.getReturnType() != ICReturn.returnInt
+                || icReturn.getAddress().compareTo(icFuncCall.getAddress()) != 0) {
+            return null;
+        }
+        // Look for the address of a local variable or parameter being taken in the function
+        int start = index;
+        while (start > 0 && !this.isDirective(this.icLines.get(start), ICDirective.fnStart)) {
+            start--;
+        }
+        for (int i = start; i < this.icLines.size(); i++) {
+            ICLine curLine = this.icLines.get(i);
+            if (i > index && this.isDirective(curLine, ICDirective.fnEnd)) {
+                break;
+            }
+            if (curLine instanceof ICAddressPointer) {
+                ICAddressPointer pointer = (ICAddressPointer)curLine;
+                if (pointer.getInstrType() == ICAddressPointer.copyAddressOf) {
+                    String addressOf = pointer.getAddress_2().substring(2);
+                    char nameType = ICNames.getNameTypeOfGenName(addressOf);
+                    if (nameType == ICNames.localName || nameType == ICNames.parameterName) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return icReturn;
+    }
+
+    /**
+     * Check if the provided ICLine has a label and nothing else.
+     * @param icLine
+     * @return
+     */
+    private boolean isLabelOnly(ICLine icLine) {
+        if (icLine.isEmpty()) {
+            return true;
+        }
+        ArrayList<String> terms = icLine.getTerms();
+        for (int i = 1; i < terms.size(); i++) {
+            if (!terms.get(i).isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the provided ICLine is a directive of the specified type.
+     * @param icLine
+     * @param directiveType
+     * @return
+     */
+    private boolean isDirective(ICLine icLine, int directiveType) {
+        return icLine instanceof ICDirective
+                && ((ICDirective)icLine).getDirectiveType() == directiveType;
+    }
+
     @Override
     public String toString() {
-        String linesStr = "";
+        StringBuilder linesStr = new StringBuilder();
         for (ICLine icLine : this.icLines) {
-            linesStr += "\n" + icLine.toString();
+            linesStr.append('\n');
+            icLine.appendTo(linesStr);
         }
-        return linesStr;
+        return linesStr.toString();
     }
 }
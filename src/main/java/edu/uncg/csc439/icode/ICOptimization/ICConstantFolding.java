@@ -0,0 +1,325 @@
+package edu.uncg.csc439.icode.ICOptimization;
+
+import edu.uncg.csc439.icode.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * This pass does constant propagation and constant folding within each basic block. The
+ * values of names assigned constants are put in place of the names where they are read, and
+ * copies, casts, unary and binary operations whose operands are all constants are replaced
+ * by a copy of their value. Relational and boolean jumps with constant conditions become
+ * unconditional jumps, or are removed.
+ *
+ * Values are calculated exactly as the interpreter calculates them, including doing an
+ * operation on bytes when its target is a char or all of its operands are chars (see
+ * ICLineInfo.isByteOp), and cutting values stored in a char to a byte.
+ */
+public class ICConstantFolding implements ICPass {
+
+    //=============== METHODS ===============
+
+    @Override
+    public String getName() {
+        return "constant folding";
+    }
+
+    @Override
+    public int run(ICLines icLines) {
+        ArrayList<ICLine> lines = icLines.getICLinesList();
+        // Names whose address is taken can change through pointers and calls
+        HashSet<String> addressTaken = ICLineInfo.getAddressTaken(lines, 0, lines.size());
+        ICFlow flow = new ICFlow(icLines);
+        ArrayList<ICLine> optimized = new ArrayList<>();
+        int changed = 0;
+        for (int block = 0; block < flow.getBlockCount(); block++) {
+            // The known values of names in this block, as they are read
+            HashMap<String, Integer> known = new HashMap<>();
+            for (ICLine icLine : flow.getLines(block)) {
+                boolean substituted = this.substituteConstants(icLine, known);
+                ICLine folded = this.fold(icLine, known);
+                if (substituted || folded != icLine) {
+                    changed++;
+                }
+                if (folded != null) {
+                    optimized.add(folded);
+                    this.updateKnown(folded, known, addressTaken);
+                }
+            }
+        }
+        lines.clear();
+        lines.addAll(optimized);
+        return changed;
+    }
+
+    //=============== PROPAGATION ===============
+
+    /**
+     * Put the known values of names in place of the names read by the provided ICLine. A
+     * value is only put in place of a name if the line then does exactly what it did before:
+     * the value can be written as a literal, it is not changed by being cut to the target
+     * width of the line, and the line does its operation on bytes only if it did before.
+     * @param icLine
+     * @param known
+     * @return True if any name was replaced
+     */
+    private boolean substituteConstants(ICLine icLine, HashMap<String, Integer> known) {
+        int[] operandTerms = ICLineInfo.getOperandTerms(icLine);
+        if (operandTerms.length == 0) {
+            return false;
+        }
+        int targetWidth = ICLineInfo.getTargetWidth(icLine);
+        boolean byteOp = ICLineInfo.isByteOp(icLine);
+        ArrayList<String> before = new ArrayList<>(icLine.getTerms());
+        boolean substituted = false;
+        for (int term : operandTerms) {
+            if (!ICLineInfo.isPresent(icLine.getTerm(term))) {
+                continue;
+            }
+            Integer value = known.get(icLine.getTerm(term));
+            if (value != null && value >= 0 && (targetWidth != 1 || value <= Byte.MAX_VALUE)) {
+                icLine.setTerm(term, "" + value);
+                substituted = true;
+            }
+        }
+        boolean checksByteOp = icLine instanceof ICBinOprt || icLine instanceof ICUniOprt
+                || icLine instanceof ICReltJump;
+        if (substituted && checksByteOp && ICLineInfo.isByteOp(icLine) != byteOp) {
+            for (int term : operandTerms) {
+                icLine.setTerm(term, before.get(term));
+            }
+            substituted = false;
+        }
+        return substituted;
+    }
+
+    /**
+     * Record the value that the provided ICLine gives the name it writes, if it is a
+     * constant. Names whose address is taken are never given known values.
+     * @param icLine
+     * @param known
+     * @param addressTaken
+     */
+    private void updateKnown(ICLine icLine, HashMap<String, Integer> known, HashSet<String> addressTaken) {
+        String definedName = ICLineInfo.getDefinedName(icLine);
+        if (definedName == null) {
+            return;
+        }
+        Integer value = this.evaluate(icLine, known);
+        known.remove(definedName);
+        if (value != null && ICLineInfo.isScalar(definedName) && !addressTaken.contains(definedName)) {
+            known.put(definedName, value);
+        }
+    }
+
+    //=============== FOLDING ===============
+
+    /**
+     * Fold the provided ICLine if its value or its jump is known.
+     * @param icLine
+     * @param known
+     * @return The line to use in its place, which is icLine if it is unchanged, or null if
+     *         the line should be removed
+     */
+    private ICLine fold(ICLine icLine, HashMap<String, Integer> known) {
+        ICLine folded = icLine;
+        if (icLine instanceof ICBinOprt || icLine instanceof ICUniOprt || icLine instanceof ICCast) {
+            Integer value = this.evaluate(icLine, known);
+            if (value != null) {
+                folded = this.genConstantLine(ICLineInfo.getDefinedName(icLine), value);
+            }
+        } else if (icLine instanceof ICReltJump || icLine instanceof ICBoolJump) {
+            Boolean jumps = this.evaluateJump(icLine, known);
+            if (jumps != null && jumps) {
+                String gotoLabel = (icLine instanceof ICReltJump) ? ((ICReltJump)icLine).getGotoLabel()
+                        : ((ICBoolJump)icLine).getGotoLabel();
+                folded = new ICJump(gotoLabel);
+            } else if (jumps != null) {
+                // The line is removed, unless something jumps to its label
+                if (icLine.getLabel().isEmpty()) {
+                    return null;
+                }
+                folded = new ICLine();
+            }
+        }
+        if (folded == null) {
+            return icLine;
+        }
+        folded.setLabel(icLine.getLabel());
+        if (folded != icLine && folded.toString().equals(icLine.toString())) {
+            return icLine;
+        }
+        return folded;
+    }
+
+    /**
+     * Generate the line copying a constant value to a name. A negative value is written as
+     * the negation of a literal.
+     * @param name
+     * @param value
+     * @return The line, or null if the value cannot be written
+     */
+    private ICLine genConstantLine(String name, int value) {
+        if (value >= 0) {
+            return new ICCopy(name, "" + value);
+        } else if (value != Integer.MIN_VALUE) {
+            return new ICUniOprt(name, "-", "" + (-value));
+        }
+        return null;
+    }
+
+    //=============== EVALUATION ===============
+
+    /**
+     * Calculate the value that the provided ICLine stores in the name it writes.
+     * @param icLine
+     * @param known
+     * @return The value, or null if it is not known
+     */
+    private Integer evaluate(ICLine icLine, HashMap<String, Integer> known) {
+        int targetWidth = ICLineInfo.getTargetWidth(icLine);
+        boolean byteOp = ICLineInfo.isByteOp(icLine);
+        Integer result = null;
+        if (icLine instanceof ICCopy) {
+            result = this.getValue(((ICCopy)icLine).getAddress_2(), targetWidth, known);
+        } else if (icLine instanceof ICCast) {
+            ICCast icCast = (ICCast)icLine;
+            result = this.getValue(icCast.getAddress_2(), targetWidth, known);
+            if (result != null && icCast.getCastType().equals("narrow")) {
+                result = (int)(byte)(int)result;
+            }
+        } else if (icLine instanceof ICUniOprt) {
+            ICUniOprt icUniOprt = (ICUniOprt)icLine;
+            Integer value = this.getValue(icUniOprt.getAddress_2(), targetWidth, known);
+            if (value != null) {
+                result = this.calculate(icUniOprt.getOperator(), value, byteOp);
+            }
+        } else if (icLine instanceof ICBinOprt) {
+            ICBinOprt icBinOprt = (ICBinOprt)icLine;
+            Integer value1 = this.getValue(icBinOprt.getAddress_2(), targetWidth, known);
+            Integer value2 = this.getValue(icBinOprt.getAddress_3(), targetWidth, known);
+            if (value1 != null && value2 != null) {
+                result = this.calculate(icBinOprt.getOperator(), value1, value2, byteOp);
+            }
+        }
+        if (result == null) {
+            return null;
+        }
+        return (targetWidth == 1) ? (int)(byte)(int)result : result;
+    }
+
+    /**
+     * Determine whether the provided relational or boolean jump jumps.
+     * @param icLine
+     * @param known
+     * @return True or false, or null if it is not known
+     */
+    private Boolean evaluateJump(ICLine icLine, HashMap<String, Integer> known) {
+        if (icLine instanceof ICReltJump) {
+            ICReltJump icReltJump = (ICReltJump)icLine;
+            // "ifFalse" is not followed by a relational operation in the interpreter
+            if (!icReltJump.getIfTerm().equals("if")) {
+                return null;
+            }
+            Integer value1 = this.getValue(icReltJump.getAddress_1(), 0, known);
+            Integer value2 = this.getValue(icReltJump.getAddress_2(), 0, known);
+            if (value1 == null || value2 == null) {
+                return null;
+            }
+            Integer result = this.calculate(icReltJump.getRelOp(), value1, value2, false);
+            return (result == null) ? null : result != 0;
+        } else {
+            ICBoolJump icBoolJump = (ICBoolJump)icLine;
+            Integer value = this.getValue(icBoolJump.getAddress_1(), 0, known);
+            if (value == null) {
+                return null;
+            }
+            boolean ifTest = icBoolJump.getTerm(ICBoolJump.ifTerm).equals("if");
+            return (value != 0) == ifTest;
+        }
+    }
+
+    /**
+     * Get the value of a literal or a name with a known value, as read by a line with the
+     * provided target width.
+     * @param term
+     * @param targetWidth
+     * @param known
+     * @return The value, or null if it is not known
+     */
+    private Integer getValue(String term, int targetWidth, HashMap<String, Integer> known) {
+        if (ICLineInfo.isLiteral(term)) {
+            try {
+                int value = Integer.parseInt(term);
+                return (targetWidth == 1) ? (int)(byte)value : value;
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+        return known.get(term);
+    }
+
+    /**
+     * Calculate a unary operation.
+     * @param operator
+     * @param value
+     * @param byteOp
+     * @return The result, or null if the operation is not one that can be calculated
+     */
+    private Integer calculate(String operator, int value, boolean byteOp) {
+        switch (operator) {
+            case "-":
+                return byteOp ? (int)(byte)-(byte)value : -value;
+            case "+":
+                return value;
+            case "!":
+                return (value == 0) ? 0 : 1;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Calculate a binary operation.
+     * @param operator
+     * @param value1
+     * @param value2
+     * @param byteOp
+     * @return The result, or null if the operation is not one that can be calculated (or
+     *         it divides by zero, which is left to fail when the program runs)
+     */
+    private Integer calculate(String operator, int value1, int value2, boolean byteOp) {
+        if (byteOp) {
+            value1 = (byte)value1;
+            value2 = (byte)value2;
+        }
+        int result;
+        switch (operator) {
+            case "+": result = value1 + value2; break;
+            case "-": result = value1 - value2; break;
+            case "*": result = value1 * value2; break;
+            case "/":
+                if (value2 == 0) {
+                    return null;
+                }
+                result = value1 / value2;
+                break;
+            case "%":
+                if (value2 == 0) {
+                    return null;
+                }
+                result = value1 % value2;
+                break;
+            case "<": return (value1 < value2) ? 1 : 0;
+            case "<=": return (value1 <= value2) ? 1 : 0;
+            case ">": return (value1 > value2) ? 1 : 0;
+            case ">=": return (value1 >= value2) ? 1 : 0;
+            case "==": return (value1 == value2) ? 1 : 0;
+            case "!=": return (value1 != value2) ? 1 : 0;
+            default: return null;
+        }
+        return byteOp ? (int)(byte)result : result;
+    }
+}
@@ -0,0 +1,172 @@
+package edu.uncg.csc439.icode.ICOptimization;
+
+import edu.uncg.csc439.icode.*;
+import edu.uncg.csc439.icode.ICCreation.ICNames;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * This pass does copy propagation within each basic block. A temporary that is computed
+ * only to be copied to a name on the next line, as in "t = a + b" followed by "x = t", is
+ * replaced by that name, and the copy is removed. Then after each copy "x = y", y is read
+ * in place of x until either of them is written again. Copies of a name to itself are
+ * removed.
+ *
+ * Copies are only propagated between names of the same width, so that every line does
+ * its operation exactly as before. Names whose address is taken are never propagated.
+ */
+public class ICCopyPropagation implements ICPass {
+
+    //=============== METHODS ===============
+
+    @Override
+    public String getName() {
+        return "copy propagation";
+    }
+
+    @Override
+    public int run(ICLines icLines) {
+        ArrayList<ICLine> lines = icLines.getICLinesList();
+        HashSet<String> addressTaken = ICLineInfo.getAddressTaken(lines, 0, lines.size());
+        ICFlow flow = new ICFlow(icLines);
+        int changed = 0;
+        for (int[] function : flow.getFunctions()) {
+            // Temporaries are replaced first, since propagating copies adds reads of them
+            HashMap<String, Integer> useCounts = new HashMap<>();
+            for (ICLine icLine : flow.getFunctionLines(function)) {
+                for (String name : ICLineInfo.getUsedNames(icLine)) {
+                    useCounts.merge(name, 1, Integer::sum);
+                }
+            }
+            for (int block = function[0]; block < function[1]; block++) {
+                changed += this.coalesceCopies(flow.getLines(block), useCounts);
+                changed += this.propagateCopies(flow.getLines(block), addressTaken);
+            }
+        }
+        flow.setProgramLines(icLines);
+        return changed;
+    }
+
+    /**
+     * Propagate the copies in a basic block, and remove the copies of names to themselves.
+     * @param blockLines
+     * @param addressTaken
+     * @return The number of lines changed or removed
+     */
+    private int propagateCopies(ArrayList<ICLine> blockLines, HashSet<String> addressTaken) {
+        int changed = 0;
+        // The name each name holds a copy of
+        HashMap<String, String> copies = new HashMap<>();
+        for (int i = 0; i < blockLines.size(); i++) {
+            ICLine icLine = blockLines.get(i);
+            boolean substituted = false;
+            for (int term : ICLineInfo.getOperandTerms(icLine)) {
+                if (!ICLineInfo.isPresent(icLine.getTerm(term))) {
+                    continue;
+                }
+                String source = copies.get(icLine.getTerm(term));
+                if (source != null) {
+                    icLine.setTerm(term, source);
+                    substituted = true;
+                }
+            }
+            if (this.isSelfCopy(icLine)) {
+                if (icLine.getLabel().isEmpty()) {
+                    blockLines.remove(i);
+                    i--;
+                } else {
+                    ICLine labelLine = new ICLine();
+                    labelLine.setLabel(icLine.getLabel());
+                    blockLines.set(i, labelLine);
+                }
+                changed++;
+                continue;
+            }
+            if (substituted) {
+                changed++;
+            }
+            // Writing a name ends the copies to it and from it
+            String definedName = ICLineInfo.getDefinedName(icLine);
+            if (definedName == null) {
+                continue;
+            }
+            copies.remove(definedName);
+            Iterator<Map.Entry<String, String>> entries = copies.entrySet().iterator();
+            while (entries.hasNext()) {
+                if (entries.next().getValue().equals(definedName)) {
+                    entries.remove();
+                }
+            }
+            if (icLine instanceof ICCopy) {
+                String source = ((ICCopy)icLine).getAddress_2();
+                if (this.canPropagate(definedName, source, addressTaken)) {
+                    copies.put(definedName, source);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Replace each temporary that is computed only to be copied to a name on the next line
+     * with that name, and remove the copy.
+     * @param blockLines
+     * @param useCounts The number of reads of each name in the function
+     * @return The number of lines removed
+     */
+    private int coalesceCopies(ArrayList<ICLine> blockLines, HashMap<String, Integer> useCounts) {
+        int changed = 0;
+        for (int i = 1; i < blockLines.size(); i++) {
+            ICLine icLine = blockLines.get(i);
+            if (!(icLine instanceof ICCopy) || !icLine.getLabel().isEmpty()) {
+                continue;
+            }
+            ICCopy icCopy = (ICCopy)icLine;
+            String name = icCopy.getAddress_1();
+            String temp = icCopy.getAddress_2();
+            ICLine prevLine = blockLines.get(i - 1);
+            boolean computesTemp = prevLine instanceof ICCopy || prevLine instanceof ICBinOprt
+                    || prevLine instanceof ICUniOprt || prevLine instanceof ICCast
+                    || (prevLine instanceof ICArrayIndexing && ICLineInfo.isArrayRead((ICArrayIndexing)prevLine));
+            if (computesTemp && ICLineInfo.isScalar(temp)
+                    && ICNames.getNameTypeOfGenName(temp) == ICNames.temporaryName
+                    && temp.equals(ICLineInfo.getDefinedName(prevLine))
+                    && useCounts.getOrDefault(temp, 0) == 1
+                    && ICLineInfo.isScalar(name) && ICLineInfo.getWidth(name) == ICLineInfo.getWidth(temp)) {
+                // The name written is always the first term of these lines
+                prevLine.setTerm(1, name);
+                blockLines.remove(i);
+                i--;
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Check if the copy "name = source" can be propagated.
+     * @param name
+     * @param source
+     * @param addressTaken
+     * @return
+     */
+    private boolean canPropagate(String name, String source, HashSet<String> addressTaken) {
+        return !name.equals(source) && ICLineInfo.isScalar(name) && ICLineInfo.isScalar(source)
+                && ICLineInfo.getWidth(name) == ICLineInfo.getWidth(source)
+                && !addressTaken.contains(name) && !addressTaken.contains(source);
+    }
+
+    /**
+     * Check if the provided ICLine copies a name to itself.
+     * @param icLine
+     * @return
+     */
+    private boolean isSelfCopy(ICLine icLine) {
+        return icLine instanceof ICCopy
+                && ((ICCopy)icLine).getAddress_1().equals(((ICCopy)icLine).getAddress_2());
+    }
+}
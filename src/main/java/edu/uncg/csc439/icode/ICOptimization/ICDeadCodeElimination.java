@@ -0,0 +1,117 @@
+package edu.uncg.csc439.icode.ICOptimization;
+
+import edu.uncg.csc439.icode.*;
+import edu.uncg.csc439.icode.ICCreation.ICNames;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.function.Predicate;
+
+/**
+ * This pass removes the lines that write a temporary, local or parameter whose value is
+ * never read afterwards, and drops the unread results of calls. It is repeated until no
+ * more lines are dead, since removing a line can leave the names it read dead as well.
+ *
+ * Only lines that do nothing but write their name are removed: calls, stores, and lines
+ * that read memory or divide by something other than a constant (and so might fail) are
+ * kept. Globals and names whose address is taken are always treated as read.
+ */
+public class ICDeadCodeElimination implements ICPass {
+
+    //=============== METHODS ===============
+
+    @Override
+    public String getName() {
+        return "dead code elimination";
+    }
+
+    @Override
+    public int run(ICLines icLines) {
+        ArrayList<ICLine> lines = icLines.getICLinesList();
+        HashSet<String> addressTaken = ICLineInfo.getAddressTaken(lines, 0, lines.size());
+        Predicate<String> tracked = name -> {
+            char nameType = ICNames.getNameTypeOfGenName(name);
+            return ICLineInfo.isScalar(name) && !addressTaken.contains(name)
+                    && (nameType == ICNames.temporaryName || nameType == ICNames.localName
+                    || nameType == ICNames.parameterName);
+        };
+        ICFlow flow = new ICFlow(icLines);
+        int changed = 0;
+        for (int[] function : flow.getFunctions()) {
+            int removed;
+            do {
+                removed = this.removeDeadLines(flow, function, tracked);
+                changed += removed;
+            } while (removed > 0);
+        }
+        flow.setProgramLines(icLines);
+        return changed;
+    }
+
+    /**
+     * Remove the lines of a function that write a tracked name that is not live after them.
+     * @param flow
+     * @param function
+     * @param tracked
+     * @return The number of lines removed or changed
+     */
+    private int removeDeadLines(ICFlow flow, int[] function, Predicate<String> tracked) {
+        ArrayList<HashSet<String>> liveOut = flow.getLiveOut(function, tracked);
+        int changed = 0;
+        for (int block = function[0]; block < function[1]; block++) {
+            HashSet<String> live = new HashSet<>(liveOut.get(block - function[0]));
+            ArrayList<ICLine> blockLines = flow.getLines(block);
+            for (int i = blockLines.size() - 1; i >= 0; i--) {
+                ICLine icLine = blockLines.get(i);
+                String definedName = ICLineInfo.getDefinedName(icLine);
+                if (definedName != null && tracked.test(definedName) && !live.contains(definedName)) {
+                    if (icLine instanceof ICFuncCall) {
+                        ((ICFuncCall)icLine).removeAddress();
+                        changed++;
+                    } else if (this.isRemovable(icLine)) {
+                        if (icLine.getLabel().isEmpty()) {
+                            blockLines.remove(i);
+                        } else {
+                            ICLine labelLine = new ICLine();
+                            labelLine.setLabel(icLine.getLabel());
+                            blockLines.set(i, labelLine);
+                        }
+                        changed++;
+                        continue;
+                    }
+                }
+                if (definedName != null) {
+                    live.remove(definedName);
+                }
+                for (String name : ICLineInfo.getUsedNames(icLine)) {
+                    if (tracked.test(name)) {
+                        live.add(name);
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Check if the provided ICLine does nothing but write the name it defines. An array
+     * length ("#") reads memory, which fails on a null or freed array, so it is kept.
+     * @param icLine
+     * @return
+     */
+    private boolean isRemovable(ICLine icLine) {
+        if (icLine instanceof ICBinOprt) {
+            ICBinOprt icBinOprt = (ICBinOprt)icLine;
+            String operator = icBinOprt.getOperator();
+            if (operator.equals("/") || operator.equals("%")) {
+                String divisor = icBinOprt.getAddress_3();
+                return ICLineInfo.isLiteral(divisor) && !divisor.matches("0+");
+            }
+            return true;
+        }
+        if (icLine instanceof ICUniOprt) {
+            return !((ICUniOprt)icLine).getOperator().equals("#");
+        }
+        return icLine instanceof ICCopy || icLine instanceof ICCast;
+    }
+}
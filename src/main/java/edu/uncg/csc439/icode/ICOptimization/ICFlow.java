@@ -0,0 +1,260 @@
+package edu.uncg.csc439.icode.ICOptimization;
+
+import edu.uncg.csc439.icode.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.function.Predicate;
+
+/**
+ * This class has the flow of control within each function of a program, over the same
+ * basic blocks as an FCGraph. The blocks are found in one pass over the lines, rather than
+ * with FCGraph's search of the whole program for each line, so that the passes that use
+ * them take time linear in the size of the program.
+ *
+ * The next blocks of an FCGraph follow a call into the function called; the successors
+ * here stay within a function instead, so a call goes on to the block after it, and a
+ * return or the end of the function leaves it. A return does not end a basic block, so a
+ * block with a return anywhere in it leaves the function.
+ */
+final class ICFlow {
+
+    //=============== CLASS VARIABLES ===============
+
+    private final ArrayList<ArrayList<ICLine>> blocks;
+    private final ArrayList<ArrayList<Integer>> successors;
+    private final ArrayList<int[]> functions;       // First block and last block (exclusive)
+    private final HashMap<String, Integer> labelBlocks;
+
+    //=============== CONSTRUCTORS ===============
+
+    ICFlow(ICLines icLines) {
+        this.blocks = new ArrayList<>();
+        this.successors = new ArrayList<>();
+        this.functions = new ArrayList<>();
+        this.labelBlocks = new HashMap<>();
+        this.findBlocks(icLines.getICLinesList());
+        for (int i = 0; i < this.blocks.size(); i++) {
+            this.successors.add(new ArrayList<>());
+            String label = this.blocks.get(i).get(0).getLabel();
+            if (!label.isEmpty()) {
+                this.labelBlocks.put(label, i);
+            }
+        }
+        this.findFunctions();
+    }
+
+    //=============== METHODS ===============
+
+    /**
+     * Get the lines of the basic block at the specified index. Changing the list changes
+     * the block, but not the program it came from (see setProgramLines).
+     * @param block
+     * @return
+     */
+    ArrayList<ICLine> getLines(int block) {
+        return this.blocks.get(block);
+    }
+
+    int getBlockCount() {
+        return this.blocks.size();
+    }
+
+    /**
+     * Get the indexes of the blocks that can run right after the specified block.
+     * @param block
+     * @return
+     */
+    ArrayList<Integer> getSuccessors(int block) {
+        return this.successors.get(block);
+    }
+
+    /**
+     * Get the index of the block whose first line has the provided label.
+     * @param label
+     * @return The index, or -1 if there is no such block
+     */
+    int getBlockWithLabel(String label) {
+        Integer block = this.labelBlocks.get(label);
+        return (block == null) ? -1 : block;
+    }
+
+    /**
+     * Get the functions of the program, each as the index of its first block and the
+     * index after its last block.
+     * @return
+     */
+    ArrayList<int[]> getFunctions() {
+        return this.functions;
+    }
+
+    /**
+     * Get all of the lines in the blocks of a function, in order.
+     * @param function
+     * @return
+     */
+    ArrayList<ICLine> getFunctionLines(int[] function) {
+        ArrayList<ICLine> functionLines = new ArrayList<>();
+        for (int i = function[0]; i < function[1]; i++) {
+            functionLines.addAll(this.getLines(i));
+        }
+        return functionLines;
+    }
+
+    /**
+     * Replace the lines of the program with the lines of the blocks, so that changes made
+     * to the blocks' lists of lines are made to the program.
+     * @param icLines
+     */
+    void setProgramLines(ICLines icLines) {
+        ArrayList<ICLine> lines = icLines.getICLinesList();
+        lines.clear();
+        for (int i = 0; i < this.blocks.size(); i++) {
+            lines.addAll(this.getLines(i));
+        }
+    }
+
+    /**
+     * Find the names that are live at the end of each block of a function: the names that
+     * may be read before they are written, on some path from the end of the block.
+     * @param function
+     * @param tracked Which names to find
+     * @return The live names for each block of the function, from its first block
+     */
+    ArrayList<HashSet<String>> getLiveOut(int[] function, Predicate<String> tracked) {
+        int count = function[1] - function[0];
+        ArrayList<HashSet<String>> uses = new ArrayList<>();
+        ArrayList<HashSet<String>> defs = new ArrayList<>();
+        ArrayList<HashSet<String>> liveIn = new ArrayList<>();
+        ArrayList<HashSet<String>> liveOut = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            HashSet<String> blockUses = new HashSet<>();
+            HashSet<String> blockDefs = new HashSet<>();
+            for (ICLine icLine : this.getLines(function[0] + i)) {
+                for (String name : ICLineInfo.getUsedNames(icLine)) {
+                    if (tracked.test(name) && !blockDefs.contains(name)) {
+                        blockUses.add(name);
+                    }
+                }
+                String definedName = ICLineInfo.getDefinedName(icLine);
+                if (definedName != null && tracked.test(definedName)) {
+                    blockDefs.add(definedName);
+                }
+            }
+            uses.add(blockUses);
+            defs.add(blockDefs);
+            liveIn.add(new HashSet<>(blockUses));
+            liveOut.add(new HashSet<>());
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = count - 1; i >= 0; i--) {
+                HashSet<String> out = liveOut.get(i);
+                for (int successor : this.successors.get(function[0] + i)) {
+                    out.addAll(liveIn.get(successor - function[0]));
+                }
+                for (String name : out) {
+                    if (!defs.get(i).contains(name) && liveIn.get(i).add(name)) {
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return liveOut;
+    }
+
+    //=============== FLOW ===============
+
+    /**
+     * Split the lines into basic blocks, with the leaders that FCGraph uses: the first
+     * line, fnStart directives, the targets of jumps, the lines after jumps and calls, and
+     * labeled data directives.
+     * @param lines
+     */
+    private void findBlocks(ArrayList<ICLine> lines) {
+        HashSet<String> targets = new HashSet<>();
+        for (ICLine icLine : lines) {
+            String gotoLabel = ICLineInfo.getGotoLabel(icLine);
+            if (gotoLabel != null) {
+                targets.add(gotoLabel);
+            }
+        }
+        ArrayList<ICLine> block = null;
+        ICLine prevLine = null;
+        for (ICLine icLine : lines) {
+            if (block == null || this.isLeader(icLine, prevLine, targets)) {
+                block = new ArrayList<>();
+                this.blocks.add(block);
+            }
+            block.add(icLine);
+            prevLine = icLine;
+        }
+    }
+
+    private boolean isLeader(ICLine icLine, ICLine prevLine, HashSet<String> targets) {
+        String label = icLine.getLabel();
+        boolean labeledData = !label.isEmpty() && (ICLineInfo.isDirective(icLine, ICDirective.definedByte)
+                || ICLineInfo.isDirective(icLine, ICDirective.definedWord));
+        return ICLineInfo.isDirective(icLine, ICDirective.fnStart)
+                || (!label.isEmpty() && targets.contains(label))
+                || ICLineInfo.getGotoLabel(prevLine) != null
+                || prevLine instanceof ICFuncCall
+                || labeledData;
+    }
+
+    /**
+     * Find the blocks of each function and the successors of each of those blocks. A
+     * function starts with the block of its fnStart directive, and ends with the block of
+     * its fnEnd directive.
+     */
+    private void findFunctions() {
+        int first = -1;
+        for (int i = 0; i < this.blocks.size(); i++) {
+            if (ICLineInfo.isDirective(this.blocks.get(i).get(0), ICDirective.fnStart)) {
+                if (first >= 0) {
+                    this.addFunction(first, i);
+                }
+                first = i;
+            }
+            ArrayList<ICLine> lines = this.getLines(i);
+            if (first >= 0 && ICLineInfo.isDirective(lines.get(lines.size() - 1), ICDirective.fnEnd)) {
+                this.addFunction(first, i + 1);
+                first = -1;
+            }
+        }
+        if (first >= 0) {
+            this.addFunction(first, this.blocks.size());
+        }
+    }
+
+    private void addFunction(int first, int last) {
+        this.functions.add(new int[] {first, last});
+        for (int i = first; i < last; i++) {
+            ArrayList<ICLine> lines = this.getLines(i);
+            ICLine lastLine = lines.get(lines.size() - 1);
+            ArrayList<Integer> blockSuccessors = this.successors.get(i);
+            // The lines after a return in the same block never run
+            boolean returns = false;
+            for (ICLine icLine : lines) {
+                returns |= icLine instanceof ICReturn;
+            }
+            if (returns) {
+                continue;
+            }
+            String gotoLabel = ICLineInfo.getGotoLabel(lastLine);
+            boolean fallsThrough = !(lastLine instanceof ICJump)
+                    && !ICLineInfo.isDirective(lastLine, ICDirective.fnEnd);
+            if (fallsThrough && i + 1 < last) {
+                blockSuccessors.add(i + 1);
+            }
+            if (gotoLabel != null) {
+                int target = this.getBlockWithLabel(gotoLabel);
+                if (target >= first && target < last && !blockSuccessors.contains(target)) {
+                    blockSuccessors.add(target);
+                }
+            }
+        }
+    }
+}
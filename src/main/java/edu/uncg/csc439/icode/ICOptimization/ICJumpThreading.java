@@ -0,0 +1,149 @@
+package edu.uncg.csc439.icode.ICOptimization;
+
+import edu.uncg.csc439.icode.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * This pass cleans up the jumps that ICGenerator leaves at the ends of loops, if statements
+ * and breaks. A jump to a goto jumps straight to where the goto goes, a jump to the line
+ * right after it is removed, and then the lines with only a label that nothing refers to
+ * are removed, so that the basic blocks around them are joined.
+ */
+public class ICJumpThreading implements ICPass {
+
+    //=============== METHODS ===============
+
+    @Override
+    public String getName() {
+        return "jump threading";
+    }
+
+    @Override
+    public int run(ICLines icLines) {
+        ArrayList<ICLine> lines = icLines.getICLinesList();
+        int changed = this.threadJumps(lines);
+        changed += this.removeNextLineJumps(lines);
+        changed += this.removeUnusedLabels(lines);
+        return changed;
+    }
+
+    /**
+     * Make each jump to a goto jump to the goto's label instead.
+     * @param lines
+     * @return The number of jumps changed
+     */
+    private int threadJumps(ArrayList<ICLine> lines) {
+        HashMap<String, Integer> labelLines = new HashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String label = lines.get(i).getLabel();
+            if (!label.isEmpty()) {
+                labelLines.put(label, i);
+            }
+        }
+        int changed = 0;
+        for (ICLine icLine : lines) {
+            String gotoLabel = ICLineInfo.getGotoLabel(icLine);
+            if (gotoLabel == null) {
+                continue;
+            }
+            // Follow the chain of gotos, stopping at a loop of them
+            String target = gotoLabel;
+            HashSet<String> seen = new HashSet<>();
+            while (seen.add(target) && labelLines.containsKey(target)) {
+                ICLine targetLine = this.skipLabelOnly(lines, labelLines.get(target));
+                if (!(targetLine instanceof ICJump)) {
+                    break;
+                }
+                target = ((ICJump)targetLine).getGotoLabel();
+            }
+            if (!target.equals(gotoLabel)) {
+                ICLineInfo.setGotoLabel(icLine, target);
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Remove the jumps, conditional or not, whose label is on the line the program would run
+     * next anyway.
+     * @param lines
+     * @return The number of jumps removed
+     */
+    private int removeNextLineJumps(ArrayList<ICLine> lines) {
+        int changed = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            ICLine icLine = lines.get(i);
+            String gotoLabel = ICLineInfo.getGotoLabel(icLine);
+            if (gotoLabel == null) {
+                continue;
+            }
+            boolean toNextLine = false;
+            for (int j = i + 1; j < lines.size() && !toNextLine; j++) {
+                toNextLine = lines.get(j).getLabel().equals(gotoLabel);
+                if (!ICLineInfo.isLabelOnly(lines.get(j))) {
+                    break;
+                }
+            }
+            if (!toNextLine) {
+                continue;
+            }
+            if (icLine.getLabel().isEmpty()) {
+                lines.remove(i);
+                i--;
+            } else {
+                ICLine labelLine = new ICLine();
+                labelLine.setLabel(icLine.getLabel());
+                lines.set(i, labelLine);
+            }
+            changed++;
+        }
+        return changed;
+    }
+
+    /**
+     * Remove the lines with only a label that no line refers to.
+     * @param lines
+     * @return The number of lines removed
+     */
+    private int removeUnusedLabels(ArrayList<ICLine> lines) {
+        HashSet<String> usedLabels = new HashSet<>();
+        for (ICLine icLine : lines) {
+            ArrayList<String> terms = icLine.getTerms();
+            for (int i = 1; i < terms.size(); i++) {
+                String term = terms.get(i);
+                if (term != null) {
+                    usedLabels.add(term.startsWith("& ") ? term.substring(2) : term);
+                }
+            }
+        }
+        int changed = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            ICLine icLine = lines.get(i);
+            if (ICLineInfo.isLabelOnly(icLine) && !usedLabels.contains(icLine.getLabel())) {
+                lines.remove(i);
+                i--;
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Get the first line from the specified index that does more than hold a label.
+     * @param lines
+     * @param index
+     * @return The line, or null if there is none
+     */
+    private ICLine skipLabelOnly(ArrayList<ICLine> lines, int index) {
+        for (int i = index; i < lines.size(); i++) {
+            if (!ICLineInfo.isLabelOnly(lines.get(i))) {
+                return lines.get(i);
+            }
+        }
+        return null;
+    }
+}
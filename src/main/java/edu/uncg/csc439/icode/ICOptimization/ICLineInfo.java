@@ -0,0 +1,345 @@
+package edu.uncg.csc439.icode.ICOptimization;
+
+import edu.uncg.csc439.icode.*;
+import edu.uncg.csc439.icode.ICCreation.ICNames;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class has the facts about single ICLine objects that the optimization passes share:
+ * which name a line writes, which of its terms are values that it reads, and the widths
+ * that the interpreter uses for its operations.
+ */
+final class ICLineInfo {
+
+    //=============== CONSTRUCTORS ===============
+
+    private ICLineInfo() {
+    }
+
+    //=============== NAMES ===============
+
+    /**
+     * Check if the provided term is an int literal. Literals in intermediate code are never
+     * negative; a negative value is written as the negation of a literal.
+     * @param term The term, or null if it is missing
+     * @return
+     */
+    static boolean isLiteral(String term) {
+        if (term == null || term.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < term.length(); i++) {
+            if (!Character.isDigit(term.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the provided term is the generated name of a char or int global, local,
+     * parameter or temporary.
+     * @param term The term, or null if it is missing
+     * @return
+     */
+    static boolean isScalar(String term) {
+        if (term == null || term.length() < 2) {
+            return false;
+        }
+        char nameType = ICNames.getNameTypeOfGenName(term);
+        char objectType = ICNames.getObjectTypeOfGenName(term);
+        return nameType != '?'
+                && (objectType == ICNames.characterType || objectType == ICNames.integerType);
+    }
+
+    /**
+     * Get the width of the value held by the provided generated name.
+     * @param name The name, or null if it is missing
+     * @return 1 for a char, and 4 for anything else
+     */
+    static int getWidth(String name) {
+        if (name != null && name.length() > 1 && ICNames.getObjectTypeOfGenName(name) == ICNames.characterType) {
+            return 1;
+        }
+        return 4;
+    }
+
+    /**
+     * Check if the provided term of a line is there: not null, and not empty.
+     * @param term
+     * @return
+     */
+    static boolean isPresent(String term) {
+        return term != null && !term.isEmpty();
+    }
+
+    //=============== LINES ===============
+
+    /**
+     * Get the name that the provided ICLine writes.
+     * @param icLine
+     * @return The name, or null if the line does not write a name
+     */
+    static String getDefinedName(ICLine icLine) {
+        if (icLine instanceof ICCopy) {
+            return ((ICCopy)icLine).getAddress_1();
+        } else if (icLine instanceof ICBinOprt) {
+            return ((ICBinOprt)icLine).getAddress_1();
+        } else if (icLine instanceof ICUniOprt) {
+            return ((ICUniOprt)icLine).getAddress_1();
+        } else if (icLine instanceof ICCast) {
+            return ((ICCast)icLine).getAddress_1();
+        } else if (icLine instanceof ICArrayIndexing) {
+            ICArrayIndexing indexing = (ICArrayIndexing)icLine;
+            return isArrayRead(indexing) ? indexing.getAddress_1() : null;
+        } else if (icLine instanceof ICAddressPointer) {
+            ICAddressPointer pointer = (ICAddressPointer)icLine;
+            if (pointer.getInstrType() == ICAddressPointer.copyValueToPointerLocation) {
+                return null;
+            }
+            return pointer.getAddress_1();
+        } else if (icLine instanceof ICFuncCall) {
+            ICFuncCall icFuncCall = (ICFuncCall)icLine;
+            return icFuncCall.returnsValue() ? icFuncCall.getAddress() : null;
+        } else if (isSetSize(icLine)) {
+            return icLine.getTerm(1);
+        }
+        return null;
+    }
+
+    /**
+     * Get the indexes of the terms of the provided ICLine that are values it reads, and that
+     * could be replaced by any other literal or name of the same value. A term can be
+     * missing (null), as the operand of the "param4" that ICGenerator writes for a call
+     * used as an argument is; callers skip those.
+     * @param icLine
+     * @return
+     */
+    static int[] getOperandTerms(ICLine icLine) {
+        if (icLine instanceof ICCopy) {
+            return new int[] {ICCopy.address_2};
+        } else if (icLine instanceof ICBinOprt) {
+            return new int[] {ICBinOprt.address_2, ICBinOprt.address_3};
+        } else if (icLine instanceof ICUniOprt) {
+            // The operand of & is a variable, not the value in it
+            if (((ICUniOprt)icLine).getOperator().equals("&")) {
+                return new int[0];
+            }
+            return new int[] {ICUniOprt.address_2};
+        } else if (icLine instanceof ICCast) {
+            return new int[] {ICCast.address_2};
+        } else if (icLine instanceof ICArrayIndexing) {
+            if (isArrayRead((ICArrayIndexing)icLine)) {
+                return new int[] {ICArrayIndexing.address_2, ICArrayIndexing.address_3};
+            }
+            return new int[] {ICArrayIndexing.address_1, ICArrayIndexing.address_2, ICArrayIndexing.address_3};
+        } else if (icLine instanceof ICReltJump) {
+            return new int[] {ICReltJump.address_1, ICReltJump.address_2};
+        } else if (icLine instanceof ICBoolJump) {
+            return new int[] {ICBoolJump.address_1};
+        } else if (icLine instanceof ICParameterPass) {
+            return new int[] {ICParameterPass.address};
+        } else if (icLine instanceof ICReturn) {
+            if (((ICReturn)icLine).getReturnType() == ICReturn.returnVoid) {
+                return new int[0];
+            }
+            return new int[] {ICReturn.addressIdx};
+        }
+        return new int[0];
+    }
+
+    /**
+     * Get the names read by the provided ICLine, including pointers that it reads or writes
+     * through and variables whose address it takes.
+     * @param icLine
+     * @return
+     */
+    static ArrayList<String> getUsedNames(ICLine icLine) {
+        ArrayList<String> usedNames = new ArrayList<>();
+        for (int term : getOperandTerms(icLine)) {
+            if (isPresent(icLine.getTerm(term))) {
+                usedNames.add(icLine.getTerm(term));
+            }
+        }
+        if (icLine instanceof ICAddressPointer) {
+            ICAddressPointer pointer = (ICAddressPointer)icLine;
+            if (pointer.getInstrType() == ICAddressPointer.copyValueToPointerLocation) {
+                usedNames.add(pointer.getAddress_1().substring(2));
+                usedNames.add(pointer.getAddress_2());
+            } else {
+                usedNames.add(pointer.getAddress_2().substring(2));
+            }
+        } else if (icLine instanceof ICUniOprt && ((ICUniOprt)icLine).getOperator().equals("&")) {
+            usedNames.add(((ICUniOprt)icLine).getAddress_2());
+        }
+        return usedNames;
+    }
+
+    /**
+     * Rename the names in the provided ICLine, wherever they are written or read.
+     * @param icLine
+     * @param newNames The new name for each name that is renamed
+     * @return True if any name was renamed
+     */
+    static boolean renameNames(ICLine icLine, Map<String, String> newNames) {
+        boolean renamed = false;
+        ArrayList<String> terms = icLine.getTerms();
+        for (int i = 1; i < terms.size(); i++) {
+            String term = terms.get(i);
+            if (term == null) {
+                continue;
+            }
+            // Pointer terms are written "& x" and "* x"
+            String prefix = "";
+            if (term.startsWith("& ") || term.startsWith("* ")) {
+                prefix = term.substring(0, 2);
+                term = term.substring(2);
+            }
+            String newName = newNames.get(term);
+            if (newName != null) {
+                terms.set(i, prefix + newName);
+                renamed = true;
+            }
+        }
+        return renamed;
+    }
+
+    /**
+     * Get the target width of the provided ICLine, as the interpreter does: the width of the
+     * name written, the parameter, the return value or the stored element. Literals read by
+     * a line with a target width of 1 are cut to a byte.
+     * @param icLine
+     * @return 1, 4, or 0 if the line has no target
+     */
+    static int getTargetWidth(ICLine icLine) {
+        if (icLine instanceof ICArrayIndexing && !isArrayRead((ICArrayIndexing)icLine)) {
+            return ((ICArrayIndexing)icLine).getOperator().endsWith("1") ? 1 : 4;
+        } else if (icLine instanceof ICParameterPass) {
+            return ((ICParameterPass)icLine).getParPassType().endsWith("1") ? 1 : 4;
+        } else if (icLine instanceof ICReturn) {
+            return ((ICReturn)icLine).getReturnType();
+        } else if (icLine instanceof ICReltJump || icLine instanceof ICBoolJump) {
+            return 0;
+        }
+        String definedName = getDefinedName(icLine);
+        return (definedName == null) ? 0 : getWidth(definedName);
+    }
+
+    /**
+     * Check if the interpreter does the operation of the provided ICLine on bytes, which it
+     * does when the target width is 1 or when every operand is a char name.
+     * @param icLine
+     * @return
+     */
+    static boolean isByteOp(ICLine icLine) {
+        if (getTargetWidth(icLine) == 1) {
+            return true;
+        }
+        for (int term : getOperandTerms(icLine)) {
+            String operand = icLine.getTerm(term);
+            if (!isPresent(operand)) {
+                continue;
+            }
+            if (!isScalar(operand) || getWidth(operand) != 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the provided ICArrayIndexing reads from its array (rather than writing to it).
+     * @param indexing
+     * @return
+     */
+    static boolean isArrayRead(ICArrayIndexing indexing) {
+        return indexing.getOperator().startsWith("ld");
+    }
+
+    /**
+     * Get the label that the provided ICLine jumps to.
+     * @param icLine
+     * @return The label, or null if the line is not a jump
+     */
+    static String getGotoLabel(ICLine icLine) {
+        if (icLine instanceof ICJump) {
+            return ((ICJump)icLine).getGotoLabel();
+        } else if (icLine instanceof ICReltJump) {
+            return ((ICReltJump)icLine).getGotoLabel();
+        } else if (icLine instanceof ICBoolJump) {
+            return ((ICBoolJump)icLine).getGotoLabel();
+        }
+        return null;
+    }
+
+    /**
+     * Change the label that the provided jump jumps to.
+     * @param icLine
+     * @param gotoLabel
+     */
+    static void setGotoLabel(ICLine icLine, String gotoLabel) {
+        if (icLine instanceof ICJump) {
+            ((ICJump)icLine).setGotoLabel(gotoLabel);
+        } else if (icLine instanceof ICReltJump) {
+            ((ICReltJump)icLine).setGotoLabel(gotoLabel);
+        } else if (icLine instanceof ICBoolJump) {
+            ((ICBoolJump)icLine).setGotoLabel(gotoLabel);
+        }
+    }
+
+    /**
+     * Check if the provided ICLine has only a label, and does nothing.
+     * @param icLine
+     * @return
+     */
+    static boolean isLabelOnly(ICLine icLine) {
+        return icLine.getClass() == ICLine.class && icLine.getTerms().size() == 1;
+    }
+
+    /**
+     * Check if the provided ICLine declares a local array ("x setsize n").
+     * @param icLine
+     * @return
+     */
+    static boolean isSetSize(ICLine icLine) {
+        ArrayList<String> terms = icLine.getTerms();
+        return icLine.getClass() == ICLine.class && terms.size() > 2 && terms.get(2).equals("setsize");
+    }
+
+    /**
+     * Check if the provided ICLine is a directive of the specified type.
+     * @param icLine
+     * @param directiveType
+     * @return
+     */
+    static boolean isDirective(ICLine icLine, int directiveType) {
+        return icLine instanceof ICDirective
+                && ((ICDirective)icLine).getDirectiveType() == directiveType;
+    }
+
+    /**
+     * Get the names whose address is taken by the lines in the specified range. The values
+     * of these names can change through pointers, so they are never optimized.
+     * @param lines
+     * @param first The first index, inclusive
+     * @param last The last index, exclusive
+     * @return
+     */
+    static HashSet<String> getAddressTaken(List<ICLine> lines, int first, int last) {
+        HashSet<String> addressTaken = new HashSet<>();
+        for (int i = first; i < last; i++) {
+            ICLine icLine = lines.get(i);
+            if (icLine instanceof ICAddressPointer
+                    && ((ICAddressPointer)icLine).getInstrType() == ICAddressPointer.copyAddressOf) {
+                addressTaken.add(((ICAddressPointer)icLine).getAddress_2().substring(2));
+            } else if (icLine instanceof ICUniOprt && ((ICUniOprt)icLine).getOperator().equals("&")) {
+                addressTaken.add(((ICUniOprt)icLine).getAddress_2());
+            }
+        }
+        return addressTaken;
+    }
+}
@@ -0,0 +1,160 @@
+package edu.uncg.csc439.icode.ICOptimization;
+
+import edu.uncg.csc439.icode.*;
+import edu.uncg.csc439.icode.ICCreation.ICNames;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.function.Predicate;
+
+/**
+ * This pass gives temporaries whose live ranges do not overlap the same name, so that each
+ * function uses fewer of them: fewer registers in the interpreter, and fewer temporary
+ * stack slots in the MIPS code. Two temporaries can share a name if neither is written
+ * while the other is live, except by a copy of one to the other. Only temporaries of the
+ * same width share a name. Copies of a name to itself that this leaves are removed.
+ */
+public class ICTempCoalescing implements ICPass {
+
+    //=============== METHODS ===============
+
+    @Override
+    public String getName() {
+        return "temp coalescing";
+    }
+
+    @Override
+    public int run(ICLines icLines) {
+        ICFlow flow = new ICFlow(icLines);
+        Predicate<String> isTemp = name -> ICLineInfo.isScalar(name)
+                && ICNames.getNameTypeOfGenName(name) == ICNames.temporaryName;
+        int changed = 0;
+        for (int[] function : flow.getFunctions()) {
+            HashMap<String, HashSet<String>> interference = this.findInterference(flow, function, isTemp);
+            HashMap<String, String> newNames = this.chooseNames(flow.getFunctionLines(function), interference,
+                    isTemp);
+            if (newNames.isEmpty()) {
+                continue;
+            }
+            for (int block = function[0]; block < function[1]; block++) {
+                ArrayList<ICLine> blockLines = flow.getLines(block);
+                for (int i = 0; i < blockLines.size(); i++) {
+                    ICLine icLine = blockLines.get(i);
+                    if (!ICLineInfo.renameNames(icLine, newNames)) {
+                        continue;
+                    }
+                    changed++;
+                    if (icLine instanceof ICCopy
+                            && ((ICCopy)icLine).getAddress_1().equals(((ICCopy)icLine).getAddress_2())) {
+                        if (icLine.getLabel().isEmpty()) {
+                            blockLines.remove(i);
+                            i--;
+                        } else {
+                            ICLine labelLine = new ICLine();
+                            labelLine.setLabel(icLine.getLabel());
+                            blockLines.set(i, labelLine);
+                        }
+                    }
+                }
+            }
+        }
+        flow.setProgramLines(icLines);
+        return changed;
+    }
+
+    /**
+     * Find the temporaries that each temporary of a function interferes with: those that
+     * are live where it is written, other than the one it is a copy of.
+     * @param flow
+     * @param function
+     * @param isTemp
+     * @return
+     */
+    private HashMap<String, HashSet<String>> findInterference(ICFlow flow, int[] function,
+                                                              Predicate<String> isTemp) {
+        HashMap<String, HashSet<String>> interference = new HashMap<>();
+        ArrayList<HashSet<String>> liveOut = flow.getLiveOut(function, isTemp);
+        for (int block = function[0]; block < function[1]; block++) {
+            HashSet<String> live = new HashSet<>(liveOut.get(block - function[0]));
+            ArrayList<ICLine> blockLines = flow.getLines(block);
+            for (int i = blockLines.size() - 1; i >= 0; i--) {
+                ICLine icLine = blockLines.get(i);
+                String definedName = ICLineInfo.getDefinedName(icLine);
+                if (definedName != null && isTemp.test(definedName)) {
+                    String source = (icLine instanceof ICCopy) ? ((ICCopy)icLine).getAddress_2() : null;
+                    for (String name : live) {
+                        if (!name.equals(definedName) && !name.equals(source)) {
+                            interference.computeIfAbsent(definedName, k -> new HashSet<>()).add(name);
+                            interference.computeIfAbsent(name, k -> new HashSet<>()).add(definedName);
+                        }
+                    }
+                    live.remove(definedName);
+                }
+                for (String name : ICLineInfo.getUsedNames(icLine)) {
+                    if (isTemp.test(name)) {
+                        live.add(name);
+                    }
+                }
+            }
+        }
+        return interference;
+    }
+
+    /**
+     * Choose the name for each temporary, in the order they first appear: the name of the
+     * first group of temporaries of the same width that it does not interfere with.
+     * @param functionLines
+     * @param interference
+     * @param isTemp
+     * @return The new name for each temporary that is renamed
+     */
+    private HashMap<String, String> chooseNames(ArrayList<ICLine> functionLines,
+                                                HashMap<String, HashSet<String>> interference,
+                                                Predicate<String> isTemp) {
+        LinkedHashSet<String> temps = new LinkedHashSet<>();
+        for (ICLine icLine : functionLines) {
+            String definedName = ICLineInfo.getDefinedName(icLine);
+            for (String name : ICLineInfo.getUsedNames(icLine)) {
+                if (isTemp.test(name)) {
+                    temps.add(name);
+                }
+            }
+            if (definedName != null && isTemp.test(definedName)) {
+                temps.add(definedName);
+            }
+        }
+        ArrayList<ArrayList<String>> groups = new ArrayList<>();
+        HashMap<String, String> newNames = new HashMap<>();
+        for (String temp : temps) {
+            HashSet<String> conflicts = interference.getOrDefault(temp, new HashSet<>());
+            ArrayList<String> chosen = null;
+            for (ArrayList<String> group : groups) {
+                if (ICLineInfo.getWidth(group.get(0)) != ICLineInfo.getWidth(temp)) {
+                    continue;
+                }
+                boolean fits = true;
+                for (String member : group) {
+                    if (conflicts.contains(member)) {
+                        fits = false;
+                        break;
+                    }
+                }
+                if (fits) {
+                    chosen = group;
+                    break;
+                }
+            }
+            if (chosen == null) {
+                chosen = new ArrayList<>();
+                groups.add(chosen);
+            }
+            chosen.add(temp);
+            if (!chosen.get(0).equals(temp)) {
+                newNames.put(temp, chosen.get(0));
+            }
+        }
+        return newNames;
+    }
+}
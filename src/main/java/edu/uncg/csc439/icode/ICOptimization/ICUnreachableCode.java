@@ -0,0 +1,69 @@
+package edu.uncg.csc439.icode.ICOptimization;
+
+import edu.uncg.csc439.icode.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * This pass removes the code that can never run: the basic blocks of a function that
+ * cannot be reached from its start, and the lines after a return in the same block, such as
+ * the jumps ICGenerator writes after a return or a break. The fnEnd directive of each
+ * function is always kept.
+ */
+public class ICUnreachableCode implements ICPass {
+
+    //=============== METHODS ===============
+
+    @Override
+    public String getName() {
+        return "unreachable code";
+    }
+
+    @Override
+    public int run(ICLines icLines) {
+        ICFlow flow = new ICFlow(icLines);
+        int changed = 0;
+        for (int[] function : flow.getFunctions()) {
+            boolean[] reached = this.findReached(flow, function);
+            for (int block = function[0]; block < function[1]; block++) {
+                ArrayList<ICLine> blockLines = flow.getLines(block);
+                boolean runs = reached[block - function[0]];
+                for (int i = 0; i < blockLines.size(); i++) {
+                    ICLine icLine = blockLines.get(i);
+                    if (!runs && !ICLineInfo.isDirective(icLine, ICDirective.fnEnd)) {
+                        blockLines.remove(i);
+                        i--;
+                        changed++;
+                    } else if (icLine instanceof ICReturn) {
+                        runs = false;
+                    }
+                }
+            }
+        }
+        flow.setProgramLines(icLines);
+        return changed;
+    }
+
+    /**
+     * Find the blocks of a function that can be reached from its first block.
+     * @param flow
+     * @param function
+     * @return Whether each block of the function is reached, from its first block
+     */
+    private boolean[] findReached(ICFlow flow, int[] function) {
+        boolean[] reached = new boolean[function[1] - function[0]];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        reached[0] = true;
+        work.add(function[0]);
+        while (!work.isEmpty()) {
+            for (int successor : flow.getSuccessors(work.remove())) {
+                if (!reached[successor - function[0]]) {
+                    reached[successor - function[0]] = true;
+                    work.add(successor);
+                }
+            }
+        }
+        return reached;
+    }
+}
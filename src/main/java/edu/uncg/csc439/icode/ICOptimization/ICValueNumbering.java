@@ -0,0 +1,230 @@
+package edu.uncg.csc439.icode.ICOptimization;
+
+import edu.uncg.csc439.icode.*;
+import edu.uncg.csc439.icode.ICCreation.ICNames;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * This pass does local value numbering, to remove common subexpressions within each basic
+ * block. Every value a name or literal holds gets a number, and a binary operation, unary
+ * operation, address or array read that calculates a value already held by a name is
+ * replaced by a copy of that name. Two lines calculate the same value when they do the same operation,
+ * with the same target width, on operands with the same numbers.
+ *
+ * Array reads and array lengths read memory, so they are forgotten at every store through
+ * an array or pointer, and at every call. Those also forget the values of the names that
+ * can change without being written by name: names whose address is taken, and (at calls)
+ * globals.
+ */
+public class ICValueNumbering implements ICPass {
+
+    //=============== CLASS VARIABLES ===============
+
+    // The keys of operations that read memory start with this
+    private static final String MEMORY = "@";
+
+    private HashMap<String, Integer> numbers;       // The value number of each name and literal
+    private HashMap<String, Integer> operations;    // The value number of each operation done
+    private HashMap<Integer, String> holders;       // The first name given each value number
+    private int nextNumber;
+
+    //=============== METHODS ===============
+
+    @Override
+    public String getName() {
+        return "value numbering";
+    }
+
+    @Override
+    public int run(ICLines icLines) {
+        ArrayList<ICLine> lines = icLines.getICLinesList();
+        HashSet<String> addressTaken = ICLineInfo.getAddressTaken(lines, 0, lines.size());
+        ICFlow flow = new ICFlow(icLines);
+        int changed = 0;
+        for (int block = 0; block < flow.getBlockCount(); block++) {
+            this.numbers = new HashMap<>();
+            this.operations = new HashMap<>();
+            this.holders = new HashMap<>();
+            this.nextNumber = 0;
+            ArrayList<ICLine> blockLines = flow.getLines(block);
+            for (int i = 0; i < blockLines.size(); i++) {
+                ICLine icLine = blockLines.get(i);
+                String definedName = ICLineInfo.getDefinedName(icLine);
+                String key = this.getOperationKey(icLine);
+                Integer number = (key == null) ? null : this.operations.get(key);
+                String holder = (number == null) ? null : this.findHolder(number, definedName);
+                if (holder != null) {
+                    ICCopy icCopy = new ICCopy(definedName, holder);
+                    icCopy.setLabel(icLine.getLabel());
+                    blockLines.set(i, icCopy);
+                    this.numbers.put(definedName, number);
+                    changed++;
+                    continue;
+                }
+                if (this.changesMemory(icLine)) {
+                    this.forgetMemory(addressTaken, icLine instanceof ICFuncCall);
+                }
+                if (definedName != null) {
+                    this.numbers.put(definedName, this.getCopiedNumber(icLine));
+                    this.holders.putIfAbsent(this.numbers.get(definedName), definedName);
+                    if (key != null) {
+                        this.operations.put(key, this.numbers.get(definedName));
+                    }
+                }
+            }
+        }
+        flow.setProgramLines(icLines);
+        return changed;
+    }
+
+    /**
+     * Get the key of the operation that the provided ICLine does, which is the same for two
+     * lines exactly when they calculate the same value.
+     * @param icLine
+     * @return The key, or null if the line does not do an operation that can be reused
+     */
+    private String getOperationKey(ICLine icLine) {
+        String operator;
+        ArrayList<String> operands = new ArrayList<>();
+        String prefix = "";
+        if (icLine instanceof ICBinOprt) {
+            ICBinOprt icBinOprt = (ICBinOprt)icLine;
+            operator = icBinOprt.getOperator();
+            operands.add("" + this.getNumber(icBinOprt.getAddress_2()));
+            operands.add("" + this.getNumber(icBinOprt.getAddress_3()));
+            if (operator.equals("+") || operator.equals("*") || operator.equals("==")
+                    || operator.equals("!=")) {
+                operands.sort(null);
+            }
+        } else if (icLine instanceof ICUniOprt) {
+            ICUniOprt icUniOprt = (ICUniOprt)icLine;
+            operator = icUniOprt.getOperator();
+            if (operator.equals("&")) {
+                // The address of a variable never changes
+                operands.add(icUniOprt.getAddress_2());
+            } else {
+                operands.add("" + this.getNumber(icUniOprt.getAddress_2()));
+            }
+            if (operator.equals("#")) {
+                prefix = ICValueNumbering.MEMORY;
+            }
+        } else if (icLine instanceof ICArrayIndexing && ICLineInfo.isArrayRead((ICArrayIndexing)icLine)) {
+            ICArrayIndexing indexing = (ICArrayIndexing)icLine;
+            operator = indexing.getOperator();
+            operands.add("" + this.getNumber(indexing.getAddress_2()));
+            operands.add("" + this.getNumber(indexing.getAddress_3()));
+            prefix = ICValueNumbering.MEMORY;
+        } else if (icLine instanceof ICAddressPointer
+                && ((ICAddressPointer)icLine).getInstrType() == ICAddressPointer.copyAddressOf) {
+            // "x = & y", as ICGenerator writes the address of an array
+            operator = "&";
+            operands.add(((ICAddressPointer)icLine).getAddress_2().substring(2));
+        } else {
+            return null;
+        }
+        if (!ICLineInfo.isScalar(ICLineInfo.getDefinedName(icLine))) {
+            return null;
+        }
+        return prefix + operator + " " + ICLineInfo.getTargetWidth(icLine) + " "
+                + ICLineInfo.isByteOp(icLine) + " " + String.join(" ", operands);
+    }
+
+    /**
+     * Get the value number that the provided ICLine gives the name it writes: the number of
+     * the name or literal it copies, if the value is copied unchanged, or else a new number.
+     * @param icLine
+     * @return
+     */
+    private int getCopiedNumber(ICLine icLine) {
+        if (icLine instanceof ICCopy) {
+            String name = ((ICCopy)icLine).getAddress_1();
+            String source = ((ICCopy)icLine).getAddress_2();
+            // A literal copied to a char may be cut to a byte
+            boolean sameValue = ICLineInfo.isLiteral(source) ? ICLineInfo.getWidth(name) == 4
+                    : ICLineInfo.isScalar(source) && ICLineInfo.getWidth(name) == ICLineInfo.getWidth(source);
+            if (sameValue && ICLineInfo.isScalar(name)) {
+                return this.getNumber(source);
+            }
+        }
+        return this.nextNumber++;
+    }
+
+    /**
+     * Get the value number of a name or literal, giving it a new one if it has none.
+     * @param term
+     * @return
+     */
+    private int getNumber(String term) {
+        Integer number = this.numbers.get(term);
+        if (number == null) {
+            number = this.nextNumber++;
+            this.numbers.put(term, number);
+        }
+        return number;
+    }
+
+    /**
+     * Find a name that holds the value with the provided number, and has the same width as
+     * the name it would be copied to: the first name given the number if it still holds it,
+     * or else the first of the others in name order.
+     * @param number
+     * @param definedName
+     * @return The name, or null if there is none
+     */
+    private String findHolder(int number, String definedName) {
+        String holder = this.holders.get(number);
+        if (holder != null && this.holdsValue(holder, number, definedName)) {
+            return holder;
+        }
+        holder = null;
+        for (String name : this.numbers.keySet()) {
+            if (this.holdsValue(name, number, definedName) && (holder == null || name.compareTo(holder) < 0)) {
+                holder = name;
+            }
+        }
+        return holder;
+    }
+
+    private boolean holdsValue(String name, int number, String definedName) {
+        Integer held = this.numbers.get(name);
+        return held != null && held == number && ICLineInfo.isScalar(name)
+                && ICLineInfo.getWidth(name) == ICLineInfo.getWidth(definedName);
+    }
+
+    /**
+     * Check if the provided ICLine can change memory other than the name it writes: a store
+     * through an array or pointer, or a call.
+     * @param icLine
+     * @return
+     */
+    private boolean changesMemory(ICLine icLine) {
+        if (icLine instanceof ICArrayIndexing) {
+            return !ICLineInfo.isArrayRead((ICArrayIndexing)icLine);
+        } else if (icLine instanceof ICAddressPointer) {
+            return ((ICAddressPointer)icLine).getInstrType() == ICAddressPointer.copyValueToPointerLocation;
+        }
+        return icLine instanceof ICFuncCall;
+    }
+
+    /**
+     * Forget the operations that read memory, and the values of the names that memory
+     * changes can write.
+     * @param addressTaken
+     * @param globalsToo True if the values of globals are forgotten as well
+     */
+    private void forgetMemory(HashSet<String> addressTaken, boolean globalsToo) {
+        this.operations.keySet().removeIf(key -> key.startsWith(ICValueNumbering.MEMORY));
+        Iterator<String> names = this.numbers.keySet().iterator();
+        while (names.hasNext()) {
+            String name = names.next();
+            if (addressTaken.contains(name)
+                    || (globalsToo && ICNames.getNameTypeOfGenName(name) == ICNames.globalName)) {
+                names.remove();
+            }
+        }
+    }
+}
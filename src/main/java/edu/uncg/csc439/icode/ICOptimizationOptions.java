@@ -0,0 +1,104 @@
+package edu.uncg.csc439.icode;
+
+import edu.uncg.csc439.syntaxtree.LCSyntaxTree;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line options for optimizing intermediate code, shared by the programs that
+ * generate it from a LittleC program: -O0, -O1 or -O2 for the optimization level (see
+ * ICPassManager), and -Ostats to report the time each pass took and the lines it changed.
+ * Each program that compiles code gets its own options, so programs compiled at the same
+ * time on different threads can use different levels.
+ */
+public class ICOptimizationOptions {
+
+    //=============== CLASS VARIABLES ===============
+
+    private int level;
+    private boolean stats;
+
+    //=============== METHODS ===============
+
+    /**
+     * Get a description of the options, for usage messages.
+     * @return
+     */
+    public static String usage() {
+        return "   -O0|-O1|-O2            optimization level of the intermediate code (default -O0)\n" +
+               "   -Ostats                report the time each optimization pass took and the lines it changed\n";
+    }
+
+    /**
+     * Take the optimization options out of the options at the start of a command line.
+     * The other options are left in place, for the program's own option parsing.
+     * @param argv command line arguments
+     * @return the arguments without the optimization options
+     */
+    public String[] parse(String[] argv) {
+        List<String> rest = new ArrayList<>();
+        boolean inOptions = true;
+        for (String arg : argv) {
+            if (!(inOptions && this.parseOption(arg))) {
+                if (!arg.startsWith("-")) {
+                    inOptions = false;
+                }
+                rest.add(arg);
+            }
+        }
+        return rest.toArray(new String[0]);
+    }
+
+    /**
+     * Set the option given by one command line argument, if it is an optimization option.
+     * @param arg
+     * @return True if the argument was an optimization option
+     */
+    public boolean parseOption(String arg) {
+        int level = ICPassManager.parseLevel(arg);
+        if (level >= 0) {
+            this.level = level;
+            return true;
+        } else if (arg.equals("-Ostats")) {
+            this.stats = true;
+            return true;
+        }
+        return false;
+    }
+
+    public int getLevel() {
+        return this.level;
+    }
+
+    public void setLevel(int level) {
+        if (level < 0 || level > ICPassManager.MAX_LEVEL) {
+            throw new IllegalArgumentException("No optimization level " + level);
+        }
+        this.level = level;
+    }
+
+    public boolean getStats() {
+        return this.stats;
+    }
+
+    public void setStats(boolean stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Generate intermediate code for a syntax tree and optimize it at the level of these
+     * options, reporting the passes if -Ostats was given.
+     * @param tree the syntax tree for the input program
+     * @param report where to write the report of the passes
+     * @return
+     */
+    public ICode genICode(LCSyntaxTree tree, PrintStream report) {
+        ICode iCode = new ICode(tree, ICPassManager.forLevel(this.level));
+        if (this.stats) {
+            iCode.getPasses().writeReport(report);
+        }
+        return iCode;
+    }
+}
@@ -0,0 +1,22 @@
+package edu.uncg.csc439.icode;
+
+/**
+ * This interface is implemented by the optimization passes that ICPassManager runs. A
+ * pass transforms the intermediate code in place, and the code it leaves must mean the
+ * same thing as the code it was given.
+ */
+public interface ICPass {
+
+    /**
+     * Get the name of this pass, used in reports.
+     * @return
+     */
+    String getName();
+
+    /**
+     * Transform the provided ICLines.
+     * @param icLines
+     * @return The number of lines that were changed, added or removed
+     */
+    int run(ICLines icLines);
+}
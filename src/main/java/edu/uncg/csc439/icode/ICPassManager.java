@@ -0,0 +1,166 @@
+package edu.uncg.csc439.icode;
+
+import edu.uncg.csc439.icode.ICOptimization.ICConstantFolding;
+import edu.uncg.csc439.icode.ICOptimization.ICCopyPropagation;
+import edu.uncg.csc439.icode.ICOptimization.ICDeadCodeElimination;
+import edu.uncg.csc439.icode.ICOptimization.ICJumpThreading;
+import edu.uncg.csc439.icode.ICOptimization.ICTempCoalescing;
+import edu.uncg.csc439.icode.ICOptimization.ICUnreachableCode;
+import edu.uncg.csc439.icode.ICOptimization.ICValueNumbering;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class runs an ordered list of optimization passes (see ICPass) over intermediate
+ * code, between ICGenerator and the backends, and keeps the time each pass took and the
+ * number of lines it changed. The standard lists are chosen by optimization level:
+ * <ul>
+ *     <li>0: no passes, so the code is exactly as ICGenerator made it</li>
+ *     <li>1: cheap passes that only look at a line or a block at a time</li>
+ *     <li>2: everything in level 1, plus passes that look at whole functions</li>
+ * </ul>
+ */
+public class ICPassManager {
+
+    //=============== CLASS VARIABLES ===============
+
+    public static final int MAX_LEVEL = 2;
+
+    private final List<ICPass> passes;
+    private final List<PassStats> stats;
+
+    /**
+     * The time one run of a pass took, and the number of lines it changed.
+     */
+    public static class PassStats {
+        private final String name;
+        private final long nanos;
+        private final int changed;
+
+        PassStats(String name, long nanos, int changed) {
+            this.name = name;
+            this.nanos = nanos;
+            this.changed = changed;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getNanos() {
+            return this.nanos;
+        }
+
+        public int getChanged() {
+            return this.changed;
+        }
+    }
+
+    //=============== CONSTRUCTORS ===============
+
+    public ICPassManager() {
+        this.passes = new ArrayList<>();
+        this.stats = new ArrayList<>();
+    }
+
+    /**
+     * Make a pass manager with the standard passes for an optimization level.
+     * @param level
+     * @return
+     */
+    public static ICPassManager forLevel(int level) {
+        if (level < 0 || level > ICPassManager.MAX_LEVEL) {
+            throw new IllegalArgumentException("No optimization level " + level);
+        }
+        ICPassManager passManager = new ICPassManager();
+        if (level >= 1) {
+            passManager.addPass(new ICConstantFolding());
+            passManager.addPass(new ICValueNumbering());
+            passManager.addPass(new ICCopyPropagation());
+            passManager.addPass(new ICJumpThreading());
+        }
+        if (level >= 2) {
+            passManager.addPass(new ICUnreachableCode());
+            passManager.addPass(new ICDeadCodeElimination());
+            // Removing the code after returns leaves more jumps and labels to clean up
+            passManager.addPass(new ICJumpThreading());
+            passManager.addPass(new ICTempCoalescing());
+        }
+        return passManager;
+    }
+
+    //=============== METHODS ===============
+
+    /**
+     * Add a pass to the end of the list.
+     * @param pass
+     * @return This pass manager
+     */
+    public ICPassManager addPass(ICPass pass) {
+        this.passes.add(pass);
+        return this;
+    }
+
+    public List<ICPass> getPasses() {
+        return Collections.unmodifiableList(this.passes);
+    }
+
+    /**
+     * Run every pass, in order, over the provided ICLines.
+     * @param icLines
+     * @return The total number of lines the passes changed
+     */
+    public int run(ICLines icLines) {
+        int total = 0;
+        for (ICPass pass : this.passes) {
+            long start = System.nanoTime();
+            int changed = pass.run(icLines);
+            this.stats.add(new PassStats(pass.getName(), System.nanoTime() - start, changed));
+            total += changed;
+        }
+        return total;
+    }
+
+    /**
+     * Get the statistics of every pass run so far, in the order they ran.
+     * @return
+     */
+    public List<PassStats> getStats() {
+        return Collections.unmodifiableList(this.stats);
+    }
+
+    /**
+     * Write a line for each pass run so far, with its time and the lines it changed.
+     * @param out
+     */
+    public void writeReport(PrintStream out) {
+        out.printf("%-24s %12s %10s%n", "pass", "time (us)", "changed");
+        long totalNanos = 0;
+        int totalChanged = 0;
+        for (PassStats passStats : this.stats) {
+            out.printf("%-24s %12.1f %10d%n", passStats.getName(), passStats.getNanos() / 1000.0,
+                    passStats.getChanged());
+            totalNanos += passStats.getNanos();
+            totalChanged += passStats.getChanged();
+        }
+        out.printf("%-24s %12.1f %10d%n", "total", totalNanos / 1000.0, totalChanged);
+    }
+
+    /**
+     * Parse an optimization level option, written -O0, -O1 or -O2.
+     * @param arg
+     * @return The level, or -1 if arg is not an optimization level option
+     */
+    public static int parseLevel(String arg) {
+        if (arg.length() == 3 && arg.startsWith("-O")) {
+            int level = arg.charAt(2) - '0';
+            if (level >= 0 && level <= ICPassManager.MAX_LEVEL) {
+                return level;
+            }
+        }
+        return -1;
+    }
+}
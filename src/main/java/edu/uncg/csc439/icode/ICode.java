@@ -3,6 +3,10 @@ package edu.uncg.csc439.icode;
 import edu.uncg.csc439.icode.ICCreation.ICGenerator;
 import edu.uncg.csc439.syntaxtree.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * Class for intermediate code. The two most important external interfaces to
  * this code are the constructor and the toString method -- see below for more
@@ -16,6 +20,7 @@ public class ICode {
     //=============== CLASS VARIABLES ===============
 
     private ICLines icLines;
+    private ICPassManager passes;
 
     //=============== CONSTRUCTORS ===============
 
@@ -27,11 +32,37 @@ public class ICode {
      * code in order to produce the target code, and that's hard if you're
      * just storing strings (for example).
      *
+     * The code is not optimized; see ICode(LCSyntaxTree, ICPassManager).
+     *
      * @param tree the syntax tree for the input program
      */
     public ICode(LCSyntaxTree tree) {
+        this(tree, new ICPassManager());
+    }
+
+    /**
+     * Generate intermediate code for a syntax tree, then optimize it with the provided
+     * passes.
+     *
+     * @param tree the syntax tree for the input program
+     * @param passes the optimization passes to run
+     */
+    public ICode(LCSyntaxTree tree, ICPassManager passes) {
         ICGenerator generator = new ICGenerator(tree);
         this.icLines = generator.getProgramLines();
+        this.passes = passes;
+        passes.run(this.icLines);
+    }
+
+    /**
+     * Wrap intermediate code that has already been generated, such as code read back
+     * with readBinary.
+     *
+     * @param icLines the lines of the program
+     */
+    public ICode(ICLines icLines) {
+        this.icLines = icLines;
+        this.passes = new ICPassManager();
     }
 
     //=============== METHODS ===============
@@ -44,6 +75,37 @@ public class ICode {
         return this.icLines;
     }
 
+    /**
+     * Get the passes that optimized this code, with their statistics.
+     *
+     * @return
+     */
+    public ICPassManager getPasses() {
+        return this.passes;
+    }
+
+    /**
+     * Write this code in the binary form (see ICBinary), which can be run or compiled
+     * later without the front end.
+     *
+     * @param out where to write the code
+     * @throws IOException if the code can't be written
+     */
+    public void writeBinary(OutputStream out) throws IOException {
+        ICBinary.from(this.icLines).write(out);
+    }
+
+    /**
+     * Read code written by writeBinary.
+     *
+     * @param in where to read the code from
+     * @return the code
+     * @throws IOException if the code can't be read, or is not in the binary form
+     */
+    public static ICode readBinary(InputStream in) throws IOException {
+        return new ICode(ICBinary.read(in).toICLines());
+    }
+
     /**
      * This performs the important function of turning the internal form
      * of your intermediate code into a text (readable) format.
@@ -22,8 +22,16 @@ public class FCGraph {
      * @param iCode
      */
     public FCGraph(ICode iCode) {
+        this(iCode.getIcLines());
+    }
+
+    /**
+     * Create a flow control graph object (FCGraph) for the provided ICLines object. The
+     * basic blocks hold the same ICLine objects as icLines, in the same order.
+     * @param icLines
+     */
+    public FCGraph(ICLines icLines) {
         this.basicBlocks = new ArrayList<>();
-        ICLines icLines = iCode.getIcLines();
         this.createFCGraph(icLines);
     }
 
@@ -143,6 +143,12 @@ public class MIPSGenerator {
             MIPSLines condBranch = this.genConditionalBranch(icReltJump);
             mipsLines.addMIPSLines(condBranch.getMIPSLineList());
         }
+        // The icLine is a call whose result is returned right away (Generate a tail call)
+        if (icLine instanceof ICFuncCall && this.isTailCall(icLine)) {
+            ICFuncCall icFuncCall = (ICFuncCall)icLine;
+            MIPSLines tailCall = this.genTailCall(icFuncCall);
+            mipsLines.addMIPSLines(tailCall.getMIPSLineList());
+        }
         // The icLIne is a return statement
         if (icLine instanceof ICReturn) {
             ICReturn icReturn = (ICReturn)icLine;
@@ -339,6 +345,11 @@ public class MIPSGenerator {
         MIPSLine setS7Pointer = new MIPSLine("addiu", s7RegName, spRegName, frameSizeStr);
         mipsLines.addMIPSLine(setFpPointer);
         mipsLines.addMIPSLine(setS7Pointer);
+        // Set the label for the function body if the function calls itself as a tail call
+        if (this.hasSelfTailCall(icLines, funcStartLine)) {
+            MIPSLine bodyLabel = new MIPSLine("bf_" + this.mipsFunction.getName());
+            mipsLines.addMIPSLine(bodyLabel);
+        }
         // Return mipsLines
         return mipsLines;
     }
@@ -383,12 +394,30 @@ public class MIPSGenerator {
      */
     private MIPSLines genFunctionEpilogue(ICLines icLines) {
         MIPSLines mipsLines = new MIPSLines();
-        int frameSize = this.stackFrameSize;
-        int relativeLocation = frameSize;
         // Set the label for the function epilogue
         String epilogueLabel = "xf_" + this.mipsFunction.getName();
         MIPSLine labelLine = new MIPSLine(epilogueLabel);
         mipsLines.addMIPSLine(labelLine);
+        // MIPS Lines: Restore the callee-saved registers and pop the stack frame
+        MIPSLines popFrameLines = this.genPopFrame();
+        mipsLines.addMIPSLines(popFrameLines.getMIPSLineList());
+        // MIPS Line: Jump back to the calling procedure
+        String raRegName = MIPSReg.allReg().get(31).getName();
+        MIPSLine jumpBack = new MIPSLine("jr", raRegName);
+        mipsLines.addMIPSLine(jumpBack);
+        // Return mipsLines
+        return mipsLines;
+    }
+
+    /**
+     * Generate the lines in MIPS that restore the callee-saved registers and pop the stack
+     * frame of the current function.
+     * @return
+     */
+    private MIPSLines genPopFrame() {
+        MIPSLines mipsLines = new MIPSLines();
+        int frameSize = this.stackFrameSize;
+        int relativeLocation = frameSize;
         // MIPS Lines: Restore the values for the callee-saved registers
         String spRegName = MIPSReg.allReg().get(29).getName();
         String raRegName = MIPSReg.allReg().get(31).getName();
@@ -409,9 +438,107 @@ public class MIPSGenerator {
         // MIPS Line: Pop the stack frame
         MIPSLine popFrame = new MIPSLine("addiu", spRegName, spRegName, "" + frameSize);
         mipsLines.addMIPSLine(popFrame);
-        // MIPS Line: Jump back to the calling procedure
-        MIPSLine jumpBack = new MIPSLine("jr", raRegName);
-        mipsLines.addMIPSLine(jumpBack);
+        // Return mipsLines
+        return mipsLines;
+    }
+
+    /**
+     * Generate a tail call in MIPS. The arguments are put where the callee expects them, then
+     * the stack frame is popped and the callee is jumped to, so that it returns straight to
+     * the caller of the current function. A tail call of the current function itself keeps
+     * the stack frame and branches back to the start of the function body, so it runs neither
+     * the prologue nor the epilogue. Either way the block ends here, so the values it
+     * holds in registers are saved first, while those registers are still unchanged.
+     * @param icFuncCall
+     * @return
+     */
+    private MIPSLines genTailCall(ICFuncCall icFuncCall) {
+        MIPSLines mipsLines = new MIPSLines();
+        // MIPS Lines: Save the values of the block, since the code after the jump never runs
+        MIPSLines saveValuesLines = this.saveValues();
+        mipsLines.addMIPSLines(saveValuesLines.getMIPSLineList());
+        String funcName = icFuncCall.getFuncName();
+        boolean selfCall = funcName.compareTo("gf_" + this.mipsFunction.getName()) == 0;
+        ArrayList<ICParameterPass> params = this.getCallParameters(icFuncCall);
+        int argCount = params.size();
+        // Find where each argument is now, and the register it has to be moved to
+        ICAddress[] argAdrs = new ICAddress[argCount];
+        MIPSReg[] srcRegs = new MIPSReg[argCount];
+        MIPSReg[] dstRegs = new MIPSReg[argCount];
+        for (int i = 0; i < argCount; i++) {
+            String argName = params.get(i).getAddress();
+            boolean isStrLit = argName.charAt(0) == ICNames.strlitLabel;
+            argAdrs[i] = this.convertTerm(argName, isStrLit);
+            if (argAdrs[i].isParam()) {
+                srcRegs[i] = this.progState.getCanonicalReg(argAdrs[i]);
+            } else if (!argAdrs[i].isLiteral() && !argAdrs[i].isString()) {
+                srcRegs[i] = this.progState.getCurrReg(argAdrs[i]);
+            }
+            if (selfCall) {
+                dstRegs[i] = this.progState.getCanonicalReg(ICAddress.newParam(4, 4 * i));
+            } else {
+                dstRegs[i] = MIPSReg.aReg(i);
+            }
+        }
+        // MIPS Lines: Move the arguments that are in registers. A register is not overwritten
+        // while another argument still has to be moved out of it, and $v1 breaks any cycles.
+        boolean[] pending = new boolean[argCount];
+        int pendingCount = 0;
+        for (int i = 0; i < argCount; i++) {
+            pending[i] = srcRegs[i] != null && srcRegs[i] != dstRegs[i];
+            if (pending[i]) {
+                pendingCount++;
+            }
+        }
+        while (pendingCount > 0) {
+            boolean moved = false;
+            for (int i = 0; i < argCount; i++) {
+                if (pending[i] && !this.isPendingSource(dstRegs[i], srcRegs, pending)) {
+                    mipsLines.addMIPSLine(new MIPSLine("move", dstRegs[i].getName(), srcRegs[i].getName()));
+                    pending[i] = false;
+                    pendingCount--;
+                    moved = true;
+                }
+            }
+            if (!moved) {
+                int first = 0;
+                while (!pending[first]) {
+                    first++;
+                }
+                MIPSReg cycleReg = srcRegs[first];
+                MIPSReg v1Reg = MIPSReg.allReg().get(3);
+                mipsLines.addMIPSLine(new MIPSLine("move", v1Reg.getName(), cycleReg.getName()));
+                for (int i = 0; i < argCount; i++) {
+                    if (pending[i] && srcRegs[i] == cycleReg) {
+                        srcRegs[i] = v1Reg;
+                    }
+                }
+            }
+        }
+        // MIPS Lines: Load the other arguments (these overwrite no register still needed)
+        for (int i = 0; i < argCount; i++) {
+            if (srcRegs[i] != null) {
+                continue;
+            }
+            String dstRegName = dstRegs[i].getName();
+            if (argAdrs[i].isLiteral()) {
+                mipsLines.addMIPSLine(new MIPSLine("li", dstRegName, argAdrs[i].getName()));
+            } else if (argAdrs[i].isString()) {
+                mipsLines.addMIPSLine(new MIPSLine("la", dstRegName, argAdrs[i].getName()));
+            } else {
+                String canLoc = this.progState.getCanonicalLocation(argAdrs[i]);
+                mipsLines.addMIPSLine(new MIPSLine("lw", dstRegName, canLoc));
+            }
+        }
+        // MIPS Lines: Branch back to the function body, or pop the frame and jump to the callee
+        if (selfCall) {
+            String bodyLabel = "bf_" + this.mipsFunction.getName();
+            mipsLines.addMIPSLine(new MIPSLine("b", bodyLabel));
+        } else {
+            MIPSLines popFrameLines = this.genPopFrame();
+            mipsLines.addMIPSLines(popFrameLines.getMIPSLineList());
+            mipsLines.addMIPSLine(new MIPSLine("j", funcName));
+        }
         // Return mipsLines
         return mipsLines;
     }
@@ -790,6 +917,97 @@ public class MIPSGenerator {
         return register;
     }
 
+    /**
+     * Determine if the provided icLine is a tail call that can reuse the stack frame of the
+     * current function. The arguments must all fit in the argument registers, since any others
+     * are passed in the stack frame of the caller.
+     * @param icLine
+     * @return
+     */
+    private boolean isTailCall(ICLine icLine) {
+        ICLines icLines = this.iCode.getIcLines();
+        int index = icLines.getICLinesList().indexOf(icLine);
+        if (icLines.getTailReturn(index) == null) {
+            return false;
+        }
+        ICFuncCall icFuncCall = (ICFuncCall)icLine;
+        try {
+            return Integer.parseInt(icFuncCall.getParsNumber()) <= MIPSReg.NUM_AREG;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Determine if the function that starts with the provided ICLine funcStartLine calls itself
+     * as a tail call.
+     * @param icLines
+     * @param funcStartLine
+     * @return
+     */
+    private boolean hasSelfTailCall(ICLines icLines, ICDirective funcStartLine) {
+        int startIndex = icLines.getICLinesList().indexOf(funcStartLine);
+        int endIndex = this.getIndexOfFunctionEnd(icLines, funcStartLine);
+        for (int index = startIndex; index < endIndex; index++) {
+            ICLine curLine = icLines.getICLine(index);
+            if (curLine instanceof ICFuncCall && this.isTailCall(curLine)) {
+                String funcName = ((ICFuncCall)curLine).getFuncName();
+                if (funcName.compareTo(funcStartLine.getLabel()) == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the parameter passing instructions for the arguments of a function call, with the
+     * first argument first. The arguments are the parameters passed last before the call,
+     * skipping those of any calls made while the arguments were being computed.
+     * @param icFuncCall
+     * @return
+     */
+    private ArrayList<ICParameterPass> getCallParameters(ICFuncCall icFuncCall) {
+        ArrayList<ICParameterPass> params = new ArrayList<>();
+        ICLines icLines = this.iCode.getIcLines();
+        int parsNumber = Integer.parseInt(icFuncCall.getParsNumber());
+        int toSkip = 0;
+        int index = icLines.getICLinesList().indexOf(icFuncCall) - 1;
+        while (index >= 0 && params.size() < parsNumber) {
+            ICLine curLine = icLines.getICLine(index);
+            if (this.enteredFunction(curLine)) {
+                break;
+            }
+            if (curLine instanceof ICFuncCall) {
+                toSkip += Integer.parseInt(((ICFuncCall)curLine).getParsNumber());
+            } else if (curLine instanceof ICParameterPass) {
+                if (toSkip > 0) {
+                    toSkip--;
+                } else {
+                    params.add((ICParameterPass)curLine);
+                }
+            }
+            index--;
+        }
+        return params;
+    }
+
+    /**
+     * Check if a register still has to be moved out of for a pending argument.
+     * @param reg
+     * @param srcRegs
+     * @param pending
+     * @return
+     */
+    private boolean isPendingSource(MIPSReg reg, MIPSReg[] srcRegs, boolean[] pending) {
+        for (int i = 0; i < srcRegs.length; i++) {
+            if (pending[i] && srcRegs[i] == reg) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Save any and all values in registers that need to be saved at the end of a basic block.
      * @return
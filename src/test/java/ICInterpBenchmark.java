@@ -0,0 +1,103 @@
+import edu.uncg.csc439.icinterp.ICInterp;
+import edu.uncg.csc439.icinterp.ICInterpOptions;
+import edu.uncg.csc439.icinterp.ICProgram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+
+/**
+ * Benchmark for the intermediate code interpreter. For each of the programs
+ * in the icbench resources, this reports the time and the number of bytes
+ * allocated per executed IC instruction, and the most memory the program
+ * had allocated at once in the interpreter. This is not a unit test, so it is
+ * run by hand:
+ * <pre>
+ *     java -cp (classes):(test-classes) ICInterpBenchmark [options] [program ...]
+ * </pre>
+ * where the options are the interpreter options from ICInterpOptions.
+ */
+public class ICInterpBenchmark {
+    private static final String[] PROGRAMS = { "loop", "fib", "fib30", "deep", "arrays", "strings" };
+    private static final int WARMUP_RUNS = 5;
+    private static final int TIMED_RUNS = 5;
+
+    /**
+     * Results of running one program.
+     */
+    private static class Result {
+        long instructions;
+        long nanos;
+        long bytes;
+        long peakBytes;
+    }
+
+    /**
+     * Loads one of the benchmark programs from the test resources.
+     *
+     * @param name the name of the program, without the .ic extension
+     * @return the text of the program
+     */
+    private static String loadProgram(String name) throws IOException {
+        try (InputStream in = ICInterpBenchmark.class.getResourceAsStream("/icbench/" + name + ".ic")) {
+            if (in == null) throw new IOException("No benchmark program named " + name);
+            return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * Runs a program once, measuring the time and the allocation done by the
+     * current thread. The program is loaded before measuring starts.
+     *
+     * @param options the interpreter options
+     * @param program the loaded program to run
+     * @param out where the program's output goes
+     * @return the measurements
+     */
+    private static Result runOnce(ICInterpOptions options, ICProgram program, PrintStream out) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+
+        ICInterp context = options.createInterp(program, System.in, out, System.err);
+        Result result = new Result();
+        long startBytes = threads.getThreadAllocatedBytes(tid);
+        long startTime = System.nanoTime();
+        context.executeFunction("gf_main", new LinkedList<>());
+        result.nanos = System.nanoTime() - startTime;
+        result.bytes = threads.getThreadAllocatedBytes(tid) - startBytes;
+        result.instructions = context.getInstructionCount();
+        result.peakBytes = context.getPeakBytes();
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        ICInterpOptions options = new ICInterpOptions();
+        args = options.parse(args);
+        if (args == null) return;
+        String[] programs = (args.length > 0) ? args : PROGRAMS;
+        PrintStream nullOut = new PrintStream(OutputStream.nullOutputStream());
+
+        System.out.printf("%-10s %14s %12s %14s %12s%n", "program", "instructions", "ns/instr", "bytes/instr",
+                "peak bytes");
+        for (String name : programs) {
+            ICProgram program = options.loadProgram(loadProgram(name));
+            Result total = new Result();
+            for (int i = 0; i < WARMUP_RUNS; i++) runOnce(options, program, nullOut);
+            for (int i = 0; i < TIMED_RUNS; i++) {
+                Result r = runOnce(options, program, nullOut);
+                total.instructions += r.instructions;
+                total.nanos += r.nanos;
+                total.bytes += r.bytes;
+                total.peakBytes = Math.max(total.peakBytes, r.peakBytes);
+            }
+            System.out.printf("%-10s %14d %12.2f %14.2f %12d%n", name, total.instructions / TIMED_RUNS,
+                    (double) total.nanos / total.instructions, (double) total.bytes / total.instructions,
+                    total.peakBytes);
+        }
+    }
+}
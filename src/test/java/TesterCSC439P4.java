@@ -1,3 +1,5 @@
+import edu.uncg.csc439.icinterp.ICInterpOptions;
+import org.antlr.v4.runtime.CharStreams;
 import org.junit.jupiter.api.Test;
 import org.opentest4j.AssertionFailedError;
 
@@ -27,7 +29,7 @@ import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 public class TesterCSC439P4 {
     /**
      * The testing engine. Compiles and runs input file using the RunCode class,
-     * capturing standard output to compare with the expected output.
+     * capturing its output to compare with the expected output.
      * Non-matching (failed) tests could provide more useful output, but
      * for now this will have to do.
      *
@@ -40,16 +42,11 @@ public class TesterCSC439P4 {
             String inName = "tests/" + testName + ".in";
             String expName = "tests/" + testName + ".out";
 
-            PrintStream origOut = System.out;
-            PrintStream origErr = System.err;
             ByteArrayOutputStream captureOut = new ByteArrayOutputStream();
-            System.setOut(new PrintStream(captureOut));
-            System.setErr(new PrintStream(captureOut));
-            String[] args = new String[1];
-            args[0] = inName;
-            RunCode.main(args);
-            System.setErr(origErr);
-            System.setOut(origOut);
+            PrintStream capture = new PrintStream(captureOut);
+            RunCode.run(CharStreams.fromFileName(inName), new ICInterpOptions(),
+                    System.in, capture, capture);
+            capture.flush();
             String[] actual = captureOut.toString().split("\\r?\\n");
 
             String[] expected = Files.readAllLines(Paths.get(expName)).toArray(new String[0]);
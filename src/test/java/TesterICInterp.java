@@ -0,0 +1,1047 @@
+import edu.uncg.csc439.icinterp.ICExecutionException;
+import edu.uncg.csc439.icinterp.ICFunction;
+import edu.uncg.csc439.icinterp.ICInterp;
+import edu.uncg.csc439.icinterp.ICLimitException;
+import edu.uncg.csc439.icinterp.ICLoadException;
+import edu.uncg.csc439.icinterp.ICMemory;
+import edu.uncg.csc439.icinterp.ICMemoryException;
+import edu.uncg.csc439.icinterp.ICProfiler;
+import edu.uncg.csc439.icinterp.ICProgram;
+import edu.uncg.csc439.icinterp.ICSnapshot;
+import edu.uncg.csc439.icode.ICBinOprt;
+import edu.uncg.csc439.icode.ICBinary;
+import edu.uncg.csc439.icode.ICDirective;
+import edu.uncg.csc439.icode.ICFuncCall;
+import edu.uncg.csc439.icode.ICLine;
+import edu.uncg.csc439.icode.ICLines;
+import edu.uncg.csc439.icode.ICParameterPass;
+import edu.uncg.csc439.icode.ICReltJump;
+import edu.uncg.csc439.icode.ICReturn;
+import edu.uncg.csc439.icode.ICode;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testing file for the intermediate code interpreter. Unlike the phase
+ * testers, these tests run hand-written intermediate code directly, so they
+ * exercise the interpreter independently of the front end of the compiler.
+ */
+public class TesterICInterp {
+    /**
+     * Recursive Fibonacci, using the "call f, n" form produced by ICGenerator.
+     */
+    private static final String FIB =
+            "gf_fib: .fnStart 0\n" +
+            "\t\tif p4@0 >= 2 goto L1\n" +
+            "\t\treturn4 p4@0\n" +
+            "L1: \n" +
+            "\t\tt4_1 = p4@0 - 1\n" +
+            "\t\tparam4 t4_1\n" +
+            "\t\tt4_2 = call gf_fib, 1\n" +
+            "\t\tt4_3 = p4@0 - 2\n" +
+            "\t\tparam4 t4_3\n" +
+            "\t\tt4_4 = call gf_fib, 1\n" +
+            "\t\tt4_5 = t4_2 + t4_4\n" +
+            "\t\treturn4 t4_5\n" +
+            "\t\t.fnEnd\n" +
+            "gf_main: .fnStart 0\n" +
+            "\t\tparam4 20\n" +
+            "\t\tt4_6 = call gf_fib, 1\n" +
+            "\t\tparam4 t4_6\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * Recursion far deeper than would fit on the Java stack if each IC call
+     * were a Java call.
+     */
+    private static final String DEEP_RECURSION =
+            "gf_count: .fnStart 0\n" +
+            "\t\tif p4@0 > 0 goto L1\n" +
+            "\t\treturn4 0\n" +
+            "L1: \n" +
+            "\t\tt4_1 = p4@0 - 1\n" +
+            "\t\tparam4 t4_1\n" +
+            "\t\tt4_2 = call gf_count, 1\n" +
+            "\t\tt4_3 = t4_2 + 1\n" +
+            "\t\treturn4 t4_3\n" +
+            "\t\t.fnEnd\n" +
+            "gf_main: .fnStart 0\n" +
+            "\t\tparam4 300000\n" +
+            "\t\tt4_4 = call gf_count, 1\n" +
+            "\t\tparam4 t4_4\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * Tail calls: a tail-recursive loop, mutual tail recursion, and a call
+     * that returns its result but can't be a tail call, because the callee
+     * reads an array in the caller's frame.
+     */
+    private static final String TAIL_CALLS =
+            "gf_count: .fnStart 0\n" +
+            "\t\tif p4@0 > 0 goto L1\n" +
+            "\t\treturn4 p4@4\n" +
+            "L1: \n" +
+            "\t\tt4_1 = p4@4 + 2\n" +
+            "\t\tt4_2 = p4@0 - 1\n" +
+            "\t\tparam4 t4_1\n" +
+            "\t\tparam4 t4_2\n" +
+            "\t\tt4_3 = call gf_count, 2\n" +
+            "L2: \n" +
+            "\t\treturn4 t4_3\n" +
+            "\t\t.fnEnd\n" +
+            "gf_even: .fnStart 0\n" +
+            "\t\tif p4@0 > 0 goto L3\n" +
+            "\t\treturn4 1\n" +
+            "L3: \n" +
+            "\t\tt4_1 = p4@0 - 1\n" +
+            "\t\tparam4 t4_1\n" +
+            "\t\tt4_2 = call gf_odd, 1\n" +
+            "\t\treturn4 t4_2\n" +
+            "\t\t.fnEnd\n" +
+            "gf_odd: .fnStart 0\n" +
+            "\t\tif p4@0 > 0 goto L4\n" +
+            "\t\treturn4 0\n" +
+            "L4: \n" +
+            "\t\tt4_1 = p4@0 - 1\n" +
+            "\t\tparam4 t4_1\n" +
+            "\t\tt4_2 = call gf_even, 1\n" +
+            "\t\treturn4 t4_2\n" +
+            "\t\t.fnEnd\n" +
+            "gf_peek: .fnStart 0\n" +
+            "\t\tt4_1 = p4@0 ldidx4 0\n" +
+            "\t\treturn4 t4_1\n" +
+            "\t\t.fnEnd\n" +
+            "gf_box: .fnStart 8\n" +
+            "\t\tl0@0 setsize 1\n" +
+            "\t\tt4_1 = & l0@0\n" +
+            "\t\tt4_1 = 0 stidx4 p4@0\n" +
+            "\t\tparam4 t4_1\n" +
+            "\t\tt4_2 = call gf_peek, 1\n" +
+            "\t\treturn4 t4_2\n" +
+            "\t\t.fnEnd\n" +
+            "gf_main: .fnStart 0\n" +
+            "\t\tparam4 0\n" +
+            "\t\tparam4 300000\n" +
+            "\t\tt4_1 = call gf_count, 2\n" +
+            "\t\tparam4 t4_1\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\tparam4 42\n" +
+            "\t\tt4_2 = call gf_box, 1\n" +
+            "\t\tparam4 t4_2\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\tparam4 300001\n" +
+            "\t\tt4_3 = call gf_even, 1\n" +
+            "\t\tparam4 t4_3\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * A call made while the arguments of another call are being pushed, so
+     * the operand stack holds arguments for both at once.
+     */
+    private static final String NESTED_CALLS =
+            "gf_sub: .fnStart 0\n" +
+            "\t\tt4_1 = p4@0 - p4@4\n" +
+            "\t\treturn4 t4_1\n" +
+            "\t\t.fnEnd\n" +
+            "gf_sq: .fnStart 0\n" +
+            "\t\tt4_2 = p4@0 * p4@0\n" +
+            "\t\treturn4 t4_2\n" +
+            "\t\t.fnEnd\n" +
+            "gf_main: .fnStart 0\n" +
+            "\t\tparam4 3\n" +
+            "\t\tparam4 7\n" +
+            "\t\tt4_3 = call gf_sq, 1\n" +
+            "\t\tparam4 t4_3\n" +
+            "\t\tt4_4 = call gf_sub, 2\n" +
+            "\t\tparam4 t4_4\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * A loop over a local int array and a char array printed as a string.
+     */
+    private static final String ARRAYS =
+            "gf_main: .fnStart 64\n" +
+            "\t\tl0@0 setsize 10\n" +
+            "\t\tl4@44 = 0\n" +
+            "\t\tl4@48 = 0\n" +
+            "\t\tl0@52 setsize 4\n" +
+            "\t\tt4_1 = & l0@0\n" +
+            "L1: \n" +
+            "\t\tif l4@44 >= 10 goto L2\n" +
+            "\t\tt4_2 = l4@44 * l4@44\n" +
+            "\t\tt4_1 = l4@44 stidx4 t4_2\n" +
+            "\t\tl4@44 = l4@44 + 1\n" +
+            "\t\tgoto L1\n" +
+            "L2: \n" +
+            "\t\tl4@44 = 0\n" +
+            "\t\tt4_3 = # t4_1\n" +
+            "L3: \n" +
+            "\t\tif l4@44 >= t4_3 goto L4\n" +
+            "\t\tt4_4 = t4_1 ldidx4 l4@44\n" +
+            "\t\tl4@48 = l4@48 + t4_4\n" +
+            "\t\tl4@44 = l4@44 + 1\n" +
+            "\t\tgoto L3\n" +
+            "L4: \n" +
+            "\t\tparam4 l4@48\n" +
+            "\t\tcall gf_printd,1\n" +
+            "\t\tt4_5 = & l0@52\n" +
+            "\t\tt1_1 = narrow 32\n" +
+            "\t\tt4_5 = 0 stidx1 t1_1\n" +
+            "\t\tt4_5 = 1 stidx1 79\n" +
+            "\t\tt4_5 = 2 stidx1 75\n" +
+            "\t\tt4_5 = 3 stidx1 0\n" +
+            "\t\tparam4 t4_5\n" +
+            "\t\tcall gf_prints,1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * Extreme int values, and strings that end early or fill their array.
+     */
+    private static final String PRINTING =
+            "gf_main: .fnStart 12\n" +
+            "\t\tt4_2 = 0 - 2147483647\n" +
+            "\t\tt4_2 = t4_2 - 1\n" +
+            "\t\tparam4 t4_2\n" +
+            "\t\tcall gf_printd,1\n" +
+            "\t\tparam4 0\n" +
+            "\t\tcall gf_printd,1\n" +
+            "\t\tparam4 2147483647\n" +
+            "\t\tcall gf_printd,1\n" +
+            "\t\tt4_2 = 0 - 7\n" +
+            "\t\tparam4 t4_2\n" +
+            "\t\tcall gf_printd,1\n" +
+            "\t\tl0@0 setsize 5\n" +
+            "\t\tt4_1 = & l0@0\n" +
+            "\t\tt4_1 = 0 stidx1 104\n" +
+            "\t\tt4_1 = 1 stidx1 105\n" +
+            "\t\tt4_1 = 2 stidx1 0\n" +
+            "\t\tt4_1 = 3 stidx1 120\n" +
+            "\t\tparam4 t4_1\n" +
+            "\t\tcall gf_prints,1\n" +
+            "\t\tt4_1 = 2 stidx1 33\n" +
+            "\t\tt4_1 = 4 stidx1 33\n" +
+            "\t\tparam4 t4_1\n" +
+            "\t\tcall gf_prints,1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * Byte and int arithmetic, comparisons and conditional jumps.
+     */
+    private static final String ARITH =
+            "gf_main: .fnStart 0\n" +
+            "\t\tt1_1 = 100\n" +
+            "\t\tt1_2 = t1_1 + t1_1\n" +
+            "\t\tt4_1 = widen t1_2\n" +
+            "\t\tparam4 t4_1\n" +
+            "\t\tcall gf_printd,1\n" +
+            "\t\tparam4 S0_1\n" +
+            "\t\tcall gf_prints,1\n" +
+            "\t\tt4_2 = 17 % 5\n" +
+            "\t\tt4_3 = 17 / 5\n" +
+            "\t\tt4_4 = t4_2 * t4_3\n" +
+            "\t\tt4_5 = - t4_4\n" +
+            "\t\tparam4 t4_5\n" +
+            "\t\tcall gf_printd,1\n" +
+            "\t\tparam4 S0_1\n" +
+            "\t\tcall gf_prints,1\n" +
+            "\t\tt4_6 = t4_2 < t4_3\n" +
+            "\t\tif t4_6 goto L1\n" +
+            "\t\tparam4 7\n" +
+            "\t\tcall gf_printd,1\n" +
+            "L1: \n" +
+            "\t\tifFalse t4_6 goto L2\n" +
+            "\t\tparam4 8\n" +
+            "\t\tcall gf_printd,1\n" +
+            "L2: \n" +
+            "\t\t.fnEnd\n" +
+            "S0_1: .dw 2\n" +
+            "\t\t.db 10, 0\n";
+
+    /**
+     * Reads a temporary before writing it, in each of two calls, so the
+     * second call reads it after the first one wrote it.
+     */
+    private static final String UNSET_TEMP =
+            "gf_f: .fnStart 0\n" +
+            "\t\tt4_2 = t4_1 + 1\n" +
+            "\t\tt4_1 = 5\n" +
+            "\t\treturn4 t4_2\n" +
+            "\t\t.fnEnd\n" +
+            "gf_main: .fnStart 0\n" +
+            "\t\tt4_3 = call gf_f, 0\n" +
+            "\t\tparam4 t4_3\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\tt4_3 = call gf_f, 0\n" +
+            "\t\tparam4 t4_3\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * Narrowing and byte arithmetic wrap around, and widening sign-extends.
+     */
+    private static final String NARROWING =
+            "gf_main: .fnStart 4\n" +
+            "\t\tt1_1 = narrow 300\n" +
+            "\t\tt4_1 = t1_1 + 1000\n" +
+            "\t\tparam4 t4_1\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\tt1_2 = - t1_1\n" +
+            "\t\tt1_3 = t1_2 - 100\n" +
+            "\t\tt4_2 = widen t1_3\n" +
+            "\t\tparam4 t4_2\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\tl1@0 = t1_3\n" +
+            "\t\tt4_3 = l1@0 < 0\n" +
+            "\t\tparam4 t4_3\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * Global variables of both widths, stored and read back through a
+     * function call.
+     */
+    private static final String GLOBALS =
+            "gf_bump: .fnStart 0\n" +
+            "\t\tt4_1 = g4_count + p4@0\n" +
+            "\t\tg4_count = t4_1\n" +
+            "\t\treturn\n" +
+            "\t\t.fnEnd\n" +
+            "gf_main: .fnStart 0\n" +
+            "\t\tg4_count = 5\n" +
+            "\t\tt1_1 = narrow 65\n" +
+            "\t\tg1_c = t1_1\n" +
+            "\t\tparam4 37\n" +
+            "\t\tcall gf_bump, 1\n" +
+            "\t\tparam4 g4_count\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\tt4_2 = widen g1_c\n" +
+            "\t\tparam4 t4_2\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\tparam4 g4_last\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n" +
+            "g4_first: .dw 1\n" +
+            "g4_count: .dw 0\n" +
+            "g1_c: .db 0\n" +
+            "g4_last: .dw 99\n";
+
+    /**
+     * Global setup in one function, and a main that uses it, for snapshots.
+     */
+    private static final String SETUP =
+            "gf_init: .fnStart 0\n" +
+            "\t\tg4_count = 40\n" +
+            "\t\t.fnEnd\n" +
+            "gf_main: .fnStart 0\n" +
+            "\t\tt4_1 = call gf_read, 0\n" +
+            "\t\tt4_2 = g4_count + t4_1\n" +
+            "\t\tg4_count = t4_2\n" +
+            "\t\tparam4 g4_count\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n" +
+            "g4_count: .dw 0\n";
+
+    /**
+     * Reading two integers from the input.
+     */
+    private static final String READ_INTS =
+            "gf_main: .fnStart 0\n" +
+            "\t\tt4_1 = call gf_read, 0\n" +
+            "\t\tt4_2 = call gf_read, 0\n" +
+            "\t\tt4_3 = t4_1 + t4_2\n" +
+            "\t\tparam4 t4_3\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * Reading integers and lines from the input.
+     */
+    private static final String READ =
+            "gf_main: .fnStart 28\n" +
+            "\t\tt4_1 = call gf_read, 0\n" +
+            "\t\tt4_2 = call gf_read, 0\n" +
+            "\t\tt4_3 = t4_1 + t4_2\n" +
+            "\t\tparam4 t4_3\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\tl0@4 setsize 20\n" +
+            "\t\tt4_4 = & l0@4\n" +
+            "\t\tparam4 t4_4\n" +
+            "\t\tcall gf_readline, 1\n" +
+            "\t\tparam4 t4_4\n" +
+            "\t\tcall gf_readline, 1\n" +
+            "\t\tparam4 t4_4\n" +
+            "\t\tcall gf_prints, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * Reads from and writes to an array through a null pointer.
+     */
+    private static final String NULL_READ =
+            "gf_main: .fnStart 4\n" +
+            "\t\tl4@0 = 0\n" +
+            "\t\tt4_1 = l4@0 ldidx4 0\n" +
+            "\t\tparam4 t4_1\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+    private static final String NULL_WRITE =
+            "gf_main: .fnStart 4\n" +
+            "\t\tl4@0 = 0\n" +
+            "\t\tl4@0 = 0 stidx4 5\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * Reads an array before its start (a[-3]), and writes just past its end.
+     * The array fills the whole frame, so both accesses leave its segment.
+     */
+    private static final String NEGATIVE_INDEX =
+            "gf_main: .fnStart 20\n" +
+            "\t\tl0@0 setsize 4\n" +
+            "\t\tt4_1 = & l0@0\n" +
+            "\t\tt4_2 = - 3\n" +
+            "\t\tt4_3 = t4_1 ldidx4 t4_2\n" +
+            "\t\tparam4 t4_3\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+    private static final String PAST_END_INDEX =
+            "gf_main: .fnStart 20\n" +
+            "\t\tl0@0 setsize 4\n" +
+            "\t\tt4_1 = & l0@0\n" +
+            "\t\tt4_1 = 4 stidx4 7\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * A local array of a million ints, which is more than fits in a segment.
+     */
+    private static final String BIG_ARRAY =
+            "gf_main: .fnStart 4000012\n" +
+            "\t\tl0@0 setsize 1000000\n" +
+            "\t\tt4_1 = & l0@0\n" +
+            "\t\tl4@4000004 = 0\n" +
+            "L1: \n" +
+            "\t\tif l4@4000004 >= 1000000 goto L2\n" +
+            "\t\tt4_1 = l4@4000004 stidx4 l4@4000004\n" +
+            "\t\tl4@4000004 = l4@4000004 + 1\n" +
+            "\t\tgoto L1\n" +
+            "L2: \n" +
+            "\t\tt4_2 = t4_1 ldidx4 999999\n" +
+            "\t\tparam4 t4_2\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * A loop that never ends.
+     */
+    private static final String INFINITE_LOOP =
+            "gf_main: .fnStart 4\n" +
+            "\t\tl4@0 = 0\n" +
+            "L1: \n" +
+            "\t\tl4@0 = l4@0 + 1\n" +
+            "\t\tgoto L1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * Runs intermediate code starting at gf_main with every memory model,
+     * dispatch strategy and execution tier, checking that they all produce
+     * the same output.
+     *
+     * @param code the intermediate code to run
+     * @param input the text to provide as standard input
+     * @return the output of the program
+     */
+    private static String runIC(String code, String input) {
+        String output = null;
+        for (ICMemory.Model model : ICMemory.Model.values()) {
+            for (ICInterp.Dispatch dispatch : ICInterp.Dispatch.values()) {
+                for (ICInterp.Tier tier : ICInterp.Tier.values()) {
+                    String thisOutput = runIC(code, input, model, dispatch, tier);
+                    if (output != null)
+                        assertEquals(output, thisOutput,
+                                "Output differs with " + model + " memory, " + dispatch + " dispatch, " + tier + " tier");
+                    output = thisOutput;
+                }
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Runs intermediate code starting at gf_main, with the given standard
+     * input, and returns everything that the program printed.
+     *
+     * @param code the intermediate code to run
+     * @param input the text to provide as standard input
+     * @param model the memory model to use
+     * @return the output of the program
+     */
+    private static String runIC(String code, String input, ICMemory.Model model) {
+        return runIC(code, input, model, ICInterp.Dispatch.FUSED, ICInterp.Tier.TIERED);
+    }
+
+    /**
+     * Runs intermediate code starting at gf_main, with the given standard
+     * input, and returns everything that the program printed.
+     *
+     * @param code the intermediate code to run
+     * @param input the text to provide as standard input
+     * @param model the memory model to use
+     * @param dispatch the dispatch strategy to use
+     * @param tier the execution tier to use
+     * @return the output of the program
+     */
+    private static String runIC(String code, String input, ICMemory.Model model, ICInterp.Dispatch dispatch,
+                                ICInterp.Tier tier) {
+        return runIC(ICProgram.load(code, model), input, dispatch, tier);
+    }
+
+    /**
+     * Runs a loaded program starting at gf_main, with the given standard
+     * input, and returns everything that the program printed.
+     *
+     * @param program the program to run
+     * @param input the text to provide as standard input
+     * @param dispatch the dispatch strategy to use
+     * @param tier the execution tier to use
+     * @return the output of the program
+     */
+    private static String runIC(ICProgram program, String input, ICInterp.Dispatch dispatch, ICInterp.Tier tier) {
+        ByteArrayOutputStream captureOut = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(captureOut);
+        ICInterp context = new ICInterp(program, new ByteArrayInputStream(input.getBytes()), out, System.err);
+        context.setDispatch(dispatch);
+        context.setTier(tier);
+        context.executeFunction("gf_main", new LinkedList<>());
+        out.flush();
+        return captureOut.toString();
+    }
+
+    /**
+     * Recursive calls, parameters and return values.
+     */
+    @Test
+    public void recursiveCalls() {
+        assertEquals("6765", runIC(FIB, ""));
+    }
+
+    /**
+     * Deep recursion is limited by memory, not by the Java stack.
+     */
+    @Test
+    public void deepRecursion() {
+        assertEquals("300000", runIC(DEEP_RECURSION, "", ICMemory.Model.LINEAR));
+    }
+
+    /**
+     * Deep recursion in compiled code falls back to the interpreter before
+     * the Java stack runs out.
+     */
+    @Test
+    public void deepRecursionCompiled() {
+        assertEquals("300000", runIC(DEEP_RECURSION, "", ICMemory.Model.LINEAR,
+                ICInterp.Dispatch.FUSED, ICInterp.Tier.COMPILED));
+    }
+
+    /**
+     * Tail calls run in the caller's record, so tail recursion doesn't add
+     * to the call depth. Compiled code only turns a function's tail calls
+     * of itself into loops, so mutual recursion is only checked in the
+     * interpreter.
+     */
+    @Test
+    public void tailCalls() {
+        for (ICInterp.Dispatch dispatch : ICInterp.Dispatch.values()) {
+            for (ICInterp.Tier tier : ICInterp.Tier.values()) {
+                String program = (tier == ICInterp.Tier.INTERP) ? TAIL_CALLS
+                        : TAIL_CALLS.replace("\t\tparam4 300001\n", "\t\tparam4 5\n");
+                ByteArrayOutputStream captureOut = new ByteArrayOutputStream();
+                PrintStream out = new PrintStream(captureOut);
+                ICInterp context = new ICInterp(ICProgram.load(program, ICMemory.Model.LINEAR), System.in,
+                        out, System.err);
+                context.setDispatch(dispatch);
+                context.setTier(tier);
+                context.setMaxDepth(10);
+                runMain(context);
+                out.flush();
+                assertEquals("600000420", captureOut.toString(), dispatch + " dispatch, " + tier + " tier");
+            }
+        }
+    }
+
+    /**
+     * Arguments of different calls sharing the operand stack.
+     */
+    @Test
+    public void nestedCalls() {
+        assertEquals("46", runIC(NESTED_CALLS, ""));
+    }
+
+    /**
+     * Local arrays, indexed loads and stores, array length and strings.
+     */
+    @Test
+    public void arrays() {
+        assertEquals("285 OK", runIC(ARRAYS, ""));
+    }
+
+    /**
+     * Arithmetic in both widths and all the conditional jump forms.
+     */
+    @Test
+    public void arithmetic() {
+        assertEquals("-56\n-6\n8", runIC(ARITH, ""));
+    }
+
+    /**
+     * Byte values are narrowed as soon as they are produced.
+     */
+    @Test
+    public void narrowing() {
+        assertEquals("10441120", runIC(NARROWING, ""));
+    }
+
+    /**
+     * A temporary that has not been written in the current call holds
+     * ERR_VAL (999999999).
+     */
+    @Test
+    public void unsetTemporaries() {
+        assertEquals("10000000001000000000", runIC(UNSET_TEMP, ""));
+    }
+
+    /**
+     * Globals are read from their own location, not from the start of the
+     * data segment.
+     */
+    @Test
+    public void globals() {
+        assertEquals("426599", runIC(GLOBALS, ""));
+    }
+
+    /**
+     * The linear memory model can hold arrays bigger than a segment.
+     */
+    @Test
+    public void bigArray() {
+        assertEquals("999999", runIC(BIG_ARRAY, "", ICMemory.Model.LINEAR));
+    }
+
+    /**
+     * The gf_read and gf_readline builtins.
+     */
+    @Test
+    public void reading() {
+        assertEquals("42hello world", runIC(READ, "12 30\nhello world\n"));
+        // The last int or line may end the input without a newline
+        assertEquals("42", runIC(READ_INTS, "12 30"));
+        assertEquals("42hello world", runIC(READ, "12 30\nhello world"));
+    }
+
+    /**
+     * Signed numbers and \r\n line endings, read from a stream and from a
+     * file (which is memory mapped).
+     */
+    @Test
+    public void readingFromFile() throws IOException {
+        String input = "  +12\t-30\r\nhello world\r\n";
+        assertEquals("-18hello world", runIC(READ, input));
+
+        Path file = Files.createTempFile("icinput", ".txt");
+        try {
+            Files.write(file, input.getBytes());
+            ByteArrayOutputStream captureOut = new ByteArrayOutputStream();
+            try (FileInputStream in = new FileInputStream(file.toFile())) {
+                ICInterp context = new ICInterp(ICProgram.load(READ, ICMemory.Model.SEGMENTED), in,
+                        new PrintStream(captureOut), System.err);
+                runMain(context);
+            }
+            assertEquals("-18hello world", captureOut.toString());
+        } finally {
+            Files.delete(file);
+        }
+
+        assertThrows(ICExecutionException.class, () -> runIC(READ, "12 x30\n"));
+        assertThrows(ICExecutionException.class, () -> runIC(READ, "12 2147483648\n"));
+    }
+
+    /**
+     * Every function, and every builtin, is described when the program is
+     * loaded.
+     */
+    @Test
+    public void functionDescriptors() {
+        ICProgram program = ICProgram.load(NESTED_CALLS, ICMemory.Model.SEGMENTED);
+        assertEquals(3, program.getFunctions().size());
+        ICFunction sub = program.getFunction("gf_sub");
+        assertEquals(0, sub.entry);
+        assertEquals(3, sub.end);
+        assertEquals(2, sub.paramCount);
+        assertEquals(1, sub.regs);
+        assertFalse(sub.isIntrinsic());
+        assertEquals(0, program.getFunction("gf_main").paramCount);
+        assertTrue(program.getFunction("gf_printd").isIntrinsic());
+        assertNull(program.getFunction("gf_missing"));
+        assertEquals(64, ICProgram.load(ARRAYS, ICMemory.Model.SEGMENTED).getFunction("gf_main").frameSize);
+    }
+
+    /**
+     * Jumps to undefined labels and calls to undefined functions are all
+     * reported when the program is loaded, even if they are never reached.
+     */
+    @Test
+    public void undefinedTargets() {
+        String code =
+                "gf_main: .fnStart 0\n" +
+                "\t\tgoto L2\n" +
+                "\t\tif t4_1 > 0 goto L9\n" +
+                "\t\tcall gf_missing, 0\n" +
+                "L2: \n" +
+                "\t\tcall L2, 0\n" +
+                "\t\t.fnEnd\n";
+        ICLoadException e = assertThrows(ICLoadException.class,
+                () -> ICProgram.load(code, ICMemory.Model.SEGMENTED));
+        assertEquals(List.of("Line 3: Unknown label L9", "Line 4: Unknown function gf_missing",
+                "Line 6: L2 is not a function"), e.getProblems());
+    }
+
+    /**
+     * The profiler counts calls and instructions, in every tier, and its
+     * collapsed stacks add up to everything that was executed.
+     */
+    @Test
+    public void profiling() {
+        for (ICInterp.Tier tier : ICInterp.Tier.values()) {
+            ICInterp context = quietInterp(FIB, ICMemory.Model.SEGMENTED);
+            context.setTier(tier);
+            ICProfiler profiler = new ICProfiler(context.getProgram());
+            context.setProfiler(profiler);
+            runMain(context);
+
+            long total = context.getInstructionCount();
+            assertEquals(21891, profiler.getCalls("gf_fib"));
+            assertEquals(1, profiler.getCalls("gf_printd"));
+            assertEquals(21891, profiler.getLineCount(1));
+            assertEquals(total, profiler.getInclusive("gf_main"));
+            assertEquals(total, profiler.getExclusive("gf_main") + profiler.getExclusive("gf_fib"));
+            assertEquals(profiler.getExclusive("gf_fib"), profiler.getInclusive("gf_fib"));
+
+            ByteArrayOutputStream stacks = new ByteArrayOutputStream();
+            profiler.writeCollapsedStacks(new PrintStream(stacks));
+            long stackTotal = 0;
+            for (String line : stacks.toString().split("\n")) {
+                assertTrue(line.startsWith("gf_main"), line);
+                stackTotal += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+            }
+            assertEquals(total, stackTotal);
+        }
+    }
+
+    /**
+     * Output is the same however much of it is buffered.
+     */
+    @Test
+    public void printing() {
+        String expected = "-214748364802147483647-7hihi!x!";
+        assertEquals(expected, runIC(PRINTING, ""));
+        for (int size : new int[] {0, 1, 7}) {
+            for (ICMemory.Model model : ICMemory.Model.values()) {
+                ByteArrayOutputStream captureOut = new ByteArrayOutputStream();
+                ICInterp context = new ICInterp(ICProgram.load(PRINTING, model), System.in,
+                        new PrintStream(captureOut), System.err);
+                context.setOutputBufferSize(size);
+                runMain(context);
+                assertEquals(expected, captureOut.toString(), "buffer size " + size);
+            }
+        }
+    }
+
+    /**
+     * One loaded program can be run by several interpreters at once, each
+     * with its own memory and output, in every tier.
+     */
+    @Test
+    public void concurrentRuns() throws Exception {
+        ICProgram program = ICProgram.load(FIB, ICMemory.Model.SEGMENTED);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                ICInterp.Tier tier = ICInterp.Tier.values()[i % ICInterp.Tier.values().length];
+                results.add(pool.submit(() -> runIC(program, "", ICInterp.Dispatch.FUSED, tier)));
+            }
+            for (Future<String> result : results)
+                assertEquals("6765", result.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Interpreters forked from a snapshot start with the memory it saved,
+     * and don't see each other's changes or those of the interpreter it was
+     * taken from.
+     */
+    @Test
+    public void snapshots() {
+        for (ICMemory.Model model : ICMemory.Model.values()) {
+            ICProgram program = ICProgram.load(SETUP, model);
+            ByteArrayOutputStream setupOut = new ByteArrayOutputStream();
+            ICInterp setup = new ICInterp(program, new ByteArrayInputStream("100".getBytes()),
+                    new PrintStream(setupOut), System.err);
+            setup.executeFunction("gf_init", new LinkedList<>());
+            ICSnapshot snapshot = setup.snapshot();
+            runMain(setup);
+            assertEquals("140", setupOut.toString(), model.toString());
+
+            String[] inputs = {"1 1", "2"};
+            String[] outputs = {"4142", "42"};
+            for (int i = 0; i < inputs.length; i++) {
+                ByteArrayOutputStream forkOut = new ByteArrayOutputStream();
+                ICInterp fork = snapshot.fork(new ByteArrayInputStream(inputs[i].getBytes()),
+                        new PrintStream(forkOut), System.err);
+                int runs = inputs[i].split(" ").length;
+                for (int run = 0; run < runs; run++) runMain(fork);
+                assertEquals(outputs[i], forkOut.toString(), model.toString());
+            }
+        }
+    }
+
+    /**
+     * Code written in the binary form reads back as the same lines, of the
+     * same classes, and runs the same as its text.
+     */
+    @Test
+    public void binaryCode() throws IOException {
+        ICLines lines = new ICLines();
+        ICDirective fibStart = new ICDirective(ICDirective.fnStart, "0");
+        fibStart.setLabel("gf_fib");
+        lines.addLine(fibStart);
+        lines.addLine(new ICReltJump(true, "p4@0", ">=", "2", "L1"));
+        lines.addLine(new ICReturn(ICReturn.returnInt, "p4@0"));
+        ICLine l1 = new ICLine();
+        l1.setLabel("L1");
+        lines.addLine(l1);
+        lines.addLine(new ICBinOprt("t4_1", "-", "p4@0", "1"));
+        lines.addLine(new ICParameterPass(ICParameterPass.paramInt, "t4_1"));
+        lines.addLine(new ICFuncCall("t4_2", "gf_fib", "1"));
+        lines.addLine(new ICBinOprt("t4_3", "-", "p4@0", "2"));
+        lines.addLine(new ICParameterPass(ICParameterPass.paramInt, "t4_3"));
+        lines.addLine(new ICFuncCall("t4_4", "gf_fib", "1"));
+        lines.addLine(new ICBinOprt("t4_5", "+", "t4_2", "t4_4"));
+        lines.addLine(new ICReturn(ICReturn.returnInt, "t4_5"));
+        lines.addLine(new ICDirective(ICDirective.fnEnd, ""));
+        ICDirective mainStart = new ICDirective(ICDirective.fnStart, "0");
+        mainStart.setLabel("gf_main");
+        lines.addLine(mainStart);
+        lines.addLine(new ICParameterPass(ICParameterPass.paramInt, "S0_1"));
+        lines.addLine(new ICFuncCall("", "gf_prints", "1"));
+        lines.addLine(new ICParameterPass(ICParameterPass.paramInt, "15"));
+        lines.addLine(new ICFuncCall("t4_1", "gf_fib", "1"));
+        lines.addLine(new ICParameterPass(ICParameterPass.paramInt, "t4_1"));
+        lines.addLine(new ICFuncCall("", "gf_printd", "1"));
+        lines.addLine(new ICDirective(ICDirective.fnEnd, ""));
+        ICDirective strLen = new ICDirective(ICDirective.definedWord, "3");
+        strLen.setLabel("S0_1");
+        lines.addLine(strLen);
+        lines.addLine(new ICDirective(ICDirective.definedByte, new ArrayList<>(List.of("102", "61", "0"))));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ICode(lines).writeBinary(bytes);
+        ICode read = ICode.readBinary(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(lines.toString(), read.toString());
+        for (int i = 0; i < lines.getSize(); i++)
+            assertEquals(lines.getICLine(i).getClass(), read.getIcLines().getICLine(i).getClass());
+        assertFalse(((ICFuncCall) read.getIcLines().getICLine(15)).returnsValue());
+        assertEquals(ICDirective.definedByte, ((ICDirective) read.getIcLines().getICLine(22)).getDirectiveType());
+
+        ICBinary binary = ICBinary.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(Integer.valueOf(4), binary.getLabels().get("L1"));
+        for (ICMemory.Model model : ICMemory.Model.values()) {
+            String text = runIC(ICProgram.load(lines.toString(), model), "", ICInterp.Dispatch.FUSED,
+                    ICInterp.Tier.TIERED);
+            assertEquals("f=610", text);
+            for (ICInterp.Tier tier : ICInterp.Tier.values()) {
+                assertEquals(text, runIC(ICProgram.load(binary, model), "", ICInterp.Dispatch.FUSED, tier));
+            }
+        }
+
+        InputStream notBinary = new ByteArrayInputStream(lines.toString().getBytes());
+        assertThrows(IOException.class, () -> ICBinary.read(notBinary));
+
+        // Input that ends anywhere before the end of the program
+        byte[] whole = bytes.toByteArray();
+        for (int length = 0; length < whole.length; length++) {
+            InputStream truncated = new ByteArrayInputStream(Arrays.copyOf(whole, length));
+            IOException e = assertThrows(IOException.class, () -> ICBinary.read(truncated));
+            assertEquals("Truncated binary intermediate code", e.getMessage());
+        }
+    }
+
+    /**
+     * Runs gf_main with the given interpreter, discarding its output.
+     *
+     * @param context the interpreter
+     */
+    private static void runMain(ICInterp context) {
+        context.executeFunction("gf_main", new LinkedList<>());
+    }
+
+    /**
+     * Creates an interpreter whose output is discarded.
+     *
+     * @param code the intermediate code to run
+     * @param model the memory model to use
+     * @return the interpreter
+     */
+    private static ICInterp quietInterp(String code, ICMemory.Model model) {
+        return new ICInterp(ICProgram.load(code, model), System.in,
+                new PrintStream(OutputStream.nullOutputStream()), System.err);
+    }
+
+    /**
+     * Memory is counted as frames are allocated and freed, in every memory
+     * model and tier, and a limit just below the peak stops the program.
+     */
+    @Test
+    public void memoryLimit() {
+        for (ICMemory.Model model : ICMemory.Model.values()) {
+            for (ICInterp.Tier tier : ICInterp.Tier.values()) {
+                String where = model + " " + tier;
+                ICInterp context = quietInterp(FIB, model);
+                context.setTier(tier);
+                long start = context.getLiveBytes();
+                runMain(context);
+                assertEquals(start, context.getLiveBytes(), where);
+                long peak = context.getPeakBytes();
+                // Compiled code keeps fib's parameter in a JVM local
+                if (tier == ICInterp.Tier.COMPILED) continue;
+                assertTrue(peak >= start + 20*4, where + " peak " + peak);
+
+                ICInterp fits = quietInterp(FIB, model);
+                fits.setTier(tier);
+                fits.setMemoryLimit(peak);
+                runMain(fits);
+                assertEquals(peak, fits.getPeakBytes(), where);
+
+                ICInterp limited = quietInterp(FIB, model);
+                limited.setTier(tier);
+                limited.setMemoryLimit(peak - 1);
+                ICLimitException e = assertThrows(ICLimitException.class, () -> runMain(limited));
+                assertEquals(ICLimitException.Limit.MEMORY, e.getLimit(), where);
+                assertTrue(limited.getPeakBytes() < peak, where);
+            }
+        }
+    }
+
+    /**
+     * An instruction budget stops an infinite loop, whether it is
+     * interpreted or compiled.
+     */
+    @Test
+    public void instructionBudget() {
+        for (ICInterp.Tier tier : ICInterp.Tier.values()) {
+            ICInterp context = quietInterp(INFINITE_LOOP, ICMemory.Model.SEGMENTED);
+            context.setTier(tier);
+            context.setInstructionBudget(1000000);
+            ICLimitException e = assertThrows(ICLimitException.class, () -> runMain(context));
+            assertEquals(ICLimitException.Limit.INSTRUCTIONS, e.getLimit());
+            long count = context.getInstructionCount();
+            assertTrue((count >= 1000000) && (count < 1000010), tier + " tier ran " + count + " instructions");
+        }
+    }
+
+    /**
+     * A time limit stops an infinite loop.
+     */
+    @Test
+    public void timeLimit() {
+        ICInterp context = quietInterp(INFINITE_LOOP, ICMemory.Model.SEGMENTED);
+        context.setTimeLimit(100);
+        ICLimitException e = assertThrows(ICLimitException.class, () -> runMain(context));
+        assertEquals(ICLimitException.Limit.DEADLINE, e.getLimit());
+    }
+
+    /**
+     * A program can be cancelled from another thread.
+     */
+    @Test
+    public void cancel() throws InterruptedException {
+        ICInterp context = quietInterp(INFINITE_LOOP, ICMemory.Model.SEGMENTED);
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                // Cancel right away
+            }
+            context.cancel();
+        });
+        canceller.start();
+        ICLimitException e = assertThrows(ICLimitException.class, () -> runMain(context));
+        assertEquals(ICLimitException.Limit.CANCELLED, e.getLimit());
+        canceller.join();
+    }
+
+    /**
+     * Running out of call depth and bad memory accesses are reported with
+     * exceptions rather than by exiting.
+     */
+    @Test
+    public void executionErrors() {
+        ICInterp deep = quietInterp(DEEP_RECURSION, ICMemory.Model.LINEAR);
+        deep.setMaxDepth(1000);
+        ICLimitException e = assertThrows(ICLimitException.class, () -> runMain(deep));
+        assertEquals(ICLimitException.Limit.CALL_DEPTH, e.getLimit());
+
+        ICInterp big = quietInterp(BIG_ARRAY, ICMemory.Model.SEGMENTED);
+        assertThrows(ICMemoryException.class, () -> runMain(big));
+
+        for (String code : new String[] {NULL_READ, NULL_WRITE}) {
+            for (ICMemory.Model model : ICMemory.Model.values()) {
+                for (ICInterp.Dispatch dispatch : ICInterp.Dispatch.values()) {
+                    for (ICInterp.Tier tier : ICInterp.Tier.values()) {
+                        ICInterp nullPointer = quietInterp(code, model);
+                        nullPointer.setDispatch(dispatch);
+                        nullPointer.setTier(tier);
+                        assertThrows(ICMemoryException.class, () -> runMain(nullPointer));
+                    }
+                }
+            }
+        }
+
+        // Only the segmented model checks accesses against the variable's segment
+        for (String code : new String[] {NEGATIVE_INDEX, PAST_END_INDEX}) {
+            for (ICInterp.Dispatch dispatch : ICInterp.Dispatch.values()) {
+                for (ICInterp.Tier tier : ICInterp.Tier.values()) {
+                    ICInterp badIndex = quietInterp(code, ICMemory.Model.SEGMENTED);
+                    badIndex.setDispatch(dispatch);
+                    badIndex.setTier(tier);
+                    assertThrows(ICMemoryException.class, () -> runMain(badIndex));
+                }
+            }
+        }
+    }
+}
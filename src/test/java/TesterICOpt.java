@@ -0,0 +1,727 @@
+import edu.uncg.csc439.icinterp.ICInterp;
+import edu.uncg.csc439.icinterp.ICInterpOptions;
+import edu.uncg.csc439.icinterp.ICMemory;
+import edu.uncg.csc439.icinterp.ICProgram;
+import edu.uncg.csc439.icode.ICAddressPointer;
+import edu.uncg.csc439.icode.ICArrayIndexing;
+import edu.uncg.csc439.icode.ICBinOprt;
+import edu.uncg.csc439.icode.ICBinary;
+import edu.uncg.csc439.icode.ICBoolJump;
+import edu.uncg.csc439.icode.ICCast;
+import edu.uncg.csc439.icode.ICCopy;
+import edu.uncg.csc439.icode.ICDirective;
+import edu.uncg.csc439.icode.ICFuncCall;
+import edu.uncg.csc439.icode.ICJump;
+import edu.uncg.csc439.icode.ICLine;
+import edu.uncg.csc439.icode.ICLines;
+import edu.uncg.csc439.icode.ICOptimizationOptions;
+import edu.uncg.csc439.icode.ICParameterPass;
+import edu.uncg.csc439.icode.ICPass;
+import edu.uncg.csc439.icode.ICPassManager;
+import edu.uncg.csc439.icode.ICReltJump;
+import edu.uncg.csc439.icode.ICReturn;
+import edu.uncg.csc439.icode.ICUniOprt;
+import edu.uncg.csc439.icode.ICOptimization.ICConstantFolding;
+import edu.uncg.csc439.icode.ICOptimization.ICCopyPropagation;
+import edu.uncg.csc439.icode.ICOptimization.ICDeadCodeElimination;
+import edu.uncg.csc439.icode.ICOptimization.ICJumpThreading;
+import edu.uncg.csc439.icode.ICOptimization.ICTempCoalescing;
+import edu.uncg.csc439.icode.ICOptimization.ICUnreachableCode;
+import edu.uncg.csc439.icode.ICOptimization.ICValueNumbering;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testing file for the optimization passes over intermediate code. The code
+ * is written as IC text, turned into the ICLine objects that ICGenerator
+ * would have made, and optimized; the result is compared with the expected
+ * text, and run before and after to make sure it still does the same thing.
+ */
+public class TesterICOpt {
+    /**
+     * A loop with a label on a line of its own, as ICGenerator writes them.
+     */
+    private static final String COUNT =
+            "gf_main: .fnStart 4\n" +
+            "\t\tl4@0 = 0\n" +
+            "L1: \n" +
+            "\t\tif l4@0 >= 3 goto L2\n" +
+            "\t\tparam4 l4@0\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\tt4_1 = l4@0\n" +
+            "\t\tl4@0 = t4_1 + 1\n" +
+            "\t\tgoto L1\n" +
+            "L2: \n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * Constants worked out in a char (which wrap around) and in an int, and jumps on
+     * constant conditions. gf_add adds chars, which is done on bytes, so the constant
+     * can't be put in place of t1_1 there.
+     */
+    private static final String CONSTANTS =
+            "gf_add: .fnStart 0\n" +
+            "\t\tt1_1 = 100\n" +
+            "\t\tt4_1 = t1_1 + p1@0\n" +
+            "\t\treturn4 t4_1\n" +
+            "\t\t.fnEnd\n" +
+            "gf_main: .fnStart 4\n" +
+            "\t\tt4_2 = 3 * 4\n" +
+            "\t\tt4_3 = t4_2 + 1\n" +
+            "\t\tl4@0 = t4_3\n" +
+            "\t\tt1_2 = narrow 300\n" +
+            "\t\tt4_4 = widen t1_2\n" +
+            "\t\tt1_3 = 100 + 100\n" +
+            "\t\tt4_5 = t4_4 * t1_3\n" +
+            "\t\tparam4 t4_5\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\tif 3 < 2 goto L1\n" +
+            "\t\tparam4 l4@0\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "L1: \n" +
+            "\t\tt4_6 = 1\n" +
+            "\t\tif t4_6 goto L2\n" +
+            "\t\tparam4 t4_6\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "L2: \n" +
+            "\t\tparam1 100\n" +
+            "\t\tt4_7 = call gf_add, 1\n" +
+            "\t\tparam4 t4_7\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * An increment whose old value is also used, as ICGenerator writes x = i++.
+     */
+    private static final String COPIES =
+            "gf_main: .fnStart 8\n" +
+            "\t\tl4@0 = 5\n" +
+            "\t\tt4_1 = l4@0\n" +
+            "\t\tt4_2 = t4_1 + 1\n" +
+            "\t\tl4@0 = t4_2\n" +
+            "\t\tl4@4 = t4_1\n" +
+            "\t\tt4_3 = l4@0 * 2\n" +
+            "\t\tt4_4 = t4_3 + l4@4\n" +
+            "\t\tparam4 t4_4\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * A call used as the argument of another call, in LittleC and as ICGenerator compiles
+     * it: the "param4" for the result of the inner call has no operand.
+     */
+    private static final String NESTED_CALL_SOURCE =
+            "int fact(int n) {\n" +
+            "    if (n <= 1) return 1;\n" +
+            "    return n * fact(n - 1);\n" +
+            "}\n" +
+            "\n" +
+            "void main() {\n" +
+            "    printd(fact(5));\n" +
+            "}\n";
+
+    private static final String NESTED_CALL =
+            "gf_fact: .fnStart 0\n" +
+            "\t\tif p4@0 > 1 goto L1\n" +
+            "\t\treturn4 1\n" +
+            "L1: \n" +
+            "\t\tt4_1 = p4@0 - 1\n" +
+            "\t\tparam4 t4_1\n" +
+            "\t\tt4_2 = call gf_fact, 1\n" +
+            "\t\tt4_3 = p4@0 * t4_2\n" +
+            "\t\treturn4 t4_3\n" +
+            "\t\t.fnEnd\n" +
+            "gf_main: .fnStart 0\n" +
+            "\t\tparam4 5\n" +
+            "\t\tparam4\n" +
+            "\t\tt4_4 = call gf_fact, 1\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * Code shaped like ICGenerator's output for returns in an if statement, and a break in
+     * a loop: jumps after returns, jumps to jumps and to the next line, a temporary that
+     * is never read, and a call whose result is never read.
+     */
+    private static final String CONTROL =
+            "gf_sign: .fnStart 0\n" +
+            "\t\tif p4@0 >= 0 goto L1\n" +
+            "\t\tt4_1 = - 1\n" +
+            "\t\treturn4 t4_1\n" +
+            "\t\tgoto L2\n" +
+            "L1: \n" +
+            "\t\tif p4@0 != 0 goto L3\n" +
+            "\t\treturn4 0\n" +
+            "\t\tgoto L4\n" +
+            "L3: \n" +
+            "\t\treturn4 1\n" +
+            "\t\tgoto L4\n" +
+            "L4: \n" +
+            "L2: \n" +
+            "\t\t.fnEnd\n" +
+            "gf_main: .fnStart 8\n" +
+            "\t\tl4@0 = 0\n" +
+            "\t\tl4@4 = 0\n" +
+            "L5: \n" +
+            "\t\tif l4@0 >= 10 goto L6\n" +
+            "\t\tt4_2 = l4@0 * 3\n" +
+            "\t\tl4@0 = l4@0 + 1\n" +
+            "\t\tif l4@0 == 8 goto L7\n" +
+            "\t\tl4@4 = l4@4 + l4@0\n" +
+            "\t\tgoto L8\n" +
+            "L7: \n" +
+            "\t\tgoto L6\n" +
+            "L8: \n" +
+            "\t\tgoto L5\n" +
+            "L6: \n" +
+            "\t\tparam4 l4@4\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\tparam4 0\n" +
+            "\t\tt4_3 = call gf_sign, 1\n" +
+            "\t\tt4_4 = - 5\n" +
+            "\t\tparam4 t4_4\n" +
+            "\t\tt4_5 = call gf_sign, 1\n" +
+            "\t\tparam4 t4_5\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\tparam4 3\n" +
+            "\t\tt4_6 = call gf_sign, 1\n" +
+            "\t\tparam4 t4_6\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * Array code that takes the address of the same array, and reads the same element,
+     * more than once, with stores and a call between the reads.
+     */
+    private static final String ARRAYS =
+            "gf_main: .fnStart 16\n" +
+            "\t\tl0@0 setsize 2\n" +
+            "\t\tl4@12 = 3\n" +
+            "\t\tt4_1 = & l0@0\n" +
+            "\t\tt4_1 = 0 stidx4 l4@12\n" +
+            "\t\tt4_2 = & l0@0\n" +
+            "\t\tt4_3 = l4@12 + 1\n" +
+            "\t\tt4_2 = 1 stidx4 t4_3\n" +
+            "\t\tt4_4 = & l0@0\n" +
+            "\t\tt4_5 = t4_4 ldidx4 0\n" +
+            "\t\tt4_6 = & l0@0\n" +
+            "\t\tt4_7 = t4_6 ldidx4 0\n" +
+            "\t\tt4_8 = t4_5 + t4_7\n" +
+            "\t\tt4_9 = 1 + l4@12\n" +
+            "\t\tt4_10 = t4_8 * t4_9\n" +
+            "\t\tparam4 t4_10\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\tt4_11 = & l0@0\n" +
+            "\t\tt4_12 = t4_11 ldidx4 1\n" +
+            "\t\tt4_16 = t4_11 ldidx4 0\n" +
+            "\t\tt4_11 = 0 stidx4 t4_12\n" +
+            "\t\tt4_13 = t4_11 ldidx4 0\n" +
+            "\t\tl4@12 = l4@12 + 1\n" +
+            "\t\tt4_14 = l4@12 + 1\n" +
+            "\t\tt4_15 = t4_13 * t4_14\n" +
+            "\t\tt4_15 = t4_15 + t4_16\n" +
+            "\t\tparam4 t4_15\n" +
+            "\t\tcall gf_printd, 1\n" +
+            "\t\t.fnEnd\n";
+
+    /**
+     * The pass manager runs its passes in order, and keeps their statistics.
+     */
+    @Test
+    public void passManager() {
+        ICLines lines = parseLines(COUNT);
+        List<String> order = new ArrayList<>();
+        ICPass first = new ICPass() {
+            public String getName() {
+                return "first";
+            }
+
+            public int run(ICLines icLines) {
+                order.add(getName());
+                icLines.removeLine(icLines.getSize() - 2);
+                return 1;
+            }
+        };
+        ICPass second = new ICPass() {
+            public String getName() {
+                return "second";
+            }
+
+            public int run(ICLines icLines) {
+                order.add(getName());
+                return 0;
+            }
+        };
+        ICPassManager passes = new ICPassManager().addPass(first).addPass(second);
+        assertEquals(1, passes.run(lines));
+        assertEquals(Arrays.asList("first", "second"), order);
+        assertEquals(10, lines.getSize());
+        assertEquals(2, passes.getStats().size());
+        assertEquals("first", passes.getStats().get(0).getName());
+        assertEquals(1, passes.getStats().get(0).getChanged());
+        assertEquals(0, passes.getStats().get(1).getChanged());
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        passes.writeReport(new PrintStream(report));
+        assertTrue(report.toString().contains("second"), report.toString());
+
+        assertEquals(0, ICPassManager.forLevel(0).getPasses().size());
+        assertEquals(2, ICPassManager.parseLevel("-O2"));
+        assertEquals(-1, ICPassManager.parseLevel("-O3"));
+        assertEquals(-1, ICPassManager.parseLevel("-Ostats"));
+        assertThrows(IllegalArgumentException.class, () -> ICPassManager.forLevel(3));
+    }
+
+    /**
+     * The optimization options are parsed on their own, or with the interpreter options,
+     * and each set of options keeps its own level.
+     */
+    @Test
+    public void optimizationOptions() {
+        ICOptimizationOptions optimization = new ICOptimizationOptions();
+        String[] rest = optimization.parse(new String[] {"-O1", "-Ostats", "-x", "prog.lc", "-O2"});
+        assertEquals(Arrays.asList("-x", "prog.lc", "-O2"), Arrays.asList(rest));
+        assertEquals(1, optimization.getLevel());
+        assertTrue(optimization.getStats());
+
+        ICInterpOptions options = new ICInterpOptions();
+        rest = options.parse(new String[] {"-mem=linear", "-O2", "prog.lc"});
+        assertEquals(Arrays.asList("prog.lc"), Arrays.asList(rest));
+        assertEquals(2, options.getOptimization().getLevel());
+        assertEquals(0, new ICInterpOptions().getOptimization().getLevel());
+        assertThrows(IllegalArgumentException.class, () -> optimization.setLevel(3));
+    }
+
+    /**
+     * Constant folding and propagation within basic blocks.
+     */
+    @Test
+    public void constantFolding() {
+        ICLines lines = parseLines(CONSTANTS);
+        String output = runIC(lines);
+        assertEquals("-246413-56", output);
+        assertEquals(9, new ICConstantFolding().run(lines));
+        assertEquals(parseLines(
+                "gf_add: .fnStart 0\n" +
+                "\t\tt1_1 = 100\n" +
+                "\t\tt4_1 = t1_1 + p1@0\n" +
+                "\t\treturn4 t4_1\n" +
+                "\t\t.fnEnd\n" +
+                "gf_main: .fnStart 4\n" +
+                "\t\tt4_2 = 12\n" +
+                "\t\tt4_3 = 13\n" +
+                "\t\tl4@0 = 13\n" +
+                "\t\tt1_2 = 44\n" +
+                "\t\tt4_4 = 44\n" +
+                "\t\tt1_3 = - 56\n" +
+                "\t\tt4_5 = - 2464\n" +
+                "\t\tparam4 t4_5\n" +
+                "\t\tcall gf_printd, 1\n" +
+                "\t\tparam4 l4@0\n" +
+                "\t\tcall gf_printd, 1\n" +
+                "L1: \n" +
+                "\t\tt4_6 = 1\n" +
+                "\t\tgoto L2\n" +
+                "\t\tparam4 t4_6\n" +
+                "\t\tcall gf_printd, 1\n" +
+                "L2: \n" +
+                "\t\tparam1 100\n" +
+                "\t\tt4_7 = call gf_add, 1\n" +
+                "\t\tparam4 t4_7\n" +
+                "\t\tcall gf_printd, 1\n" +
+                "\t\t.fnEnd\n").toString(), lines.toString());
+        assertEquals(output, runIC(lines));
+        // Dividing by zero is left for the program to fail on
+        ICLines divide = parseLines("\t\tt4_1 = 7 / 0\n");
+        assertEquals(0, new ICConstantFolding().run(divide));
+    }
+
+    /**
+     * Copy propagation, and replacing a temporary that is only copied to a name.
+     */
+    @Test
+    public void copyPropagation() {
+        ICLines lines = parseLines(COPIES);
+        String output = runIC(lines);
+        assertEquals("17", output);
+        assertEquals(3, new ICCopyPropagation().run(lines));
+        String propagated =
+                "gf_main: .fnStart 8\n" +
+                "\t\tl4@0 = 5\n" +
+                "\t\tt4_1 = l4@0\n" +
+                "\t\tl4@0 = l4@0 + 1\n" +
+                "\t\tl4@4 = t4_1\n" +
+                "\t\tt4_3 = l4@0 * 2\n" +
+                "\t\tt4_4 = t4_3 + t4_1\n" +
+                "\t\tparam4 t4_4\n" +
+                "\t\tcall gf_printd, 1\n" +
+                "\t\t.fnEnd\n";
+        assertEquals(parseLines(propagated).toString(), lines.toString());
+        assertEquals(output, runIC(lines));
+
+        // t4_4 is written after the last reads of t4_1, so it can use the same name
+        assertEquals(2, new ICTempCoalescing().run(lines));
+        assertEquals(parseLines(propagated.replace("t4_4", "t4_1")).toString(), lines.toString());
+        assertEquals(output, runIC(lines));
+        assertEquals(0, new ICTempCoalescing().run(lines));
+    }
+
+    /**
+     * Temporaries that are live around a loop keep their own names.
+     */
+    @Test
+    public void tempCoalescingInLoops() {
+        ICLines lines = parseLines(
+                "gf_main: .fnStart 4\n" +
+                "\t\tt4_1 = 10\n" +
+                "L1: \n" +
+                "\t\tif t4_1 <= 0 goto L2\n" +
+                "\t\tt4_2 = t4_1 * t4_1\n" +
+                "\t\tparam4 t4_2\n" +
+                "\t\tcall gf_printd, 1\n" +
+                "\t\tt4_3 = t4_1 - 3\n" +
+                "\t\tt4_1 = t4_3\n" +
+                "\t\tgoto L1\n" +
+                "L2: \n" +
+                "\t\t.fnEnd\n");
+        String output = runIC(lines);
+        assertEquals("10049161", output);
+        // t4_2 is written while t4_1 is live, but t4_3 is only copied to t4_1
+        assertEquals(2, new ICTempCoalescing().run(lines));
+        assertEquals(parseLines(
+                "gf_main: .fnStart 4\n" +
+                "\t\tt4_1 = 10\n" +
+                "L1: \n" +
+                "\t\tif t4_1 <= 0 goto L2\n" +
+                "\t\tt4_2 = t4_1 * t4_1\n" +
+                "\t\tparam4 t4_2\n" +
+                "\t\tcall gf_printd, 1\n" +
+                "\t\tt4_1 = t4_1 - 3\n" +
+                "\t\tgoto L1\n" +
+                "L2: \n" +
+                "\t\t.fnEnd\n").toString(), lines.toString());
+        assertEquals(output, runIC(lines));
+    }
+
+    /**
+     * Jump threading, unreachable code removal and dead code elimination.
+     */
+    @Test
+    public void deadCode() {
+        ICLines lines = parseLines(CONTROL);
+        String output = runIC(lines);
+        assertEquals("28-11", output);
+        // The break jumps straight out of the loop, the end of the if jumps to the loop test,
+        // and the labels of the gotos they jumped to are removed
+        assertEquals(5, new ICJumpThreading().run(lines));
+        assertEquals(output, runIC(lines));
+        // The jumps after the returns, the gotos that were jumped past, and the labels at
+        // the end of gf_sign that only those jumps went to
+        assertEquals(6, new ICUnreachableCode().run(lines));
+        assertEquals(output, runIC(lines));
+        assertEquals(2, new ICDeadCodeElimination().run(lines));
+        assertEquals(output, runIC(lines));
+        assertEquals(parseLines(
+                "gf_sign: .fnStart 0\n" +
+                "\t\tif p4@0 >= 0 goto L1\n" +
+                "\t\tt4_1 = - 1\n" +
+                "\t\treturn4 t4_1\n" +
+                "L1: \n" +
+                "\t\tif p4@0 != 0 goto L3\n" +
+                "\t\treturn4 0\n" +
+                "L3: \n" +
+                "\t\treturn4 1\n" +
+                "\t\t.fnEnd\n" +
+                "gf_main: .fnStart 8\n" +
+                "\t\tl4@0 = 0\n" +
+                "\t\tl4@4 = 0\n" +
+                "L5: \n" +
+                "\t\tif l4@0 >= 10 goto L6\n" +
+                "\t\tl4@0 = l4@0 + 1\n" +
+                "\t\tif l4@0 == 8 goto L6\n" +
+                "\t\tl4@4 = l4@4 + l4@0\n" +
+                "\t\tgoto L5\n" +
+                "L6: \n" +
+                "\t\tparam4 l4@4\n" +
+                "\t\tcall gf_printd, 1\n" +
+                "\t\tparam4 0\n" +
+                "\t\tcall gf_sign, 1\n" +
+                "\t\tt4_4 = - 5\n" +
+                "\t\tparam4 t4_4\n" +
+                "\t\tt4_5 = call gf_sign, 1\n" +
+                "\t\tparam4 t4_5\n" +
+                "\t\tcall gf_printd, 1\n" +
+                "\t\tparam4 3\n" +
+                "\t\tt4_6 = call gf_sign, 1\n" +
+                "\t\tparam4 t4_6\n" +
+                "\t\tcall gf_printd, 1\n" +
+                "\t\t.fnEnd\n").toString(), lines.toString());
+        assertEquals(output, runIC(lines));
+        assertEquals(0, new ICJumpThreading().run(lines));
+        assertEquals(0, new ICUnreachableCode().run(lines));
+        assertEquals(0, new ICDeadCodeElimination().run(lines));
+
+        // An array length that is never read still reads memory, and fails on a null pointer
+        lines = parseLines(
+                "gf_main: .fnStart 4\n" +
+                "\t\tl4@0 = 0\n" +
+                "\t\tt4_1 = # l4@0\n" +
+                "\t\tt4_2 = - l4@0\n" +
+                "\t\t.fnEnd\n");
+        assertEquals(1, new ICDeadCodeElimination().run(lines));
+        assertEquals(parseLines(
+                "gf_main: .fnStart 4\n" +
+                "\t\tl4@0 = 0\n" +
+                "\t\tt4_1 = # l4@0\n" +
+                "\t\t.fnEnd\n").toString(), lines.toString());
+    }
+
+    /**
+     * Every pass skips the missing operand of the "param4" that ICGenerator writes for a
+     * call used as an argument, rather than failing on it.
+     */
+    @Test
+    public void nestedCallArgument() {
+        ICLines lines = parseLines(NESTED_CALL);
+        ICPassManager passes = ICPassManager.forLevel(2);
+        passes.run(lines);
+        assertEquals(parseLines(
+                "gf_fact: .fnStart 0\n" +
+                "\t\tif p4@0 > 1 goto L1\n" +
+                "\t\treturn4 1\n" +
+                "L1: \n" +
+                "\t\tt4_1 = p4@0 - 1\n" +
+                "\t\tparam4 t4_1\n" +
+                "\t\tt4_1 = call gf_fact, 1\n" +
+                "\t\tt4_1 = p4@0 * t4_1\n" +
+                "\t\treturn4 t4_1\n" +
+                "\t\t.fnEnd\n" +
+                "gf_main: .fnStart 0\n" +
+                "\t\tparam4 5\n" +
+                "\t\tparam4\n" +
+                "\t\tcall gf_fact, 1\n" +
+                "\t\tcall gf_printd, 1\n" +
+                "\t\t.fnEnd\n").toString(), lines.toString());
+
+        // The same code, compiled from the program, runs the same way at every level
+        String[] results = new String[ICPassManager.MAX_LEVEL + 1];
+        for (int level = 0; level <= ICPassManager.MAX_LEVEL; level++) {
+            ICInterpOptions options = new ICInterpOptions();
+            options.getOptimization().setLevel(level);
+            ByteArrayOutputStream captured = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(captured, true);
+            boolean ran = RunCode.run(CharStreams.fromString(NESTED_CALL_SOURCE), options,
+                    new ByteArrayInputStream(new byte[0]), out, out);
+            results[level] = ran + " " + captured;
+        }
+        assertEquals(results[0], results[1]);
+        assertEquals(results[0], results[2]);
+    }
+
+    /**
+     * Value numbering reuses addresses, array reads and operations already done in a
+     * block, but not array reads from before a store, or operations on a name written
+     * since. The call ends the first block, so nothing is reused across it.
+     */
+    @Test
+    public void valueNumbering() {
+        ICLines lines = parseLines(ARRAYS);
+        String output = runIC(lines);
+        assertEquals("2423", output);
+        assertEquals(5, new ICValueNumbering().run(lines));
+        assertEquals(parseLines(
+                "gf_main: .fnStart 16\n" +
+                "\t\tl0@0 setsize 2\n" +
+                "\t\tl4@12 = 3\n" +
+                "\t\tt4_1 = & l0@0\n" +
+                "\t\tt4_1 = 0 stidx4 l4@12\n" +
+                "\t\tt4_2 = t4_1\n" +
+                "\t\tt4_3 = l4@12 + 1\n" +
+                "\t\tt4_2 = 1 stidx4 t4_3\n" +
+                "\t\tt4_4 = t4_1\n" +
+                "\t\tt4_5 = t4_4 ldidx4 0\n" +
+                "\t\tt4_6 = t4_1\n" +
+                "\t\tt4_7 = t4_5\n" +
+                "\t\tt4_8 = t4_5 + t4_7\n" +
+                "\t\tt4_9 = t4_3\n" +
+                "\t\tt4_10 = t4_8 * t4_9\n" +
+                "\t\tparam4 t4_10\n" +
+                "\t\tcall gf_printd, 1\n" +
+                "\t\tt4_11 = & l0@0\n" +
+                "\t\tt4_12 = t4_11 ldidx4 1\n" +
+                "\t\tt4_16 = t4_11 ldidx4 0\n" +
+                "\t\tt4_11 = 0 stidx4 t4_12\n" +
+                "\t\tt4_13 = t4_11 ldidx4 0\n" +
+                "\t\tl4@12 = l4@12 + 1\n" +
+                "\t\tt4_14 = l4@12 + 1\n" +
+                "\t\tt4_15 = t4_13 * t4_14\n" +
+                "\t\tt4_15 = t4_15 + t4_16\n" +
+                "\t\tparam4 t4_15\n" +
+                "\t\tcall gf_printd, 1\n" +
+                "\t\t.fnEnd\n").toString(), lines.toString());
+        assertEquals(output, runIC(lines));
+        assertEquals(0, new ICValueNumbering().run(lines));
+    }
+
+    /**
+     * The benchmark programs print the same thing when they are optimized at the highest
+     * level, and don't execute more instructions.
+     */
+    @Test
+    public void optimizedBenchmarks() throws IOException {
+        for (String name : new String[] {"loop", "fib", "deep", "arrays", "strings"}) {
+            String code = readResource("/icbench/" + name + ".ic");
+            ICLines lines = parseLines(code);
+            assertEquals("\n" + code.stripTrailing(), lines.toString());
+            String output = runIC(lines, ICInterp.Tier.INTERP);
+            long count = lastCount;
+            ICPassManager.forLevel(ICPassManager.MAX_LEVEL).run(lines);
+            assertEquals(output, runIC(lines, ICInterp.Tier.INTERP), name);
+            assertTrue(lastCount <= count, name + " executed " + lastCount + " instead of " + count);
+            assertEquals(output, runIC(lines, ICInterp.Tier.TIERED), name);
+        }
+    }
+
+    private static long lastCount;
+
+    /**
+     * Runs intermediate code starting at gf_main with every memory model and tier, and
+     * returns everything that the program printed, which must be the same each time.
+     *
+     * @param lines the intermediate code to run
+     * @return the output of the program
+     */
+    static String runIC(ICLines lines) {
+        String output = null;
+        for (ICInterp.Tier tier : ICInterp.Tier.values()) {
+            String thisOutput = runIC(lines, tier);
+            if (output != null) assertEquals(output, thisOutput, "Output differs with " + tier + " tier");
+            output = thisOutput;
+        }
+        return output;
+    }
+
+    /**
+     * Runs intermediate code starting at gf_main with every memory model, and returns
+     * everything that the program printed. The number of instructions executed is left in
+     * lastCount.
+     *
+     * @param lines the intermediate code to run
+     * @param tier the execution tier to use
+     * @return the output of the program
+     */
+    static String runIC(ICLines lines, ICInterp.Tier tier) {
+        ICBinary binary = ICBinary.from(lines);
+        String output = null;
+        for (ICMemory.Model model : ICMemory.Model.values()) {
+            ByteArrayOutputStream captureOut = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(captureOut);
+            ICInterp context = new ICInterp(ICProgram.load(binary, model), new ByteArrayInputStream(new byte[0]),
+                    out, System.err);
+            context.setTier(tier);
+            context.executeFunction("gf_main", new LinkedList<>());
+            out.flush();
+            if (output != null) assertEquals(output, captureOut.toString(), "Output differs with " + model + " memory");
+            output = captureOut.toString();
+            lastCount = context.getInstructionCount();
+        }
+        return output;
+    }
+
+    private static String readResource(String name) throws IOException {
+        try (InputStream in = TesterICOpt.class.getResourceAsStream(name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Makes the ICLine objects for IC text, of the classes that ICGenerator
+     * uses for each kind of line.
+     *
+     * @param code the intermediate code
+     * @return the lines
+     */
+    static ICLines parseLines(String code) {
+        ICLines lines = new ICLines();
+        for (String text : code.split("\n")) {
+            String label = "";
+            int colon = text.indexOf(':');
+            if ((colon >= 0) && text.substring(0, colon).matches("[A-Za-z_][A-Za-z0-9_]*")) {
+                label = text.substring(0, colon);
+                text = text.substring(colon + 1);
+            }
+            text = text.trim();
+            ICLine line = parseLine(text.isEmpty() ? new String[0] : text.split(" +"));
+            line.setLabel(label);
+            lines.addLine(line);
+        }
+        return lines;
+    }
+
+    private static ICLine parseLine(String[] w) {
+        if (w.length == 0) return new ICLine();
+        switch (w[0]) {
+            case ".fnStart":
+                return new ICDirective(ICDirective.fnStart, (w.length > 1) ? w[1] : "");
+            case ".fnEnd":
+                return new ICDirective(ICDirective.fnEnd, "");
+            case ".dw":
+            case ".db": {
+                int type = w[0].equals(".dw") ? ICDirective.definedWord : ICDirective.definedByte;
+                ArrayList<String> values = new ArrayList<>();
+                for (int i = 1; i < w.length; i++) values.add(w[i].replace(",", ""));
+                return (values.size() == 1) ? new ICDirective(type, values.get(0)) : new ICDirective(type, values);
+            }
+            case "goto":
+                return new ICJump(w[1]);
+            case "if":
+            case "ifFalse":
+                if (w.length == 4) return new ICBoolJump(w[0].equals("if"), w[1], w[3]);
+                return new ICReltJump(w[0].equals("if"), w[1], w[2], w[3], w[5]);
+            case "param1":
+            case "param4":
+                return new ICParameterPass(w[0].charAt(5) - '0', (w.length > 1) ? w[1] : null);
+            case "return":
+                return new ICReturn(ICReturn.returnVoid, "");
+            case "return1":
+            case "return4":
+                return new ICReturn(w[0].charAt(6) - '0', w[1]);
+            case "call":
+                return new ICFuncCall("", w[1].replace(",", ""), w[2]);
+            case "*":
+                return new ICAddressPointer(ICAddressPointer.copyValueToPointerLocation, w[1], w[4]);
+            default:
+                break;
+        }
+        if (w[1].equals("setsize")) return new ICLine(new ArrayList<>(Arrays.asList(w)));
+        if (w[2].equals("call")) return new ICFuncCall(w[0], w[3].replace(",", ""), w[4]);
+        if (w.length == 3) return new ICCopy(w[0], w[2]);
+        if (w[2].equals("&")) return new ICAddressPointer(ICAddressPointer.copyAddressOf, w[0], w[3]);
+        if (w[2].equals("*")) return new ICAddressPointer(ICAddressPointer.copyValueFromPointer, w[0], w[3]);
+        if (w[2].equals("widen")) return new ICCast(w[0], ICCast.widen, w[3]);
+        if (w[2].equals("narrow")) return new ICCast(w[0], ICCast.narrow, w[3]);
+        if (w.length == 4) return new ICUniOprt(w[0], w[2], w[3]);
+        if (w[3].startsWith("ldidx") || w[3].startsWith("stidx")) {
+            ICArrayIndexing indexing = new ICArrayIndexing(w[0], w[2], w[3].startsWith("ldidx"),
+                    w[3].endsWith("4"), w[4]);
+            indexing.setOperator(w[3]);
+            return indexing;
+        }
+        return new ICBinOprt(w[0], w[3], w[2], w[4]);
+    }
+}